@@ -0,0 +1,50 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole structure operations: building it from scratch and full iteration.
+ * Divide the score by {@code size} to get time per key.
+ * Forks get a 32 GB heap limit for size=1e8 (JMH can't vary fork options by parameter,
+ * the limit does not make smaller sizes use more memory).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx32g")
+@State(Scope.Benchmark)
+public class BulkBenchmark {
+    @Param({"VEB_SET", "VEB_SET_SPARSE", "TREE_SET", "HASH_SET", "VEB_MAP", "VEB_LONG_INT_MAP", "RB_TREE", "RB_ARRAY_TREE", "LONG_RB_TREE", "TREE_MAP"})
+    public Impl impl;
+    @Param({"SEQUENTIAL", "DENSE", "SPARSE", "CLUSTERED"})
+    public KeyDistribution distribution;
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    private long[] keys;
+    private LongCollection filled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = distribution.generate(size, 42);
+        filled = impl.create();
+        for (long key : keys)
+            filled.add(key);
+    }
+
+    @Benchmark
+    public LongCollection insert() {
+        final LongCollection retVal = impl.create();
+        for (long key : keys)
+            retVal.add(key);
+        return retVal;
+    }
+
+    @Benchmark
+    public long iterate() {
+        return filled.sum();
+    }
+}
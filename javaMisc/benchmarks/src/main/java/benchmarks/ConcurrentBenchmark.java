@@ -0,0 +1,117 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of thread safe sets from 1 to 32 threads. The amount of work is fixed and split evenly
+ * between threads, so ideal scaling halves the score when threads double.
+ * <ul>
+ *     <li>{@code ingest}: all {@code size} keys are inserted into an empty set.</li>
+ *     <li>{@code mixed}: {@link #MIXED_OPS} operations over a set filled with {@code size} keys:
+ *     80% contains, 10% successor, 10% remove and reinsert of a present key.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+    static final int MIXED_OPS = 1 << 21;
+
+    @Param({"VEB_CONCURRENT", "VEB_CONCURRENT_SPARSE", "VEB_SYNCHRONIZED", "SKIP_LIST", "RB_CONCURRENT", "RB_SYNCHRONIZED"})
+    public ConcurrentImpl impl;
+    @Param({"DENSE", "SPARSE", "CLUSTERED"})
+    public KeyDistribution distribution;
+    @Param({"1000000"})
+    public int size;
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private long[] keys;
+    private long[] probes;
+    private ExecutorService pool;
+    private LongCollection ingested;
+    private LongCollection filled;
+    private final List<Callable<Long>> ingestTasks = new ArrayList<>();
+    private final List<Callable<Long>> mixedTasks = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = distribution.generate(size, 42);
+        probes = KeyDistribution.probes(keys, MIXED_OPS, 7);
+        pool = Executors.newFixedThreadPool(threads);
+        filled = impl.create();
+        for (long key : keys)
+            filled.add(key);
+        for (int t = 0; t < threads; ++t) {
+            final int keysFrom = (int) ((long) size * t / threads);
+            final int keysTo = (int) ((long) size * (t + 1) / threads);
+            ingestTasks.add(() -> {
+                final LongCollection set = ingested;
+                long retVal = 0;
+                for (int i = keysFrom; i < keysTo; ++i) {
+                    if (set.add(keys[i]))
+                        ++retVal;
+                }
+                return retVal;
+            });
+            final int opsFrom = (int) ((long) MIXED_OPS * t / threads);
+            final int opsTo = (int) ((long) MIXED_OPS * (t + 1) / threads);
+            mixedTasks.add(() -> {
+                final LongCollection set = filled;
+                long retVal = 0;
+                for (int i = opsFrom; i < opsTo; ++i) {
+                    final long key = probes[i];
+                    final int op = i % 10;
+                    if (op == 0) {
+                        retVal += set.successor(key);
+                    } else if (op == 1) {
+                        final long present = keys[i % size];
+                        if (set.remove(present))
+                            set.add(present);
+                    } else if (set.contains(key)) {
+                        ++retVal;
+                    }
+                }
+                return retVal;
+            });
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void freshSet() {
+        ingested = impl.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private long runAll(List<Callable<Long>> tasks) throws Exception {
+        long retVal = 0;
+        for (Future<Long> f : pool.invokeAll(tasks))
+            retVal += f.get();
+        return retVal;
+    }
+
+    @Benchmark
+    public long ingest() throws Exception {
+        return runAll(ingestTasks);
+    }
+
+    @Benchmark
+    public long mixed() throws Exception {
+        return runAll(mixedTasks);
+    }
+}
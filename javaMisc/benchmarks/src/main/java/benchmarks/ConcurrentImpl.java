@@ -0,0 +1,194 @@
+package benchmarks;
+
+import rbTree.ConcurrentRbTree;
+import rbTree.RbTree;
+import vebTree.vebTreeConcurrentSet;
+import vebTree.vebTreeSet;
+
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Thread safe structures under test.
+ */
+public enum ConcurrentImpl {
+    VEB_CONCURRENT {
+        @Override
+        LongCollection create() {
+            return new VebConcurrentSet(new vebTreeConcurrentSet());
+        }
+    },
+    VEB_CONCURRENT_SPARSE {
+        @Override
+        LongCollection create() {
+            return new VebConcurrentSet(new vebTreeConcurrentSet(vebTreeSet.ClusterPolicy.SPARSE));
+        }
+    },
+    /**
+     * plain vebTreeSet behind a single lock
+     */
+    VEB_SYNCHRONIZED {
+        @Override
+        LongCollection create() {
+            return new Synchronized(new Impl.VebSet(new vebTreeSet()));
+        }
+    },
+    SKIP_LIST {
+        @Override
+        LongCollection create() {
+            return new SkipListSet();
+        }
+    },
+    RB_CONCURRENT {
+        @Override
+        LongCollection create() {
+            return new RbConcurrent();
+        }
+    },
+    /**
+     * plain RbTree behind a single lock
+     */
+    RB_SYNCHRONIZED {
+        @Override
+        LongCollection create() {
+            return new Synchronized(new Impl.JavaMap(new RbTree<>()));
+        }
+    };
+
+    abstract LongCollection create();
+
+    static final class VebConcurrentSet implements LongCollection {
+        private final vebTreeConcurrentSet set;
+
+        VebConcurrentSet(vebTreeConcurrentSet set) {
+            this.set = set;
+        }
+
+        @Override
+        public boolean add(long key) {
+            return set.add(key);
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return set.contains(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return set.remove(key);
+        }
+
+        @Override
+        public long successor(long key) {
+            return set.nextKey(key);
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (PrimitiveIterator.OfLong it = set.iterator(); it.hasNext(); )
+                retVal += it.nextLong();
+            return retVal;
+        }
+    }
+
+    static final class Synchronized implements LongCollection {
+        private final LongCollection delegate;
+
+        Synchronized(LongCollection delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized boolean add(long key) {
+            return delegate.add(key);
+        }
+
+        @Override
+        public synchronized boolean contains(long key) {
+            return delegate.contains(key);
+        }
+
+        @Override
+        public synchronized boolean remove(long key) {
+            return delegate.remove(key);
+        }
+
+        @Override
+        public synchronized long successor(long key) {
+            return delegate.successor(key);
+        }
+
+        @Override
+        public synchronized long sum() {
+            return delegate.sum();
+        }
+    }
+
+    static final class SkipListSet implements LongCollection {
+        private final ConcurrentSkipListSet<Long> set = new ConcurrentSkipListSet<>();
+
+        @Override
+        public boolean add(long key) {
+            return set.add(key);
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return set.contains(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return set.remove(key);
+        }
+
+        @Override
+        public long successor(long key) {
+            final Long retVal = set.higher(key);
+            return retVal == null? -1 : retVal;
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (Long key : set)
+                retVal += key;
+            return retVal;
+        }
+    }
+
+    static final class RbConcurrent implements LongCollection {
+        private final ConcurrentRbTree<Long, Object> map = new ConcurrentRbTree<>();
+
+        @Override
+        public boolean add(long key) {
+            return map.putIfAbsent(key, Impl.VALUE) == null;
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return map.remove(key) != null;
+        }
+
+        @Override
+        public long successor(long key) {
+            final Long retVal = map.higherKey(key);
+            return retVal == null? -1 : retVal;
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (Long key : map.keySet())
+                retVal += key;
+            return retVal;
+        }
+    }
+}
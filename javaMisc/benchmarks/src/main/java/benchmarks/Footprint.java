@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Prints retained heap per key of every structure. Not a JMH benchmark: retained size is measured
+ * as the difference of used heap after full GCs with and without a filled structure.
+ * <p>
+ * Usage: {@code java -Xmx16g -cp benchmarks.jar benchmarks.Footprint [size...]}
+ */
+public class Footprint {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private static long usedHeap() {
+        long retVal = Long.MAX_VALUE;
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+            retVal = Math.min(retVal, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return retVal;
+    }
+
+    public static void main(String[] args) {
+        final int[] sizes = args.length == 0? new int[]{1000, 100000, 10000000} : new int[args.length];
+        for (int i = 0; i < args.length; ++i)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        System.out.printf("%-16s %-12s %12s %16s %12s %22s%n",
+                "impl", "distribution", "size", "retained bytes", "bytes/key", "sum of keys");
+        for (int size : sizes) {
+            for (KeyDistribution distribution : KeyDistribution.values()) {
+                long[] keys = distribution.generate(size, 42);
+                for (Impl impl : Impl.values()) {
+                    final long before = usedHeap();
+                    LongCollection filled = impl.create();
+                    for (long key : keys)
+                        filled.add(key);
+                    final long retained = usedHeap() - before;
+                    // printed as a checksum, it also keeps the structure reachable during the measurement
+                    final long sum = filled.sum();
+                    filled = null;
+                    System.out.printf("%-16s %-12s %12d %16d %12.1f %22d%n",
+                            impl, distribution, size, retained, (double) retained / size, sum);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package benchmarks;
+
+import rbTree.LongRbTree;
+import rbTree.RbArrayTree;
+import rbTree.RbTree;
+import vebTree.LongIntCursor;
+import vebTree.vebTreeLongIntMap;
+import vebTree.vebTreeMap;
+import vebTree.vebTreeSet;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Structures under test. Maps store the same value for every key.
+ */
+public enum Impl {
+    VEB_SET {
+        @Override
+        LongCollection create() {
+            return new VebSet(new vebTreeSet());
+        }
+    },
+    VEB_SET_SPARSE {
+        @Override
+        LongCollection create() {
+            return new VebSet(new vebTreeSet(vebTreeSet.ClusterPolicy.SPARSE));
+        }
+    },
+    TREE_SET {
+        @Override
+        LongCollection create() {
+            return new JdkTreeSet();
+        }
+    },
+    HASH_SET {
+        @Override
+        LongCollection create() {
+            return new JdkHashSet();
+        }
+    },
+    VEB_MAP {
+        @Override
+        LongCollection create() {
+            return new VebMap();
+        }
+    },
+    VEB_LONG_INT_MAP {
+        @Override
+        LongCollection create() {
+            return new VebLongIntMap();
+        }
+    },
+    RB_TREE {
+        @Override
+        LongCollection create() {
+            return new JavaMap(new RbTree<>());
+        }
+    },
+    RB_ARRAY_TREE {
+        @Override
+        LongCollection create() {
+            return new JavaMap(new RbArrayTree<>());
+        }
+    },
+    LONG_RB_TREE {
+        @Override
+        LongCollection create() {
+            return new LongRb();
+        }
+    },
+    TREE_MAP {
+        @Override
+        LongCollection create() {
+            return new JavaMap(new TreeMap<>());
+        }
+    };
+
+    static final Object VALUE = Boolean.TRUE;
+
+    abstract LongCollection create();
+
+    static final class VebSet implements LongCollection {
+        private final vebTreeSet set;
+
+        VebSet(vebTreeSet set) {
+            this.set = set;
+        }
+
+        @Override
+        public boolean add(long key) {
+            return set.add(key);
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return set.contains(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return set.remove(key);
+        }
+
+        @Override
+        public long successor(long key) {
+            return set.nextKey(key);
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (PrimitiveIterator.OfLong it = set.iterator(); it.hasNext(); )
+                retVal += it.nextLong();
+            return retVal;
+        }
+    }
+
+    static final class JdkTreeSet implements LongCollection {
+        private final TreeSet<Long> set = new TreeSet<>();
+
+        @Override
+        public boolean add(long key) {
+            return set.add(key);
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return set.contains(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return set.remove(key);
+        }
+
+        @Override
+        public long successor(long key) {
+            final Long retVal = set.higher(key);
+            return retVal == null? -1 : retVal;
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (Long key : set)
+                retVal += key;
+            return retVal;
+        }
+    }
+
+    static final class JdkHashSet implements LongCollection {
+        private final HashSet<Long> set = new HashSet<>();
+
+        @Override
+        public boolean add(long key) {
+            return set.add(key);
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return set.contains(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return set.remove(key);
+        }
+
+        @Override
+        public long successor(long key) {
+            throw new UnsupportedOperationException("HashSet is unordered");
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (Long key : set)
+                retVal += key;
+            return retVal;
+        }
+    }
+
+    static final class VebMap implements LongCollection {
+        private final vebTreeMap<Object> map = new vebTreeMap<>();
+
+        @Override
+        public boolean add(long key) {
+            return map.put(key, VALUE) == null;
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return map.remove(key) != null;
+        }
+
+        @Override
+        public long successor(long key) {
+            return map.nextKey(key);
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (Map.Entry<Long, Object> e : map.entrySet())
+                retVal += e.getKey();
+            return retVal;
+        }
+    }
+
+    static final class VebLongIntMap implements LongCollection {
+        private final vebTreeLongIntMap map = new vebTreeLongIntMap(-1);
+
+        @Override
+        public boolean add(long key) {
+            return map.put(key, 1) == -1;
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return map.remove(key) != -1;
+        }
+
+        @Override
+        public long successor(long key) {
+            return map.nextKey(key);
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (LongIntCursor cursor = map.cursor(); cursor.advance(); )
+                retVal += cursor.key();
+            return retVal;
+        }
+    }
+
+    static final class LongRb implements LongCollection {
+        private final LongRbTree<Object> map = new LongRbTree<>(-1);
+
+        @Override
+        public boolean add(long key) {
+            return map.put(key, VALUE) == null;
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return map.remove(key) != null;
+        }
+
+        @Override
+        public long successor(long key) {
+            return map.higherKey(key);
+        }
+
+        @Override
+        public long sum() {
+            final long[] retVal = new long[1];
+            map.forEach((k, v) -> retVal[0] += k);
+            return retVal[0];
+        }
+    }
+
+    static final class JavaMap implements LongCollection {
+        private final Map<Long, Object> map;
+
+        JavaMap(Map<Long, Object> map) {
+            this.map = map;
+        }
+
+        @Override
+        public boolean add(long key) {
+            return map.put(key, VALUE) == null;
+        }
+
+        @Override
+        public boolean contains(long key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean remove(long key) {
+            return map.remove(key) != null;
+        }
+
+        @Override
+        public long successor(long key) {
+            if (!(map instanceof NavigableMap))
+                throw new UnsupportedOperationException(map.getClass().getSimpleName() + " has no successor query");
+            final Long retVal = ((NavigableMap<Long, Object>) map).higherKey(key);
+            return retVal == null? -1 : retVal;
+        }
+
+        @Override
+        public long sum() {
+            long retVal = 0;
+            for (Map.Entry<Long, Object> e : map.entrySet())
+                retVal += e.getKey();
+            return retVal;
+        }
+    }
+}
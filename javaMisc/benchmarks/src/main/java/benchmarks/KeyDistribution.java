@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * Distinct keys from [0; 2^32) in the order they are inserted.
+ */
+public enum KeyDistribution {
+    /**
+     * 0, 1, ..., size - 1 in ascending order
+     */
+    SEQUENTIAL {
+        @Override
+        long key(int i) {
+            return i;
+        }
+    },
+    /**
+     * 0, 1, ..., size - 1 in random order
+     */
+    DENSE {
+        @Override
+        long key(int i) {
+            return i;
+        }
+    },
+    /**
+     * uniformly spread over the whole universe
+     */
+    SPARSE {
+        @Override
+        long key(int i) {
+            return (i * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L) & MASK32;
+        }
+    },
+    /**
+     * runs of 256 consecutive keys, runs are spread over the whole universe
+     */
+    CLUSTERED {
+        @Override
+        long key(int i) {
+            final long run = ((i >>> 8) * 0x9E3779B97F4A7C15L) & ((1L << 24) - 1);
+            return (run << 8) | (i & 0xff);
+        }
+    };
+
+    static final long MASK32 = (1L << 32) - 1;
+
+    /**
+     * @return i-th distinct key (i < 2^24 for CLUSTERED, i < 2^32 otherwise)
+     */
+    abstract long key(int i);
+
+    public long[] generate(int size, long seed) {
+        final long[] retVal = new long[size];
+        for (int i = 0; i < size; ++i)
+            retVal[i] = key(i);
+        if (this != SEQUENTIAL)
+            shuffle(retVal, new Random(seed));
+        return retVal;
+    }
+
+    /**
+     * @return keys which are mostly absent from {@code keys}, half of returned keys are picked from {@code keys}
+     */
+    public static long[] probes(long[] keys, int count, long seed) {
+        final Random r = new Random(seed);
+        final long[] retVal = new long[count];
+        for (int i = 0; i < count; ++i)
+            retVal[i] = (i & 1) == 0? keys[r.nextInt(keys.length)] : r.nextLong() & MASK32;
+        return retVal;
+    }
+
+    static void shuffle(long[] a, Random r) {
+        for (int i = a.length - 1; i > 0; --i) {
+            final int j = r.nextInt(i + 1);
+            final long t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+/**
+ * Common facade over measured structures, so each benchmark body is shared by all of them.
+ * Every JMH fork uses single implementation, so calls through it stay monomorphic.
+ */
+interface LongCollection {
+    boolean add(long key);
+
+    boolean contains(long key);
+
+    boolean remove(long key);
+
+    /**
+     * @return the smallest key strictly greater than {@code key} or -1
+     */
+    long successor(long key);
+
+    /**
+     * Iterates over all keys.
+     * @return sum of keys
+     */
+    long sum();
+}
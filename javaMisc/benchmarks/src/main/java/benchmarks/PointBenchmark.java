@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single key operations on a filled structure, measured in batches of {@link #BATCH} keys
+ * taken in turn from a larger pool, so the probed paths do not all stay in cache.
+ * Half of contains probes hit.
+ * Heap limit of forks is sized for size=1e8, see {@link BulkBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx32g")
+@State(Scope.Benchmark)
+public class PointBenchmark {
+    static final int BATCH = 1024;
+    static final int POOL = 1 << 16;
+
+    @Param({"VEB_SET", "VEB_SET_SPARSE", "TREE_SET", "HASH_SET", "VEB_MAP", "VEB_LONG_INT_MAP", "RB_TREE", "RB_ARRAY_TREE", "LONG_RB_TREE", "TREE_MAP"})
+    public Impl impl;
+    @Param({"SEQUENTIAL", "DENSE", "SPARSE", "CLUSTERED"})
+    public KeyDistribution distribution;
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    private LongCollection filled;
+    private long[] probes;
+    private long[] present;
+    private int offset = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final long[] keys = distribution.generate(size, 42);
+        filled = impl.create();
+        for (long key : keys)
+            filled.add(key);
+        probes = KeyDistribution.probes(keys, POOL, 7);
+        present = new long[POOL];
+        for (int i = 0; i < POOL; ++i)
+            present[i] = keys[(int) ((i * 0x9E3779B97F4A7C15L >>> 1) % keys.length)];
+    }
+
+    private int nextBatch() {
+        final int retVal = offset;
+        offset = (offset + BATCH) & (POOL - 1);
+        return retVal;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int contains() {
+        final int from = nextBatch();
+        int retVal = 0;
+        for (int i = from; i < from + BATCH; ++i) {
+            if (filled.contains(probes[i]))
+                ++retVal;
+        }
+        return retVal;
+    }
+
+    /**
+     * Removes a batch of present keys and puts them back, i.e. one op is a remove plus an insert.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int removeAndReinsert() {
+        final int from = nextBatch();
+        int retVal = 0;
+        for (int i = from; i < from + BATCH; ++i) {
+            if (filled.remove(present[i]))
+                ++retVal;
+        }
+        for (int i = from; i < from + BATCH; ++i)
+            filled.add(present[i]);
+        return retVal;
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Successor (smallest key strictly greater than the probe) queries on a filled ordered structure.
+ * Heap limit of forks is sized for size=1e8, see {@link BulkBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx32g")
+@State(Scope.Benchmark)
+public class SuccessorBenchmark {
+    @Param({"VEB_SET", "VEB_SET_SPARSE", "TREE_SET", "VEB_MAP", "VEB_LONG_INT_MAP", "LONG_RB_TREE", "TREE_MAP"})
+    public Impl impl;
+    @Param({"SEQUENTIAL", "DENSE", "SPARSE", "CLUSTERED"})
+    public KeyDistribution distribution;
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    private LongCollection filled;
+    private long[] probes;
+    private int offset = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final long[] keys = distribution.generate(size, 42);
+        filled = impl.create();
+        for (long key : keys)
+            filled.add(key);
+        probes = KeyDistribution.probes(keys, PointBenchmark.POOL, 7);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PointBenchmark.BATCH)
+    public long successor() {
+        final int from = offset;
+        offset = (offset + PointBenchmark.BATCH) & (PointBenchmark.POOL - 1);
+        long retVal = 0;
+        for (int i = from; i < from + PointBenchmark.BATCH; ++i)
+            retVal += filled.successor(probes[i]);
+        return retVal;
+    }
+}
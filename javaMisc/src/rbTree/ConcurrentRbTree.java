@@ -0,0 +1,398 @@
+package rbTree;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * Thread safe {@link RbTree} guarded by a {@link StampedLock}. Writers take the write lock, so the rebalancing
+ * path of the tree is confined to the lock holder. Lookups walk the tree under an optimistic read stamp and take
+ * the read lock only if a writer interfered, so readers do not write shared memory and do not block each other. How
+ * reads scale with cores has not been measured yet, see {@code RB_CONCURRENT} in {@code ConcurrentBenchmark}.
+ * <p>
+ * Null keys and values are not allowed. Iteration is weakly consistent: every step looks up the next key
+ * separately, keys are returned in ascending order and {@link ConcurrentModificationException} is never thrown.
+ */
+public class ConcurrentRbTree<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    /**
+     * red black tree of at most 2^31 nodes is lower than that, longer walk met torn state
+     */
+    private static final int MAX_STEPS = 2 * Integer.SIZE;
+
+    private static final int EQUAL = 0;
+    private static final int CEILING = 1;
+    private static final int HIGHER = 2;
+    private static final int FLOOR = 3;
+    private static final int LOWER = 4;
+    private static final int FIRST = 5;
+    private static final int LAST = 6;
+
+    private final RbTree<K, V> tree;
+    private final Comparator<? super K> order;
+    private final StampedLock lock = new StampedLock();
+
+    @SuppressWarnings("WeakerAccess")
+    public ConcurrentRbTree() {
+        this(null);
+    }
+
+    /**
+     * @param comparator order of keys, natural if null
+     */
+    @SuppressWarnings({"unchecked", "WeakerAccess"})
+    public ConcurrentRbTree(Comparator<? super K> comparator) {
+        this.order = comparator == null? (Comparator<? super K>) RbTree.NATURAL : comparator;
+        this.tree = new RbTree<>(order);
+    }
+
+    public Comparator<? super K> comparator() {
+        return tree.comparator();
+    }
+
+    /**
+     * @return node found by lookup of given kind, LEAF if there is none, null if the walk met torn state
+     */
+    private RbTree.Node<K, V> walk(RbTree.Node<K, V> cur, int kind, K key) {
+        RbTree.Node<K, V> ret = RbTree.leaf();
+        for (int steps = 0; cur != RbTree.LEAF; ++steps) {
+            if (cur == null || steps > MAX_STEPS)
+                return null;
+            final int c = kind == FIRST? -1 : kind == LAST? 1 : order.compare(key, cur.key);
+            switch (kind) {
+                case EQUAL:
+                    if (c == 0)
+                        return cur;
+                    break;
+                case CEILING:
+                    if (c == 0)
+                        return cur;
+                    if (c < 0)
+                        ret = cur;
+                    break;
+                case HIGHER:
+                    if (c < 0)
+                        ret = cur;
+                    break;
+                case FLOOR:
+                    if (c == 0)
+                        return cur;
+                    if (c > 0)
+                        ret = cur;
+                    break;
+                case LOWER:
+                    if (c > 0)
+                        ret = cur;
+                    break;
+                default:
+                    ret = cur;
+            }
+            cur = (c < 0 || c == 0 && kind == LOWER)? cur.lChild : cur.rChild;
+        }
+        return ret;
+    }
+
+    /**
+     * Runs lookup optimistically, falls back to read lock if a writer interfered.
+     * {@code extract} must read everything it needs from the node, it runs before validation.
+     */
+    private <R> R read(int kind, K key, Function<RbTree.Node<K, V>, R> extract) {
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final RbTree.Node<K, V> node = walk(tree.rootNode(), kind, key);
+                if (node != null) {
+                    final R retVal = extract.apply(node);
+                    if (lock.validate(stamp))
+                        return retVal;
+                }
+            } catch (RuntimeException ignored) {
+                // torn state seen through a racing writer, retry under the lock
+            }
+        }
+        final long readStamp = lock.readLock();
+        try {
+            return extract.apply(walk(tree.rootNode(), kind, key));
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    private static <K, V> V valueOf(RbTree.Node<K, V> node) {
+        return node.value;
+    }
+
+    private static <K, V> Boolean isPresent(RbTree.Node<K, V> node) {
+        return node != RbTree.LEAF;
+    }
+
+    private static <K, V> K keyOf(RbTree.Node<K, V> node) {
+        return node == RbTree.LEAF? null : node.key;
+    }
+
+    private static <K, V> Entry<K, V> entryOf(RbTree.Node<K, V> node) {
+        return node == RbTree.LEAF? null : new SimpleImmutableEntry<>(node.key, node.value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K checkKey(Object key) {
+        if (key == null)
+            throw new NullPointerException("Key must be not null");
+        return (K) key;
+    }
+
+    @Override
+    public int size() {
+        final long stamp = lock.tryOptimisticRead();
+        final int retVal = tree.size();
+        if (stamp != 0 && lock.validate(stamp))
+            return retVal;
+        final long readStamp = lock.readLock();
+        try {
+            return tree.size();
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return read(EQUAL, checkKey(key), ConcurrentRbTree::isPresent);
+    }
+
+    @Override
+    public V get(Object key) {
+        return read(EQUAL, checkKey(key), ConcurrentRbTree::valueOf);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        final V retVal = get(key);
+        return retVal != null? retVal : defaultValue;
+    }
+
+    public K ceilingKey(K key) {
+        return read(CEILING, checkKey(key), ConcurrentRbTree::keyOf);
+    }
+
+    public K higherKey(K key) {
+        return read(HIGHER, checkKey(key), ConcurrentRbTree::keyOf);
+    }
+
+    public K floorKey(K key) {
+        return read(FLOOR, checkKey(key), ConcurrentRbTree::keyOf);
+    }
+
+    public K lowerKey(K key) {
+        return read(LOWER, checkKey(key), ConcurrentRbTree::keyOf);
+    }
+
+    public Entry<K, V> ceilingEntry(K key) {
+        return read(CEILING, checkKey(key), ConcurrentRbTree::entryOf);
+    }
+
+    public Entry<K, V> higherEntry(K key) {
+        return read(HIGHER, checkKey(key), ConcurrentRbTree::entryOf);
+    }
+
+    public Entry<K, V> floorEntry(K key) {
+        return read(FLOOR, checkKey(key), ConcurrentRbTree::entryOf);
+    }
+
+    public Entry<K, V> lowerEntry(K key) {
+        return read(LOWER, checkKey(key), ConcurrentRbTree::entryOf);
+    }
+
+    /**
+     * @return entry with the smallest key or null if the map is empty
+     */
+    public Entry<K, V> firstEntry() {
+        return read(FIRST, null, ConcurrentRbTree::entryOf);
+    }
+
+    /**
+     * @return entry with the largest key or null if the map is empty
+     */
+    public Entry<K, V> lastEntry() {
+        return read(LAST, null, ConcurrentRbTree::entryOf);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkKey(key);
+        Objects.requireNonNull(value);
+        final long stamp = lock.writeLock();
+        try {
+            return tree.put(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkKey(key);
+        Objects.requireNonNull(value);
+        final long stamp = lock.writeLock();
+        try {
+            final V retVal = tree.get(key);
+            if (retVal == null)
+                tree.put(key, value);
+            return retVal;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sorted maps are merged in one pass under a single write lock, see {@link RbTree#putAll}.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Entry<? extends K, ? extends V> e : m.entrySet()) {
+            checkKey(e.getKey());
+            Objects.requireNonNull(e.getValue());
+        }
+        final long stamp = lock.writeLock();
+        try {
+            tree.putAll(m);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        checkKey(key);
+        final long stamp = lock.writeLock();
+        try {
+            return tree.remove(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        checkKey(key);
+        if (value == null)
+            return false;
+        final long stamp = lock.writeLock();
+        try {
+            if (!value.equals(tree.get(key)))
+                return false;
+            tree.remove(key);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkKey(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        final long stamp = lock.writeLock();
+        try {
+            if (!oldValue.equals(tree.get(key)))
+                return false;
+            tree.put(key, newValue);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        checkKey(key);
+        Objects.requireNonNull(value);
+        final long stamp = lock.writeLock();
+        try {
+            final V retVal = tree.get(key);
+            if (retVal != null)
+                tree.put(key, value);
+            return retVal;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        final long stamp = lock.writeLock();
+        try {
+            tree.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private Entry<K, V> next = firstEntry();
+        private Entry<K, V> lastReturned = null;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            lastReturned = next;
+            next = higherEntry(next.getKey());
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            ConcurrentRbTree.this.remove(lastReturned.getKey());
+            lastReturned = null;
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentRbTree.this.size();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                final Entry<K, V> e = (Entry<K, V>) o;
+                return e.getKey() != null && e.getValue() != null && e.getValue().equals(get(e.getKey()));
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return o instanceof Map.Entry && ((Entry<?, ?>) o).getKey() != null &&
+                        ConcurrentRbTree.this.remove(((Entry<?, ?>) o).getKey(), ((Entry<?, ?>) o).getValue());
+            }
+
+            @Override
+            public void clear() {
+                ConcurrentRbTree.this.clear();
+            }
+        };
+    }
+}
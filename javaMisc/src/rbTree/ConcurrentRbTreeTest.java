@@ -0,0 +1,140 @@
+package rbTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentRbTreeTest {
+    @Test
+    void sequentialTest() {
+        TreeMap<Integer, Integer> tm = new TreeMap<>();
+        ConcurrentRbTree<Integer, Integer> rb = new ConcurrentRbTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 50000; ++i) {
+            int t = r.nextInt(5000);
+            switch (r.nextInt(6)) {
+                case 0:
+                    assertEquals(tm.remove(t), rb.remove(t));
+                    break;
+                case 1:
+                    assertEquals(tm.putIfAbsent(t, i), rb.putIfAbsent(t, i));
+                    break;
+                case 2:
+                    assertEquals(tm.replace(t, i), rb.replace(t, i));
+                    break;
+                case 3:
+                    assertEquals(tm.remove(t, t), rb.remove(t, t));
+                    break;
+                default:
+                    assertEquals(tm.put(t, t), rb.put(t, t));
+            }
+            assertEquals(tm.size(), rb.size());
+            if (i % 100 == 0) {
+                int probe = r.nextInt(5200) - 100;
+                assertEquals(tm.get(probe), rb.get(probe));
+                assertEquals(tm.containsKey(probe), rb.containsKey(probe));
+                assertEquals(tm.ceilingKey(probe), rb.ceilingKey(probe));
+                assertEquals(tm.higherEntry(probe), rb.higherEntry(probe));
+                assertEquals(tm.floorEntry(probe), rb.floorEntry(probe));
+                assertEquals(tm.lowerKey(probe), rb.lowerKey(probe));
+                assertEquals(tm.firstEntry(), rb.firstEntry());
+                assertEquals(tm.lastEntry(), rb.lastEntry());
+            }
+        }
+        assertEquals(tm, rb);
+        assertArrayEquals(tm.entrySet().toArray(), rb.entrySet().toArray());
+        for (Iterator<Integer> it = rb.keySet().iterator(); it.hasNext(); ) {
+            int t = it.next();
+            if (t % 3 == 0) {
+                it.remove();
+                tm.remove(t);
+            }
+            rb.put(t + 1, 0);
+            tm.put(t + 1, 0);
+        }
+        assertEquals(tm, rb);
+        rb.computeIfAbsent(-1, k -> 5);
+        assertEquals(5, (int) rb.get(-1));
+        assertThrows(NullPointerException.class, () -> rb.put(1, null));
+        assertThrows(NullPointerException.class, () -> rb.get(null));
+        rb.clear();
+        assertTrue(rb.isEmpty());
+        assertNull(rb.firstEntry());
+    }
+
+    @Test
+    void concurrentTest() throws Exception {
+        final int threads = 8;
+        final int perThread = 20000;
+        final ConcurrentRbTree<Long, Long> rb = new ConcurrentRbTree<>();
+        // keys divisible by 4 are never removed, so readers must always see them once added
+        final long[][] keys = new long[threads][perThread];
+        Random r = new Random(777);
+        for (long[] part : keys) {
+            for (int i = 0; i < perThread; ++i)
+                part[i] = r.nextLong() & ~3L | (i % 2 == 0? 0 : 1);
+        }
+        final long[] stable = new long[perThread / 2];
+        for (int i = 0; i < stable.length; ++i)
+            stable[i] = keys[0][2 * i];
+        for (long t : stable)
+            rb.put(t, t);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads + 2);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final List<Future<?>> writers = new ArrayList<>();
+        for (int th = 1; th < threads; ++th) {
+            final long[] part = keys[th];
+            writers.add(pool.submit(() -> {
+                for (int round = 0; round < 3; ++round) {
+                    for (long t : part)
+                        rb.put(t, t);
+                    for (int i = 1; i < part.length; i += 2)
+                        rb.remove(part[i]);
+                }
+            }));
+        }
+        final List<Future<?>> readers = new ArrayList<>();
+        for (int th = 0; th < 2; ++th) {
+            readers.add(pool.submit(() -> {
+                Random rr = new Random();
+                while (!done.get()) {
+                    long t = stable[rr.nextInt(stable.length)];
+                    assertEquals(t, (long) rb.get(t));
+                    long next = rb.ceilingKey(t - 1);
+                    assertTrue(next > t - 1 && next <= t);
+                    long prev = rb.floorKey(t + 1);
+                    assertTrue(prev >= t && prev <= t + 1);
+                    long last = Long.MIN_VALUE;
+                    int seen = 0;
+                    for (Iterator<Map.Entry<Long, Long>> it = rb.entrySet().iterator(); it.hasNext() && seen < 1000; ++seen) {
+                        Map.Entry<Long, Long> e = it.next();
+                        assertTrue(e.getKey() > last);
+                        assertEquals(e.getKey(), e.getValue());
+                        last = e.getKey();
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : writers)
+            f.get();
+        done.set(true);
+        for (Future<?> f : readers)
+            f.get();
+        pool.shutdown();
+
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long t : stable)
+            expected.add(t);
+        for (int th = 1; th < threads; ++th) {
+            for (int i = 0; i < perThread; i += 2)
+                expected.add(keys[th][i]);
+        }
+        assertEquals(expected.size(), rb.size());
+        assertArrayEquals(expected.toArray(), rb.keySet().toArray());
+    }
+}
@@ -0,0 +1,456 @@
+package rbTree;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+/**
+ * {@link RbTree} specialized for primitive long keys in signed order. Keys are compared inline, nothing is boxed.
+ * There is no separate int version, int keys widen to long without changing their order.
+ * <p>
+ * Navigation methods return {@link #noKey()} when there is no such key. It defaults to {@link Long#MIN_VALUE}
+ * and is still a legal key, use {@link #containsKey} when it may be stored.
+ */
+public class LongRbTree<V> {
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    static class Node<V> {
+        Node<V> lChild = null;
+        Node<V> rChild = null;
+        boolean red = false;
+        long key;
+        V value;
+
+        Node(long key, V value, boolean red) {
+            this.key = key;
+            this.value = value;
+            this.red = red;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Node LEAF = new Node<>(0, null, false);
+    private Node<V> root;
+    private final long noKey;
+    private int size = 0;
+    private long changes = 0;
+
+    @SuppressWarnings("WeakerAccess")
+    public LongRbTree() {
+        this(Long.MIN_VALUE);
+    }
+
+    /**
+     * @param noKey value returned by navigation methods when there is no such key
+     */
+    @SuppressWarnings({"unchecked", "WeakerAccess"})
+    public LongRbTree(long noKey) {
+        this.noKey = noKey;
+        LEAF.lChild = LEAF;
+        LEAF.rChild = LEAF;
+        this.root = LEAF;
+    }
+
+    public long noKey() {
+        return noKey;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return findNodeEqual(key) != LEAF;
+    }
+
+    private Node<V> findNodeEqual(long key) {
+        Node<V> ret = root;
+        long k;
+        while (ret != LEAF && (k = ret.key) != key) {
+            ret = (key < k) ? ret.lChild : ret.rChild;
+        }
+        return ret;
+    }
+
+    public V get(long key) {
+        return findNodeEqual(key).value;
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        final Node<V> node = findNodeEqual(key);
+        return node != LEAF? node.value : defaultValue;
+    }
+
+    public long firstKey() {
+        Node<V> cur = root;
+        if (cur == LEAF)
+            return noKey;
+        while (cur.lChild != LEAF)
+            cur = cur.lChild;
+        return cur.key;
+    }
+
+    public long lastKey() {
+        Node<V> cur = root;
+        if (cur == LEAF)
+            return noKey;
+        while (cur.rChild != LEAF)
+            cur = cur.rChild;
+        return cur.key;
+    }
+
+    /**
+     * @return the smallest key greater than (or equal to, if inclusive) {@code key} or {@link #noKey()}
+     */
+    private long ceiling(long key, boolean inclusive) {
+        long ret = noKey;
+        Node<V> cur = root;
+        while (cur != LEAF) {
+            final long k = cur.key;
+            if (k > key || k == key && inclusive) {
+                ret = k;
+                if (k == key)
+                    break;
+                cur = cur.lChild;
+            } else {
+                cur = cur.rChild;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the largest key less than (or equal to, if inclusive) {@code key} or {@link #noKey()}
+     */
+    private long floor(long key, boolean inclusive) {
+        long ret = noKey;
+        Node<V> cur = root;
+        while (cur != LEAF) {
+            final long k = cur.key;
+            if (k < key || k == key && inclusive) {
+                ret = k;
+                if (k == key)
+                    break;
+                cur = cur.rChild;
+            } else {
+                cur = cur.lChild;
+            }
+        }
+        return ret;
+    }
+
+    public long lowerKey(long key) {
+        return floor(key, false);
+    }
+
+    public long floorKey(long key) {
+        return floor(key, true);
+    }
+
+    public long ceilingKey(long key) {
+        return ceiling(key, true);
+    }
+
+    public long higherKey(long key) {
+        return ceiling(key, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V> createNode(long key, V value, boolean color) {
+        final Node<V> ret = new Node<>(key, value, color);
+        ret.lChild = LEAF;
+        ret.rChild = LEAF;
+        return ret;
+    }
+
+    private static <V> Node<V> parent(List<Node<V>> path) {
+        return path.get(path.size() - 2);
+    }
+    private static <V> Node<V> grandParent(List<Node<V>> path) {
+        return path.get(path.size() - 3);
+    }
+    private static <V> Node<V> otherChild(Node<V> node, Node<?> notThis){
+        return  (node.lChild != notThis)? node.lChild : node.rChild;
+    }
+    private static <V> Node<V> uncle(List<Node<V>> path) {
+        final Node<V> g = grandParent(path);
+        final Node<V> p = parent(path);
+        return otherChild(g, p);
+    }
+
+    private static <V> Node<V> pop(List<Node<V>> path){
+        return path.remove(path.size() - 1);
+    }
+    private static <V> Node<V> peek(List<Node<V>> path){
+        return path.get(path.size() - 1);
+    }
+
+    private static <V> void rotateLeft(List<Node<V>> path) {
+        final Node<V> b = pop(path);
+        final Node<V> d = b.rChild;
+        final Node<V> c = d.lChild;
+        if (!path.isEmpty()){
+            if (peek(path).lChild == b)
+                peek(path).lChild = d;
+            else
+                peek(path).rChild = d;
+        }
+        b.rChild = c;
+        d.lChild = b;
+        path.add(d);
+        path.add(b);
+    }
+    private static <V> void rotateRight(List<Node<V>> path) {
+        final Node<V> d = pop(path);
+        final Node<V> b = d.lChild;
+        final Node<V> c = b.rChild;
+        if (!path.isEmpty()){
+            if (peek(path).lChild == d)
+                peek(path).lChild = b;
+            else
+                peek(path).rChild = b;
+        }
+        b.rChild = d;
+        d.lChild = c;
+        path.add(b);
+        path.add(d);
+    }
+
+    private final ArrayList<Node<V>> path = new ArrayList<>();
+
+    @SuppressWarnings("Duplicates")
+    public V put(long key, V value) {
+        if (root == LEAF) {
+            root = createNode(key, value, false);
+            ++size;
+            ++changes;
+            return null;
+        }
+        path.add(root);
+        Node<V> t;
+        while ((t = peek(path)) != LEAF && t.key != key) {
+            path.add(key < t.key ? t.lChild : t.rChild);
+        }
+        if (t != LEAF) {
+            V retVal = t.value;
+            t.value = value;
+            ++changes;
+            path.clear();
+            return retVal;
+        }
+
+        t = createNode(key, value, true);
+        pop(path);
+        if (key < peek(path).key)
+            peek(path).lChild = t;
+        else
+            peek(path).rChild = t;
+        path.add(t);
+        boolean fixed = false;
+        while (path.size() > 2 && !fixed) { // i.e. grandParent exists
+            if (!parent(path).red) //parent is black
+                fixed = true;
+                //now we know parent is red
+            else if (uncle(path).red) { //booth parent and uncle are red
+                grandParent(path).red = true;
+                parent(path).red = false;
+                uncle(path).red = false;
+                pop(path);
+                pop(path); //now we balancing from grandpa which is red
+            } else {
+                if (grandParent(path).lChild == parent(path)){
+                    if (parent(path).rChild == peek(path)){
+                        pop(path);
+                        rotateLeft(path);
+                    }
+                    parent(path).red = false;
+                    grandParent(path).red = true;
+                    pop(path);
+                    pop(path);
+                    rotateRight(path);
+                    fixed = true;
+                } else {
+                    if (parent(path).lChild == peek(path)){
+                        pop(path);
+                        rotateRight(path);
+                    }
+                    parent(path).red = false;
+                    grandParent(path).red = true;
+                    pop(path);
+                    pop(path);
+                    rotateLeft(path);
+                    fixed = true;
+                }
+            }
+        }
+        root = path.get(0);
+        path.clear();
+        root.red = false;
+        ++size;
+        ++changes;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        size = 0;
+        ++changes;
+        root = LEAF;
+    }
+
+    @SuppressWarnings("Duplicates")
+    public V remove(long key){
+        path.add(root);
+        Node<V> t;
+        while ((t = peek(path)) != LEAF && t.key != key) {
+            path.add(key < t.key ? t.lChild : t.rChild);
+        }
+        if (t == LEAF) {
+            path.clear();
+            return null;
+        }
+        V retVal = t.value;
+        if (t.lChild != LEAF && t.rChild != LEAF){
+            path.add(peek(path).rChild);
+            Node<V> tt;
+            while ((tt = peek(path).lChild) != LEAF)
+                path.add(tt);
+            tt = peek(path);
+            t.key = tt.key;
+            t.value = tt.value;
+        }
+
+        boolean fixed;
+        if (path.size() == 1){
+            path.set(0, otherChild(root, LEAF));
+            fixed = true;
+        }
+        else {
+            t = pop(path);
+            Node<V> child = otherChild(t, LEAF);
+            fixed = t.red;
+            if (!t.red && child.red){
+                fixed = true;
+                child.red = false;
+            }
+            Node<V> p = peek(path);
+            if (p.lChild == t)
+                p.lChild = child;
+            else
+                p.rChild = child;
+            path.add(child);
+        }
+
+        while (path.size() > 1 && !fixed){
+            t = pop(path);
+            if (peek(path).lChild == t){
+                if (peek(path).rChild.red){
+                    rotateLeft(path);
+                    peek(path).red = true;
+                    parent(path).red = false;
+                }
+                Node<V> p = peek(path);
+                Node<V> s = otherChild(peek(path), t);
+                if (!p.red && !s.lChild.red && !s.rChild.red){
+                    if (s != LEAF) s.red = true;
+                } else if (p.red && !s.lChild.red && !s.rChild.red) {
+                    p.red = false;
+                    if (s != LEAF) s.red = true;
+                    fixed = true;
+                } else if (s.lChild.red && !s.rChild.red){
+                    s.red = true;
+                    s.lChild.red = false;
+                    path.add(s);
+                    rotateRight(path);
+                    pop(path);
+                    pop(path);
+                    path.add(t);
+                } else {
+                    s.red = p.red;
+                    p.red = false;
+                    s.rChild.red = false;
+                    rotateLeft(path);
+                    fixed = true;
+                }
+            } else {
+                if (peek(path).lChild.red){
+                    rotateRight(path);
+                    peek(path).red = true;
+                    parent(path).red = false;
+                }
+                Node<V> p = peek(path);
+                Node<V> s = otherChild(peek(path), t);
+                if (!p.red && !s.lChild.red && !s.rChild.red){
+                    if (s != LEAF) s.red = true;
+                } else if (p.red && !s.lChild.red && !s.rChild.red) {
+                    p.red = false;
+                    if (s != LEAF) s.red = true;
+                    fixed = true;
+                } else if (s.rChild.red && !s.lChild.red){
+                    s.red = true;
+                    s.rChild.red = false;
+                    path.add(s);
+                    rotateLeft(path);
+                    pop(path);
+                    pop(path);
+                    path.add(t);
+                } else {
+                    s.red = p.red;
+                    p.red = false;
+                    s.lChild.red = false;
+                    rotateRight(path);
+                    fixed = true;
+                }
+            }
+        }
+        root = path.get(0);
+        path.clear();
+        root.red = false;
+        --size;
+        ++changes;
+        return retVal;
+    }
+
+    /**
+     * In-order traversal, throws {@link ConcurrentModificationException} if {@code action} modifies the tree.
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        final long expectedChanges = changes;
+        @SuppressWarnings("unchecked")
+        final Node<V>[] stack = (Node<V>[]) new Node<?>[2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size + 1))];
+        int depth = 0;
+        Node<V> cur = root;
+        while (cur != LEAF || depth > 0) {
+            for (; cur != LEAF; cur = cur.lChild)
+                stack[depth++] = cur;
+            cur = stack[--depth];
+            action.accept(cur.key, cur.value);
+            if (changes != expectedChanges)
+                throw new ConcurrentModificationException();
+            cur = cur.rChild;
+        }
+    }
+
+    /**
+     * @return keys in ascending order
+     */
+    public long[] keys() {
+        final long[] ret = new long[size];
+        forEach(new EntryConsumer<V>() {
+            private int i = 0;
+
+            @Override
+            public void accept(long key, V value) {
+                ret[i++] = key;
+            }
+        });
+        return ret;
+    }
+}
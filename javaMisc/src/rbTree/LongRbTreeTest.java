@@ -0,0 +1,65 @@
+package rbTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongRbTreeTest {
+    private static long expectedKey(Long key, LongRbTree<?> tree) {
+        return key == null? tree.noKey() : key;
+    }
+
+    @Test
+    void randomOpsTest() {
+        TreeMap<Long, Integer> tm = new TreeMap<>();
+        LongRbTree<Integer> rb = new LongRbTree<>(-1);
+        Random r = new Random(777);
+        assertEquals(-1, rb.firstKey());
+        assertEquals(-1, rb.ceilingKey(0));
+        for (int i = 0; i < 100000; ++i) {
+            long t = r.nextInt(8) == 0? r.nextLong() : r.nextInt(5000) - 2500;
+            if (r.nextInt(3) == 0)
+                assertEquals(tm.remove(t), rb.remove(t));
+            else
+                assertEquals(tm.put(t, i), rb.put(t, i));
+            assertEquals(tm.size(), rb.size());
+            if (i % 100 == 0) {
+                long probe = r.nextInt(5200) - 2600;
+                assertEquals(tm.get(probe), rb.get(probe));
+                assertEquals(tm.containsKey(probe), rb.containsKey(probe));
+                assertEquals(tm.getOrDefault(probe, -7), rb.getOrDefault(probe, -7));
+                assertEquals(expectedKey(tm.lowerKey(probe), rb), rb.lowerKey(probe));
+                assertEquals(expectedKey(tm.floorKey(probe), rb), rb.floorKey(probe));
+                assertEquals(expectedKey(tm.ceilingKey(probe), rb), rb.ceilingKey(probe));
+                assertEquals(expectedKey(tm.higherKey(probe), rb), rb.higherKey(probe));
+            }
+        }
+        assertEquals((long) tm.firstKey(), rb.firstKey());
+        assertEquals((long) tm.lastKey(), rb.lastKey());
+        assertArrayEquals(tm.keySet().stream().mapToLong(Long::longValue).toArray(), rb.keys());
+        List<Map.Entry<Long, Integer>> viaForEach = new ArrayList<>();
+        rb.forEach((k, v) -> viaForEach.add(new AbstractMap.SimpleEntry<>(k, v)));
+        assertEquals(new ArrayList<>(tm.entrySet()), viaForEach);
+        assertThrows(ConcurrentModificationException.class, () -> rb.forEach((k, v) -> rb.remove(k)));
+        rb.clear();
+        assertTrue(rb.isEmpty());
+        assertNull(rb.get(0));
+    }
+
+    @Test
+    void extremeKeysTest() {
+        LongRbTree<String> rb = new LongRbTree<>();
+        assertEquals(Long.MIN_VALUE, rb.noKey());
+        rb.put(Long.MAX_VALUE, "max");
+        rb.put(Long.MIN_VALUE, "min");
+        rb.put(0, "zero");
+        assertEquals(Long.MIN_VALUE, rb.firstKey());
+        assertEquals(Long.MAX_VALUE, rb.higherKey(0));
+        assertEquals(0, rb.lowerKey(Long.MAX_VALUE));
+        assertEquals(rb.noKey(), rb.higherKey(Long.MAX_VALUE));
+        assertEquals("min", rb.remove(Long.MIN_VALUE));
+        assertArrayEquals(new long[]{0, Long.MAX_VALUE}, rb.keys());
+    }
+}
@@ -0,0 +1,627 @@
+package rbTree;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Red black tree with path copying. {@link #put} and {@link #remove} copy every node they change (the search path
+ * and siblings recolored or rotated by rebalancing) and publish the new root at once, published nodes are never
+ * modified. So {@link #snapshot()} is O(1) and snapshots, as well as iterators of this map, see a fixed version
+ * of the tree and may be used from any thread while the writer continues.
+ * <p>
+ * Writes must not run concurrently with each other.
+ */
+public class PersistentRbTree<K, V> extends AbstractMap<K, V> {
+    /**
+     * Nodes are handed out by iterators as entries, {@link #setValue} is not supported as nodes are shared between
+     * versions.
+     */
+    static final class Node<K, V> implements Map.Entry<K, V> {
+        Node<K, V> lChild = null;
+        Node<K, V> rChild = null;
+        boolean red = false;
+        /**
+         * number of nodes in this subtree, 0 for LEAF
+         */
+        int count = 0;
+        K key;
+        V value;
+        /**
+         * write which created this node, only this write may modify it
+         */
+        long version;
+
+        Node(K key, V value, boolean red) {
+            this.key = key;
+            this.value = value;
+            this.red = red;
+        }
+
+        Node(Node<K, V> other, long version) {
+            this(other.key, other.value, other.red);
+            this.lChild = other.lChild;
+            this.rChild = other.rChild;
+            this.count = other.count;
+            this.version = version;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("Nodes of persistent tree are immutable");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Node LEAF = newLeaf();
+
+    private static Node<?, ?> newLeaf() {
+        final Node<Object, Object> leaf = new Node<>(null, null, false);
+        leaf.lChild = leaf;
+        leaf.rChild = leaf;
+        return leaf;
+    }
+
+    private volatile Node<K, V> root;
+    private final Comparator<? super K> comparator;
+    /**
+     * incremented by every write, nodes with this version belong to the running write
+     */
+    private long version = 0;
+
+    @SuppressWarnings({"unchecked", "WeakerAccess"})
+    public PersistentRbTree() {
+        this((Comparator<? super K>) RbTree.NATURAL);
+    }
+
+    @SuppressWarnings({"unchecked", "WeakerAccess"})
+    public PersistentRbTree(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.root = LEAF;
+    }
+
+    /**
+     * Immutable view of the tree as it was when the snapshot was taken.
+     */
+    public static final class Snapshot<K, V> extends AbstractMap<K, V> {
+        private final Node<K, V> root;
+        private final Comparator<? super K> comparator;
+
+        Snapshot(Node<K, V> root, Comparator<? super K> comparator) {
+            this.root = root;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public int size() {
+            return root.count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return root == LEAF;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return findNodeEqual(root, key, comparator) != LEAF;
+        }
+
+        @Override
+        public V get(Object key) {
+            return findNodeEqual(root, key, comparator).value;
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            PersistentRbTree.forEach(root, action);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new NodeIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return root.count;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return immutable view of the current version, O(1)
+     */
+    public Snapshot<K, V> snapshot() {
+        return new Snapshot<>(root, comparator);
+    }
+
+    @Override
+    public int size() {
+        return root.count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == LEAF;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> findNodeEqual(Node<K, V> root, Object key, Comparator<? super K> comparator) {
+        final K k = (K) key;
+        Node<K, V> ret = root;
+        int c;
+        while (ret != LEAF && (c = comparator.compare(k, ret.key)) != 0) {
+            ret = (c < 0) ? ret.lChild : ret.rChild;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findNodeEqual(root, key, comparator) != LEAF;
+    }
+
+    @Override
+    public V get(Object key) {
+        return findNodeEqual(root, key, comparator).value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> createNode(K key, V value, boolean color) {
+        final Node<K, V> ret = new Node<>(key, value, color);
+        ret.count = 1;
+        ret.lChild = LEAF;
+        ret.rChild = LEAF;
+        ret.version = version;
+        return ret;
+    }
+
+    /**
+     * @return node itself if the running write may modify it, its copy otherwise
+     */
+    private Node<K, V> own(Node<K, V> node) {
+        return (node == LEAF || node.version == version)? node : new Node<>(node, version);
+    }
+    private Node<K, V> ownLeft(Node<K, V> parent) {
+        return parent.lChild = own(parent.lChild);
+    }
+    private Node<K, V> ownRight(Node<K, V> parent) {
+        return parent.rChild = own(parent.rChild);
+    }
+
+    /**
+     * Replaces path with its copy linked from the copied root.
+     */
+    private void ownPath() {
+        Node<K, V> prev = null;
+        for (int i = 0; i < path.size(); ++i) {
+            final Node<K, V> node = path.get(i);
+            final Node<K, V> copy = own(node);
+            if (prev != null) {
+                if (prev.lChild == node)
+                    prev.lChild = copy;
+                else
+                    prev.rChild = copy;
+            }
+            path.set(i, copy);
+            prev = copy;
+        }
+    }
+
+    private static <K, V> Node<K, V> parent(List<Node<K, V>> path) {
+        return path.get(path.size() - 2);
+    }
+    private static <K, V> Node<K, V> grandParent(List<Node<K, V>> path) {
+        return path.get(path.size() - 3);
+    }
+    private static <K, V> Node<K, V> otherChild(Node<K, V> node, Node<?, ?> notThis){
+        return  (node.lChild != notThis)? node.lChild : node.rChild;
+    }
+    private static <K, V> Node<K, V> uncle(List<Node<K, V>> path) {
+        final Node<K, V> g = grandParent(path);
+        final Node<K, V> p = parent(path);
+        return otherChild(g, p);
+    }
+    private Node<K, V> ownUncle(List<Node<K, V>> path) {
+        final Node<K, V> g = grandParent(path);
+        return (g.lChild == parent(path))? ownRight(g) : ownLeft(g);
+    }
+
+    private static <K, V> Node<K, V> pop(List<Node<K, V>> path){
+        return path.remove(path.size() - 1);
+    }
+    private static <K, V> Node<K, V> peek(List<Node<K, V>> path){
+        return path.get(path.size() - 1);
+    }
+
+    private void rotateLeft(List<Node<K, V>> path) {
+        final Node<K, V> b = pop(path);
+        final Node<K, V> d = ownRight(b);
+        final Node<K, V> c = d.lChild;
+        if (!path.isEmpty()){
+            if (peek(path).lChild == b)
+                peek(path).lChild = d;
+            else
+                peek(path).rChild = d;
+        }
+        b.rChild = c;
+        d.lChild = b;
+        d.count = b.count;
+        b.count = b.lChild.count + c.count + 1;
+        path.add(d);
+        path.add(b);
+    }
+    private void rotateRight(List<Node<K, V>> path) {
+        final Node<K, V> d = pop(path);
+        final Node<K, V> b = ownLeft(d);
+        final Node<K, V> c = b.rChild;
+        if (!path.isEmpty()){
+            if (peek(path).lChild == d)
+                peek(path).lChild = b;
+            else
+                peek(path).rChild = b;
+        }
+        b.rChild = d;
+        d.lChild = c;
+        b.count = d.count;
+        d.count = c.count + d.rChild.count + 1;
+        path.add(b);
+        path.add(d);
+    }
+
+    /**
+     * Makes path[0] black and publishes it as the new root.
+     */
+    private void publish() {
+        Node<K, V> newRoot = path.get(0);
+        path.clear();
+        if (newRoot.red) {
+            newRoot = own(newRoot);
+            newRoot.red = false;
+        }
+        root = newRoot;
+    }
+
+    private final ArrayList<Node<K, V>> path = new ArrayList<>();
+
+    @Override
+    @SuppressWarnings("Duplicates")
+    public V put(K key, V value) {
+        if (key == null)
+            throw new NullPointerException("Key must be not null");
+        ++version;
+        final Node<K, V> top = root;
+        if (top == LEAF) {
+            root = createNode(key, value, false);
+            return null;
+        }
+        path.add(top);
+        int c = 0;
+        Node<K, V> t;
+        while ((t = peek(path)) != LEAF && (c = comparator.compare(key, t.key)) != 0) {
+            path.add(c < 0 ? t.lChild : t.rChild);
+        }
+        if (t != LEAF) {
+            V retVal = t.value;
+            ownPath();
+            peek(path).value = value;
+            publish();
+            return retVal;
+        }
+
+        t = createNode(key, value, true);
+        pop(path);
+        ownPath();
+        for (Node<K, V> ancestor : path)
+            ++ancestor.count;
+        if (c < 0)
+            peek(path).lChild = t;
+        else
+            peek(path).rChild = t;
+        path.add(t);
+        boolean fixed = false;
+        while (path.size() > 2 && !fixed) { // i.e. grandParent exists
+            if (!parent(path).red) //parent is black
+                fixed = true;
+                //now we know parent is red
+            else if (uncle(path).red) { //booth parent and uncle are red
+                grandParent(path).red = true;
+                parent(path).red = false;
+                ownUncle(path).red = false;
+                pop(path);
+                pop(path); //now we balancing from grandpa which is red
+            } else {
+                if (grandParent(path).lChild == parent(path)){
+                    if (parent(path).rChild == peek(path)){
+                        pop(path);
+                        rotateLeft(path);
+                    }
+                    parent(path).red = false;
+                    grandParent(path).red = true;
+                    pop(path);
+                    pop(path);
+                    rotateRight(path);
+                    fixed = true;
+                } else {
+                    if (parent(path).lChild == peek(path)){
+                        pop(path);
+                        rotateRight(path);
+                    }
+                    parent(path).red = false;
+                    grandParent(path).red = true;
+                    pop(path);
+                    pop(path);
+                    rotateLeft(path);
+                    fixed = true;
+                }
+            }
+        }
+        publish();
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        root = LEAF;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        return erase((K) key);
+    }
+
+    @SuppressWarnings("Duplicates")
+    private V erase(K key){
+        path.add(root);
+        int c;
+        Node<K, V> t;
+        while ((t = peek(path)) != LEAF && (c = comparator.compare(key, t.key)) != 0) {
+            path.add(c < 0 ? t.lChild : t.rChild);
+        }
+        if (t == LEAF) {
+            path.clear();
+            return null;
+        }
+        ++version;
+        final V retVal = t.value;
+        final int found = path.size() - 1;
+        final boolean hasBothChildren = t.lChild != LEAF && t.rChild != LEAF;
+        if (hasBothChildren) {
+            path.add(peek(path).rChild);
+            Node<K, V> tt;
+            while ((tt = peek(path).lChild) != LEAF)
+                path.add(tt);
+        }
+        ownPath();
+        if (hasBothChildren) {
+            t = path.get(found);
+            final Node<K, V> tt = peek(path);
+            t.key = tt.key;
+            t.value = tt.value;
+        }
+        for (int i = 0; i < path.size() - 1; ++i)
+            --path.get(i).count;
+
+        boolean fixed;
+        if (path.size() == 1){
+            path.set(0, otherChild(path.get(0), LEAF));
+            fixed = true;
+        }
+        else {
+            t = pop(path);
+            Node<K, V> child = otherChild(t, LEAF);
+            fixed = t.red;
+            if (!t.red && child.red){
+                fixed = true;
+                child = own(child);
+                child.red = false;
+            }
+            Node<K, V> p = peek(path);
+            if (p.lChild == t)
+                p.lChild = child;
+            else
+                p.rChild = child;
+            path.add(child);
+        }
+
+        while (path.size() > 1 && !fixed){
+            t = pop(path);
+            if (peek(path).lChild == t){
+                if (peek(path).rChild.red){
+                    rotateLeft(path);
+                    peek(path).red = true;
+                    parent(path).red = false;
+                }
+                Node<K, V> p = peek(path);
+                Node<K, V> s = ownRight(p);
+                if (!p.red && !s.lChild.red && !s.rChild.red){
+                    if (s != LEAF) s.red = true;
+                } else if (p.red && !s.lChild.red && !s.rChild.red) {
+                    p.red = false;
+                    if (s != LEAF) s.red = true;
+                    fixed = true;
+                } else if (s.lChild.red && !s.rChild.red){
+                    s.red = true;
+                    ownLeft(s).red = false;
+                    path.add(s);
+                    rotateRight(path);
+                    pop(path);
+                    pop(path);
+                    path.add(t);
+                } else {
+                    s.red = p.red;
+                    p.red = false;
+                    ownRight(s).red = false;
+                    rotateLeft(path);
+                    fixed = true;
+                }
+            } else {
+                if (peek(path).lChild.red){
+                    rotateRight(path);
+                    peek(path).red = true;
+                    parent(path).red = false;
+                }
+                Node<K, V> p = peek(path);
+                Node<K, V> s = ownLeft(p);
+                if (!p.red && !s.lChild.red && !s.rChild.red){
+                    if (s != LEAF) s.red = true;
+                } else if (p.red && !s.lChild.red && !s.rChild.red) {
+                    p.red = false;
+                    if (s != LEAF) s.red = true;
+                    fixed = true;
+                } else if (s.rChild.red && !s.lChild.red){
+                    s.red = true;
+                    ownRight(s).red = false;
+                    path.add(s);
+                    rotateLeft(path);
+                    pop(path);
+                    pop(path);
+                    path.add(t);
+                } else {
+                    s.red = p.red;
+                    p.red = false;
+                    ownLeft(s).red = false;
+                    rotateRight(path);
+                    fixed = true;
+                }
+            }
+        }
+        publish();
+        return retVal;
+    }
+
+    /**
+     * @return upper bound of the tree height, the height of red black tree is at most 2 log2(size + 1)
+     */
+    private static int maxHeight(Node<?, ?> root) {
+        return 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(root.count + 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newStack(Node<K, V> root) {
+        return (Node<K, V>[]) new Node<?, ?>[maxHeight(root)];
+    }
+
+    private static <K, V> void forEach(Node<K, V> root, BiConsumer<? super K, ? super V> action) {
+        final Node<K, V>[] stack = newStack(root);
+        int depth = 0;
+        Node<K, V> cur = root;
+        while (cur != LEAF || depth > 0) {
+            for (; cur != LEAF; cur = cur.lChild)
+                stack[depth++] = cur;
+            cur = stack[--depth];
+            action.accept(cur.key, cur.value);
+            cur = cur.rChild;
+        }
+    }
+
+    /**
+     * Visits the version current at the time of the call, so {@code action} may modify the tree.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    /**
+     * In-order walk over one version of the tree.
+     */
+    private static class NodeIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Node<K, V>[] stack;
+        private int depth = 0;
+        Node<K, V> lastReturned = null;
+
+        NodeIterator(Node<K, V> root) {
+            stack = newStack(root);
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<K, V> node) {
+            for (; node != LEAF; node = node.lChild)
+                stack[depth++] = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (depth == 0)
+                throw new NoSuchElementException();
+            final Node<K, V> retVal = stack[--depth];
+            pushLeft(retVal.rChild);
+            lastReturned = retVal;
+            return retVal;
+        }
+    }
+
+    /**
+     * Iterators walk the version current at the time they were created and never throw
+     * {@link ConcurrentModificationException}.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new NodeIterator<K, V>(root) {
+                    @Override
+                    public void remove() {
+                        if (lastReturned == null)
+                            throw new IllegalStateException();
+                        PersistentRbTree.this.remove(lastReturned.key);
+                        lastReturned = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return root.count;
+            }
+
+            @Override
+            public void clear() {
+                PersistentRbTree.this.clear();
+            }
+        };
+    }
+}
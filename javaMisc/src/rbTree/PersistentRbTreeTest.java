@@ -0,0 +1,109 @@
+package rbTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentRbTreeTest {
+    @Test
+    void snapshotTest() {
+        TreeMap<Integer, Integer> tm = new TreeMap<>();
+        PersistentRbTree<Integer, Integer> rb = new PersistentRbTree<>();
+        List<Map<Integer, Integer>> expected = new ArrayList<>();
+        List<PersistentRbTree.Snapshot<Integer, Integer>> snapshots = new ArrayList<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 60000; ++i) {
+            int t = r.nextInt(3000);
+            if (r.nextInt(3) == 0)
+                assertEquals(tm.remove(t), rb.remove(t));
+            else
+                assertEquals(tm.put(t, i), rb.put(t, i));
+            assertEquals(tm.size(), rb.size());
+            if (i % 3000 == 0) {
+                expected.add(new TreeMap<>(tm));
+                snapshots.add(rb.snapshot());
+            }
+        }
+        assertEquals(tm, rb);
+        assertArrayEquals(tm.entrySet().toArray(), rb.entrySet().toArray());
+        for (int i = 0; i < snapshots.size(); ++i) {
+            final Map<Integer, Integer> snapshot = snapshots.get(i);
+            assertEquals(expected.get(i), snapshot);
+            assertArrayEquals(expected.get(i).entrySet().toArray(), snapshot.entrySet().toArray());
+            assertEquals(expected.get(i).containsKey(17), snapshot.containsKey(17));
+            assertEquals(expected.get(i).get(17), snapshot.get(17));
+            assertThrows(UnsupportedOperationException.class, () -> snapshot.put(1, 1));
+            if (!snapshot.isEmpty())
+                assertThrows(UnsupportedOperationException.class, () -> snapshot.entrySet().iterator().next().setValue(1));
+        }
+
+        // iterators walk the version they started with
+        for (Iterator<Map.Entry<Integer, Integer>> it = rb.entrySet().iterator(); it.hasNext(); ) {
+            int t = it.next().getKey();
+            if (t % 2 == 0)
+                it.remove();
+            rb.put(t + 100000, t);
+            tm.put(t + 100000, t);
+        }
+        tm.keySet().removeIf(t -> t < 100000 && t % 2 == 0);
+        assertEquals(tm, rb);
+        List<Integer> keys = new ArrayList<>();
+        rb.forEach((k, v) -> {
+            keys.add(k);
+            rb.remove(k);
+        });
+        assertEquals(new ArrayList<>(tm.keySet()), keys);
+        assertTrue(rb.isEmpty());
+        assertEquals(expected.get(expected.size() - 1), snapshots.get(snapshots.size() - 1));
+        assertThrows(NullPointerException.class, () -> rb.put(null, 1));
+    }
+
+    @Test
+    void concurrentReadersTest() throws Exception {
+        // the writer keeps keys [g - 100; g] between put and remove, so any consistent version holds at most
+        // window + 1 consecutive keys with value = 2 * key
+        final int window = 100;
+        final int generations = 200000;
+        final PersistentRbTree<Integer, Integer> rb = new PersistentRbTree<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(3);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final List<Future<?>> readers = new ArrayList<>();
+        for (int th = 0; th < 2; ++th) {
+            readers.add(pool.submit(() -> {
+                while (!done.get()) {
+                    final Map<Integer, Integer> snapshot = rb.snapshot();
+                    int prev = -1;
+                    int seen = 0;
+                    for (Map.Entry<Integer, Integer> e : snapshot.entrySet()) {
+                        assertEquals(2 * e.getKey(), (int) e.getValue());
+                        assertTrue(prev == -1 || e.getKey() == prev + 1);
+                        prev = e.getKey();
+                        ++seen;
+                    }
+                    assertEquals(snapshot.size(), seen);
+                    assertTrue(seen <= window + 1);
+                    if (prev != -1)
+                        assertEquals(2 * prev, (int) snapshot.get(prev));
+                }
+            }));
+        }
+        final Future<?> writer = pool.submit(() -> {
+            for (int g = 0; g < generations; ++g) {
+                rb.put(g, 2 * g);
+                if (g >= window)
+                    rb.remove(g - window);
+            }
+        });
+        writer.get();
+        done.set(true);
+        for (Future<?> f : readers)
+            f.get();
+        pool.shutdown();
+        assertEquals(window, rb.size());
+        assertEquals(generations - window, (int) rb.entrySet().iterator().next().getKey());
+    }
+}
@@ -0,0 +1,675 @@
+package rbTree;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Red black tree with the same {@link Map} behaviour as {@link RbTree}, stored as structure of arrays:
+ * node {@code i} is {@code keys[i]}, {@code values[i]}, children {@code left[i]}, {@code right[i]} and bit
+ * {@code i} of {@code red}. Index 0 is the black LEAF sentinel. Slots of removed nodes are chained into
+ * a free list through {@code left} and reused by later insertions.
+ * <p>
+ * Per entry it takes two ints, two references and a bit instead of a separate node object, and only
+ * keys and values are references traced by GC.
+ */
+public class RbArrayTree<K, V> extends AbstractMap<K, V> {
+    private static final int LEAF = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+    /**
+     * height of red black tree is at most 2 log2(n + 1) < 64, a rotation may add one more node to the path
+     */
+    private static final int MAX_PATH = 66;
+
+    private final Comparator<? super K> comparator;
+    private int[] left;
+    private int[] right;
+    private long[] red;
+    private Object[] keys;
+    private Object[] values;
+    private int root = LEAF;
+    /**
+     * slots [1; top) have been used, free ones are chained through left starting from freeHead
+     */
+    private int top = 1;
+    private int freeHead = LEAF;
+    private int size = 0;
+    private long changes = 0;
+
+    private final int[] path = new int[MAX_PATH];
+    private int depth = 0;
+
+    @SuppressWarnings({"unchecked", "WeakerAccess"})
+    public RbArrayTree() {
+        this((Comparator<? super K>) RbTree.NATURAL);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public RbArrayTree(Comparator<? super K> comparator) {
+        this(DEFAULT_CAPACITY, comparator);
+    }
+
+    /**
+     * @param capacity number of entries to preallocate
+     */
+    @SuppressWarnings("WeakerAccess")
+    public RbArrayTree(int capacity, Comparator<? super K> comparator) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        this.comparator = comparator;
+        allocate(capacity + 1);
+    }
+
+    private void allocate(int capacity) {
+        left = new int[capacity];
+        right = new int[capacity];
+        red = new long[(capacity + 63) >>> 6];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+    }
+
+    private void grow() {
+        final int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(DEFAULT_CAPACITY, 2L * left.length));
+        if (capacity <= left.length)
+            throw new IllegalStateException("Tree is full");
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    private int compare(K k1, K k2) {
+        return comparator.compare(k1, k2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int node) {
+        return (K) keys[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int node) {
+        return (V) values[node];
+    }
+
+    private boolean isRed(int node) {
+        return (red[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void setRed(int node, boolean isRed) {
+        if (isRed)
+            red[node >>> 6] |= 1L << node;
+        else
+            red[node >>> 6] &= ~(1L << node);
+    }
+
+    private int createNode(K key, V value, boolean color) {
+        int ret = freeHead;
+        if (ret != LEAF) {
+            freeHead = left[ret];
+        } else {
+            if (top == left.length)
+                grow();
+            ret = top++;
+        }
+        keys[ret] = key;
+        values[ret] = value;
+        left[ret] = LEAF;
+        right[ret] = LEAF;
+        setRed(ret, color);
+        return ret;
+    }
+
+    private void freeNode(int node) {
+        keys[node] = null;
+        values[node] = null;
+        right[node] = LEAF;
+        setRed(node, false);
+        left[node] = freeHead;
+        freeHead = node;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int findNodeEqual(K key) {
+        int ret = root;
+        int c;
+        while (ret != LEAF && (c = compare(key, key(ret))) != 0) {
+            ret = (c < 0) ? left[ret] : right[ret];
+        }
+        return ret;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        return findNodeEqual((K) key) != LEAF;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return value(findNodeEqual((K) key));
+    }
+
+    private void push(int node) {
+        path[depth++] = node;
+    }
+    private int pop() {
+        return path[--depth];
+    }
+    private int peek() {
+        return path[depth - 1];
+    }
+    private int parent() {
+        return path[depth - 2];
+    }
+    private int grandParent() {
+        return path[depth - 3];
+    }
+    private int otherChild(int node, int notThis) {
+        return (left[node] != notThis) ? left[node] : right[node];
+    }
+    private int uncle() {
+        return otherChild(grandParent(), parent());
+    }
+
+    private void rotateLeft() {
+        final int b = pop();
+        final int d = right[b];
+        final int c = left[d];
+        if (depth > 0) {
+            if (left[peek()] == b)
+                left[peek()] = d;
+            else
+                right[peek()] = d;
+        }
+        right[b] = c;
+        left[d] = b;
+        push(d);
+        push(b);
+    }
+    private void rotateRight() {
+        final int d = pop();
+        final int b = left[d];
+        final int c = right[b];
+        if (depth > 0) {
+            if (left[peek()] == d)
+                left[peek()] = b;
+            else
+                right[peek()] = b;
+        }
+        right[b] = d;
+        left[d] = c;
+        push(b);
+        push(d);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null)
+            throw new NullPointerException("Key must be not null");
+        if (root == LEAF) {
+            root = createNode(key, value, false);
+            ++size;
+            ++changes;
+            return null;
+        }
+        push(root);
+        int c = 0;
+        int t;
+        while ((t = peek()) != LEAF && (c = compare(key, key(t))) != 0) {
+            push(c < 0 ? left[t] : right[t]);
+        }
+        if (t != LEAF) {
+            V retVal = value(t);
+            values[t] = value;
+            ++changes;
+            depth = 0;
+            return retVal;
+        }
+
+        t = createNode(key, value, true);
+        pop();
+        if (c < 0)
+            left[peek()] = t;
+        else
+            right[peek()] = t;
+        push(t);
+        boolean fixed = false;
+        while (depth > 2 && !fixed) { // i.e. grandParent exists
+            if (!isRed(parent())) //parent is black
+                fixed = true;
+                //now we know parent is red
+            else if (isRed(uncle())) { //booth parent and uncle are red
+                setRed(grandParent(), true);
+                setRed(parent(), false);
+                setRed(uncle(), false);
+                pop();
+                pop(); //now we balancing from grandpa which is red
+            } else {
+                if (left[grandParent()] == parent()) {
+                    if (right[parent()] == peek()) {
+                        pop();
+                        rotateLeft();
+                    }
+                    setRed(parent(), false);
+                    setRed(grandParent(), true);
+                    pop();
+                    pop();
+                    rotateRight();
+                    fixed = true;
+                } else {
+                    if (left[parent()] == peek()) {
+                        pop();
+                        rotateRight();
+                    }
+                    setRed(parent(), false);
+                    setRed(grandParent(), true);
+                    pop();
+                    pop();
+                    rotateLeft();
+                    fixed = true;
+                }
+            }
+        }
+        root = path[0];
+        depth = 0;
+        setRed(root, false);
+        ++size;
+        ++changes;
+        return null;
+    }
+
+    /**
+     * Removes all entries, allocated arrays are kept for the next entries.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 1, top, null);
+        Arrays.fill(values, 1, top, null);
+        size = 0;
+        ++changes;
+        root = LEAF;
+        top = 1;
+        freeHead = LEAF;
+    }
+
+    /**
+     * @return number of entries the tree can hold without growing
+     */
+    int capacity() {
+        return left.length - 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        return erase((K) key);
+    }
+
+    @SuppressWarnings("Duplicates")
+    private V erase(K key) {
+        push(root);
+        int c;
+        int t;
+        while ((t = peek()) != LEAF && (c = compare(key, key(t))) != 0) {
+            push(c < 0 ? left[t] : right[t]);
+        }
+        if (t == LEAF) {
+            depth = 0;
+            return null;
+        }
+        V retVal = value(t);
+        if (left[t] != LEAF && right[t] != LEAF) {
+            push(right[peek()]);
+            int tt;
+            while ((tt = left[peek()]) != LEAF)
+                push(tt);
+            tt = peek();
+            keys[t] = keys[tt];
+            values[t] = values[tt];
+        }
+
+        boolean fixed;
+        if (depth == 1) {
+            final int removed = root;
+            path[0] = otherChild(root, LEAF);
+            freeNode(removed);
+            fixed = true;
+        } else {
+            t = pop();
+            int child = otherChild(t, LEAF);
+            fixed = isRed(t);
+            if (!isRed(t) && isRed(child)) {
+                fixed = true;
+                setRed(child, false);
+            }
+            int p = peek();
+            if (left[p] == t)
+                left[p] = child;
+            else
+                right[p] = child;
+            push(child);
+            freeNode(t);
+        }
+
+        while (depth > 1 && !fixed) {
+            t = pop();
+            if (left[peek()] == t) {
+                if (isRed(right[peek()])) {
+                    rotateLeft();
+                    setRed(peek(), true);
+                    setRed(parent(), false);
+                }
+                int p = peek();
+                int s = otherChild(peek(), t);
+                if (!isRed(p) && !isRed(left[s]) && !isRed(right[s])) {
+                    if (s != LEAF) setRed(s, true);
+                } else if (isRed(p) && !isRed(left[s]) && !isRed(right[s])) {
+                    setRed(p, false);
+                    if (s != LEAF) setRed(s, true);
+                    fixed = true;
+                } else if (isRed(left[s]) && !isRed(right[s])) {
+                    setRed(s, true);
+                    setRed(left[s], false);
+                    push(s);
+                    rotateRight();
+                    pop();
+                    pop();
+                    push(t);
+                } else {
+                    setRed(s, isRed(p));
+                    setRed(p, false);
+                    setRed(right[s], false);
+                    rotateLeft();
+                    fixed = true;
+                }
+            } else {
+                if (isRed(left[peek()])) {
+                    rotateRight();
+                    setRed(peek(), true);
+                    setRed(parent(), false);
+                }
+                int p = peek();
+                int s = otherChild(peek(), t);
+                if (!isRed(p) && !isRed(left[s]) && !isRed(right[s])) {
+                    if (s != LEAF) setRed(s, true);
+                } else if (isRed(p) && !isRed(left[s]) && !isRed(right[s])) {
+                    setRed(p, false);
+                    if (s != LEAF) setRed(s, true);
+                    fixed = true;
+                } else if (isRed(right[s]) && !isRed(left[s])) {
+                    setRed(s, true);
+                    setRed(right[s], false);
+                    push(s);
+                    rotateLeft();
+                    pop();
+                    pop();
+                    push(t);
+                } else {
+                    setRed(s, isRed(p));
+                    setRed(p, false);
+                    setRed(left[s], false);
+                    rotateRight();
+                    fixed = true;
+                }
+            }
+        }
+        root = path[0];
+        depth = 0;
+        setRed(root, false);
+        --size;
+        ++changes;
+        return retVal;
+    }
+
+    /**
+     * @return upper bound of the tree height, the height of red black tree is at most 2 log2(size + 1)
+     */
+    private int maxHeight() {
+        return 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size + 1));
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        final long expectedChanges = changes;
+        final int[] stack = new int[maxHeight()];
+        int stackDepth = 0;
+        int cur = root;
+        while (cur != LEAF || stackDepth > 0) {
+            for (; cur != LEAF; cur = left[cur])
+                stack[stackDepth++] = cur;
+            cur = stack[--stackDepth];
+            action.accept(key(cur), value(cur));
+            if (changes != expectedChanges)
+                throw new ConcurrentModificationException();
+            cur = right[cur];
+        }
+    }
+
+    /**
+     * In-order walk keeping the left spine of unvisited nodes in an int array sized to the tree height.
+     */
+    private abstract class NodeIterator<T> implements Iterator<T> {
+        private long changes = RbArrayTree.this.changes;
+        private final int[] stack = new int[maxHeight()];
+        private int stackDepth = 0;
+        private int lastReturned = LEAF;
+
+        NodeIterator() {
+            pushLeft(root);
+        }
+
+        private void pushLeft(int node) {
+            for (; node != LEAF; node = left[node])
+                stack[stackDepth++] = node;
+        }
+
+        final int nextNode() {
+            if (RbArrayTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+            if (stackDepth == 0)
+                throw new NoSuchElementException();
+            final int retVal = stack[--stackDepth];
+            pushLeft(right[retVal]);
+            lastReturned = retVal;
+            return retVal;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (RbArrayTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+            return stackDepth > 0;
+        }
+
+        /**
+         * Erasing may move keys between slots, so the walk is restarted right after the removed key.
+         */
+        @Override
+        public void remove() {
+            if (lastReturned == LEAF)
+                throw new IllegalStateException();
+            if (RbArrayTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+            final K key = key(lastReturned);
+            lastReturned = LEAF;
+            final boolean hadNext = stackDepth > 0;
+            erase(key);
+            changes = RbArrayTree.this.changes;
+            stackDepth = 0;
+            if (!hadNext)
+                return;
+            for (int node = root; node != LEAF; ) {
+                if (compare(key(node), key) > 0) {
+                    stack[stackDepth++] = node;
+                    node = left[node];
+                } else {
+                    node = right[node];
+                }
+            }
+        }
+    }
+
+    /**
+     * Entry of a slot, {@link #setValue} writes through while the slot holds the same key.
+     */
+    private final class SlotEntry implements Entry<K, V> {
+        private final int node;
+        private final K key;
+        private V value;
+
+        SlotEntry(int node) {
+            this.node = node;
+            this.key = key(node);
+            this.value = value(node);
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (keys[node] != key)
+                throw new ConcurrentModificationException();
+            values[node] = value;
+            final V retVal = this.value;
+            this.value = value;
+            return retVal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            final Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new NodeIterator<Entry<K, V>>() {
+                    @Override
+                    public Entry<K, V> next() {
+                        return new SlotEntry(nextNode());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return RbArrayTree.this.size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Entry<K, V> e = (Entry<K, V>) o;
+                int n = findNodeEqual(e.getKey());
+                return n != LEAF && Objects.equals(values[n], e.getValue());
+            }
+
+            @Override
+            public void clear() {
+                RbArrayTree.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return new NodeIterator<K>() {
+                    @Override
+                    public K next() {
+                        return key(nextNode());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return RbArrayTree.this.size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (!containsKey(o))
+                    return false;
+                RbArrayTree.this.remove(o);
+                return true;
+            }
+
+            @Override
+            public void clear() {
+                RbArrayTree.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new NodeIterator<V>() {
+                    @Override
+                    public V next() {
+                        return value(nextNode());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return RbArrayTree.this.size;
+            }
+
+            @Override
+            public void clear() {
+                RbArrayTree.this.clear();
+            }
+        };
+    }
+}
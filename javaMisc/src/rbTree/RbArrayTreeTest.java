@@ -0,0 +1,119 @@
+package rbTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RbArrayTreeTest {
+    @Test
+    void randomOpsTest() {
+        Map<Integer, Integer> tm = new TreeMap<>();
+        Map<Integer, Integer> rb = new RbArrayTree<>(0, Comparator.naturalOrder());
+        Random r = new Random(777);
+        for (int i = 0; i < 100000; ++i) {
+            int t = r.nextInt(5000);
+            if (r.nextInt(3) == 0)
+                assertEquals(tm.remove(t), rb.remove(t));
+            else
+                assertEquals(tm.put(t, i), rb.put(t, i));
+            assertEquals(tm.size(), rb.size());
+            if (i % 1000 == 0) {
+                int probe = r.nextInt(5000);
+                assertEquals(tm.get(probe), rb.get(probe));
+                assertEquals(tm.containsKey(probe), rb.containsKey(probe));
+            }
+        }
+        assertEquals(tm, rb);
+        assertEquals(rb, tm);
+        assertEquals(tm.hashCode(), rb.hashCode());
+        assertThrows(NullPointerException.class, () -> rb.put(null, 0));
+
+        rb.clear();
+        assertTrue(rb.isEmpty());
+        assertNull(rb.get(1));
+        rb.put(1, 1);
+        assertEquals(Collections.singletonMap(1, 1), rb);
+
+        RbArrayTree<Integer, Integer> presized = new RbArrayTree<>(10000, Comparator.naturalOrder());
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 10000; ++i)
+                presized.put(i, i);
+            assertEquals(10000, presized.capacity());
+            presized.clear();
+            assertEquals(10000, presized.capacity());
+            assertTrue(presized.isEmpty());
+        }
+    }
+
+    @Test
+    void iterationTest() {
+        TreeMap<Integer, String> tm = new TreeMap<>();
+        RbArrayTree<Integer, String> rb = new RbArrayTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 20000; ++i) {
+            int t = r.nextInt(100000);
+            tm.put(t, "v" + i);
+            rb.put(t, "v" + i);
+        }
+        assertArrayEquals(tm.entrySet().toArray(), rb.entrySet().toArray());
+        assertArrayEquals(tm.keySet().toArray(), rb.keySet().toArray());
+        assertArrayEquals(tm.values().toArray(), rb.values().toArray());
+        List<Map.Entry<Integer, String>> viaForEach = new ArrayList<>();
+        rb.forEach((k, v) -> viaForEach.add(new AbstractMap.SimpleEntry<>(k, v)));
+        assertEquals(new ArrayList<>(tm.entrySet()), viaForEach);
+
+        for (Map.Entry<Integer, String> e : rb.entrySet())
+            e.setValue(e.getValue() + "!");
+        for (Map.Entry<Integer, String> e : tm.entrySet())
+            assertEquals(e.getValue() + "!", rb.get(e.getKey()));
+        tm.replaceAll((k, v) -> v + "!");
+
+        // removal through iterator moves keys between slots, the walk must still visit every key once
+        for (Iterator<Map.Entry<Integer, String>> it = rb.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getKey() % 3 != 0)
+                it.remove();
+        }
+        tm.keySet().removeIf(t -> t % 3 != 0);
+        assertEquals(tm, rb);
+        rb.values().removeIf(v -> v.startsWith("v1"));
+        tm.values().removeIf(v -> v.startsWith("v1"));
+        assertEquals(tm, rb);
+
+        Iterator<Integer> it = rb.keySet().iterator();
+        it.next();
+        rb.remove(tm.firstKey());
+        assertThrows(ConcurrentModificationException.class, it::next);
+        assertThrows(ConcurrentModificationException.class, () -> rb.forEach((k, v) -> rb.remove(k)));
+
+        Iterator<Map.Entry<Integer, String>> empty = new RbArrayTree<Integer, String>().entrySet().iterator();
+        assertFalse(empty.hasNext());
+        assertThrows(NoSuchElementException.class, empty::next);
+        assertThrows(IllegalStateException.class, empty::remove);
+        assertTrue(rb.keySet().remove(tm.lastKey()));
+        assertFalse(rb.keySet().remove(-1));
+        assertFalse(rb.containsKey(tm.lastKey()));
+    }
+
+    @Test
+    void slotReuseTest() {
+        RbArrayTree<String, Integer> rb = new RbArrayTree<>(Comparator.reverseOrder());
+        TreeMap<String, Integer> tm = new TreeMap<>(Comparator.reverseOrder());
+        Random r = new Random(777);
+        for (int round = 0; round < 20; ++round) {
+            for (int i = 0; i < 1000; ++i) {
+                String t = Integer.toString(r.nextInt(2000));
+                assertEquals(tm.put(t, i), rb.put(t, i));
+            }
+            for (Iterator<String> it = tm.keySet().iterator(); it.hasNext(); ) {
+                String t = it.next();
+                if (r.nextBoolean()) {
+                    it.remove();
+                    assertNotNull(rb.remove(t));
+                }
+            }
+            assertArrayEquals(tm.entrySet().toArray(), rb.entrySet().toArray());
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package rbTree;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-public class RbTree<K, V> extends AbstractMap<K, V> {
-    static class Node<K, V> {
+public class RbTree<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    /**
+     * Nodes are handed out by iterators as entries, so iteration allocates nothing per element.
+     */
+    static class Node<K, V> implements Map.Entry<K, V> {
         Node<K, V> lChild = null;
         Node<K, V> rChild = null;
         boolean red = false;
+        /**
+         * number of nodes in this subtree, 0 for LEAF
+         */
+        int count = 0;
         K key;
         V value;
 
@@ -15,21 +24,60 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
             this.value = value;
             this.red = red;
         }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            final V retVal = this.value;
+            this.value = value;
+            return retVal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
     }
 
-    private static final Node LEAF = new Node<>(null, null, false);
+    @SuppressWarnings("rawtypes")
+    static final Node LEAF = new Node<>(null, null, false);
     private Node<K, V> root;
     private final Comparator<? super K> comparator;
     private int size = 0;
     private long changes = 0;
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static final Comparator NATURAL = (k1, k2) -> ((Comparable) k1).compareTo(k2);
+
     private int compare(K k1, K k2) {
         return comparator.compare(k1, k2);
     }
 
     @SuppressWarnings({"unchecked", "WeakerAccess"})
     public RbTree() {
-        this((k1, k2) -> ((Comparable<? super K>) k1).compareTo(k2));
+        this((Comparator<? super K>) NATURAL);
     }
 
     @SuppressWarnings({"unchecked", "WeakerAccess"})
@@ -40,6 +88,21 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
         this.root = LEAF;
     }
 
+    /**
+     * @return the shared LEAF sentinel typed for the caller
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> Node<K, V> leaf() {
+        return (Node<K, V>) LEAF;
+    }
+
+    /**
+     * for lookups of {@link ConcurrentRbTree} which walk the tree themselves
+     */
+    Node<K, V> rootNode() {
+        return root;
+    }
+
     @Override
     public int size() {
         return size;
@@ -66,6 +129,91 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
         return ret;
     }
 
+    /**
+     * @return node with the smallest key or null if the tree is empty
+     */
+    private Node<K, V> lowestNode() {
+        Node<K, V> ret = root;
+        if (ret == LEAF)
+            return null;
+        while (ret.lChild != LEAF)
+            ret = ret.lChild;
+        return ret;
+    }
+
+    /**
+     * @return node with the largest key or null if the tree is empty
+     */
+    private Node<K, V> highestNode() {
+        Node<K, V> ret = root;
+        if (ret == LEAF)
+            return null;
+        while (ret.rChild != LEAF)
+            ret = ret.rChild;
+        return ret;
+    }
+
+    /**
+     * @return node with the smallest key greater than (or equal to, if inclusive) {@code key} or null
+     */
+    private Node<K, V> ceilingNode(K key, boolean inclusive) {
+        Node<K, V> ret = null;
+        Node<K, V> cur = root;
+        while (cur != LEAF) {
+            final int c = compare(cur.key, key);
+            if (c > 0 || c == 0 && inclusive) {
+                ret = cur;
+                if (c == 0)
+                    break;
+                cur = cur.lChild;
+            } else {
+                cur = cur.rChild;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return node with the largest key less than (or equal to, if inclusive) {@code key} or null
+     */
+    private Node<K, V> floorNode(K key, boolean inclusive) {
+        Node<K, V> ret = null;
+        Node<K, V> cur = root;
+        while (cur != LEAF) {
+            final int c = compare(cur.key, key);
+            if (c < 0 || c == 0 && inclusive) {
+                ret = cur;
+                if (c == 0)
+                    break;
+                cur = cur.rChild;
+            } else {
+                cur = cur.lChild;
+            }
+        }
+        return ret;
+    }
+
+    private static <K, V> Entry<K, V> exportEntry(Node<K, V> node) {
+        return node == null? null : new SimpleImmutableEntry<>(node.key, node.value);
+    }
+
+    private static <K> K keyOrNull(Node<K, ?> node) {
+        return node == null? null : node.key;
+    }
+
+    private static <K> K keyOrThrow(Node<K, ?> node) {
+        if (node == null)
+            throw new NoSuchElementException();
+        return node.key;
+    }
+
+    private Entry<K, V> pollNode(Node<K, V> node) {
+        final Entry<K, V> retVal = exportEntry(node);
+        if (node != null)
+            erase(node.key);
+        return retVal;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public V get(Object key) {
@@ -75,6 +223,7 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
     @SuppressWarnings("unchecked")
     private static <K, V> Node<K, V> createNode(K key, V value, boolean color) {
         final Node<K, V> ret = new Node<>(key, value, color);
+        ret.count = 1;
         ret.lChild = LEAF;
         ret.rChild = LEAF;
         return ret;
@@ -86,7 +235,7 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
     private static <K, V> Node<K, V> grandParent(List<Node<K, V>> path) {
         return path.get(path.size() - 3);
     }
-    private static <K, V> Node<K, V> otherChild(Node<K, V> node, Node notThis){
+    private static <K, V> Node<K, V> otherChild(Node<K, V> node, Node<?, ?> notThis){
         return  (node.lChild != notThis)? node.lChild : node.rChild;
     }
     private static <K, V> Node<K, V> uncle(List<Node<K, V>> path) {
@@ -114,6 +263,8 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
         }
         b.rChild = c;
         d.lChild = b;
+        d.count = b.count;
+        b.count = b.lChild.count + c.count + 1;
         path.add(d);
         path.add(b);
     }
@@ -129,6 +280,8 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
         }
         b.rChild = d;
         d.lChild = c;
+        b.count = d.count;
+        d.count = c.count + d.rChild.count + 1;
         path.add(b);
         path.add(d);
     }
@@ -160,6 +313,8 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
 
         t = createNode(key, value, true);
         pop(path);
+        for (Node<K, V> ancestor : path)
+            ++ancestor.count;
         if (c < 0)
             peek(path).lChild = t;
         else
@@ -219,6 +374,302 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
         root = LEAF;
     }
 
+    /**
+     * Builds tree of keys[i] to values[i] for i in [from; to) in linear time, keys must be ascending
+     * in natural order, for duplicate keys the last value wins.
+     * @throws IllegalArgumentException if keys are not sorted
+     */
+    public static <K, V> RbTree<K, V> fromSorted(K[] keys, V[] values, int from, int to) {
+        return fromSorted(keys, values, from, to, null);
+    }
+
+    /**
+     * Builds tree of keys[i] to values[i] for i in [from; to) in linear time, keys must be ascending
+     * in the order of comparator (natural if null), for duplicate keys the last value wins.
+     * @throws IllegalArgumentException if keys are not sorted
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> RbTree<K, V> fromSorted(K[] keys, V[] values, int from, int to,
+                                                 Comparator<? super K> comparator) {
+        final RbTree<K, V> retVal = new RbTree<>(comparator == null? (Comparator<? super K>) NATURAL : comparator);
+        if (from < 0 || from > to || to > keys.length || to > values.length)
+            throw new IndexOutOfBoundsException("Range [" + from + "; " + to + ") out of arrays of length " +
+                    keys.length + " and " + values.length);
+        int distinct = 0;
+        for (int i = from; i < to; ++i) {
+            if (keys[i] == null)
+                throw new NullPointerException("Key must be not null");
+            final int c = i == from? -1 : retVal.compare(keys[i - 1], keys[i]);
+            if (c > 0)
+                throw new IllegalArgumentException("Keys are not sorted at index " + i);
+            if (c < 0)
+                ++distinct;
+        }
+        Object[] uniqueKeys = keys;
+        Object[] uniqueValues = values;
+        if (distinct < to - from) {
+            uniqueKeys = new Object[distinct];
+            uniqueValues = new Object[distinct];
+            int n = 0;
+            for (int i = from; i < to; ++i) {
+                if (i + 1 < to && retVal.compare(keys[i + 1], keys[i]) == 0)
+                    continue;
+                uniqueKeys[n] = keys[i];
+                uniqueValues[n++] = values[i];
+            }
+            from = 0;
+            to = distinct;
+        }
+        retVal.rebuild(uniqueKeys, uniqueValues, from, to);
+        return retVal;
+    }
+
+    /**
+     * Replaces content with distinct ascending keys[i] to values[i] for i in [from; to).
+     */
+    private void rebuild(Object[] keys, Object[] values, int from, int to) {
+        final int n = to - from;
+        // levels above the last one are full, nodes of the last level are red, so every path has same black height
+        final int redLevel = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(n + 1);
+        root = buildBalanced(keys, values, from, to, 0, redLevel);
+        size = n;
+        ++changes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> buildBalanced(Object[] keys, Object[] values, int from, int to,
+                                                   int level, int redLevel) {
+        if (from >= to)
+            return LEAF;
+        final int mid = (from + to) >>> 1;
+        final Node<K, V> node = createNode((K) keys[mid], (V) values[mid], level == redLevel);
+        node.lChild = buildBalanced(keys, values, from, mid, level + 1, redLevel);
+        node.rChild = buildBalanced(keys, values, mid + 1, to, level + 1, redLevel);
+        node.count = to - from;
+        return node;
+    }
+
+    /**
+     * {@link SortedMap}s with the same {@link #comparator()} which are at least as large as this tree
+     * are merged with it and the tree is rebuilt at once, as by {@link #fromSorted}.
+     * Other maps are put entry by entry.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (m.isEmpty() || m.size() < size || !(m instanceof SortedMap) ||
+                !Objects.equals(((SortedMap<?, ?>) m).comparator(), comparator())) {
+            super.putAll(m);
+            return;
+        }
+        final Object[] keys = new Object[size + m.size()];
+        final Object[] values = new Object[keys.length];
+        int n = 0;
+        final Iterator<Entry<K, V>> mine = new EntryIterator(wholeRange(false), false);
+        Entry<K, V> cur = mine.hasNext()? mine.next() : null;
+        for (Entry<? extends K, ? extends V> e : m.entrySet()) {
+            final K key = e.getKey();
+            if (key == null)
+                throw new NullPointerException("Key must be not null");
+            int c = -1;
+            for (; cur != null && (c = compare(cur.getKey(), key)) < 0; cur = mine.hasNext()? mine.next() : null) {
+                keys[n] = cur.getKey();
+                values[n++] = cur.getValue();
+            }
+            if (cur != null && c == 0)
+                cur = mine.hasNext()? mine.next() : null;
+            keys[n] = key;
+            values[n++] = e.getValue();
+        }
+        for (; cur != null; cur = mine.hasNext()? mine.next() : null) {
+            keys[n] = cur.getKey();
+            values[n++] = cur.getValue();
+        }
+        rebuild(keys, values, 0, n);
+    }
+
+    /**
+     * number of black nodes on a path from {@code node} down to LEAF
+     */
+    private static int blackHeight(Node<?, ?> node) {
+        int retVal = 0;
+        for (; node != LEAF; node = node.lChild) {
+            if (!node.red)
+                ++retVal;
+        }
+        return retVal;
+    }
+
+    private static <K, V> Node<K, V> rotateLeftAt(Node<K, V> b) {
+        final Node<K, V> d = b.rChild;
+        b.rChild = d.lChild;
+        d.lChild = b;
+        d.count = b.count;
+        b.count = b.lChild.count + b.rChild.count + 1;
+        return d;
+    }
+
+    private static <K, V> Node<K, V> rotateRightAt(Node<K, V> d) {
+        final Node<K, V> b = d.lChild;
+        d.lChild = b.rChild;
+        b.rChild = d;
+        b.count = d.count;
+        d.count = d.lChild.count + d.rChild.count + 1;
+        return b;
+    }
+
+    /**
+     * Hangs red {@code m} with children {@code l}, {@code r} in place of the first black node of black
+     * height {@code hR} on the right spine of {@code l}, red-red conflicts are rotated away on the way up.
+     */
+    private static <K, V> Node<K, V> joinRight(Node<K, V> l, int hL, Node<K, V> m, Node<K, V> r, int hR) {
+        if (!l.red && hL == hR) {
+            m.lChild = l;
+            m.rChild = r;
+            m.red = true;
+            m.count = l.count + r.count + 1;
+            return m;
+        }
+        final Node<K, V> t = joinRight(l.rChild, l.red? hL : hL - 1, m, r, hR);
+        l.rChild = t;
+        l.count = l.lChild.count + t.count + 1;
+        if (!l.red && t.red && t.rChild.red) {
+            t.rChild.red = false;
+            return rotateLeftAt(l);
+        }
+        return l;
+    }
+
+    private static <K, V> Node<K, V> joinLeft(Node<K, V> l, int hL, Node<K, V> m, Node<K, V> r, int hR) {
+        if (!r.red && hL == hR) {
+            m.lChild = l;
+            m.rChild = r;
+            m.red = true;
+            m.count = l.count + r.count + 1;
+            return m;
+        }
+        final Node<K, V> t = joinLeft(l, hL, m, r.lChild, r.red? hR : hR - 1);
+        r.lChild = t;
+        r.count = t.count + r.rChild.count + 1;
+        if (!r.red && t.red && t.lChild.red) {
+            t.lChild.red = false;
+            return rotateRightAt(r);
+        }
+        return r;
+    }
+
+    /**
+     * black height of the tree returned by the last {@link #join(Node, int, Node, Node, int)}
+     */
+    private int joinedHeight;
+
+    /**
+     * Joins trees {@code l} and {@code r} of black heights {@code hL} and {@code hR} with {@code m} in between
+     * in O(|hL - hR| + 1). The result may have red root.
+     */
+    private Node<K, V> join(Node<K, V> l, int hL, Node<K, V> m, Node<K, V> r, int hR) {
+        if (l.red) {
+            l.red = false;
+            ++hL;
+        }
+        if (r.red) {
+            r.red = false;
+            ++hR;
+        }
+        joinedHeight = Math.max(hL, hR);
+        if (hL > hR)
+            return joinRight(l, hL, m, r, hR);
+        if (hL < hR)
+            return joinLeft(l, hL, m, r, hR);
+        m.lChild = l;
+        m.rChild = r;
+        m.red = true;
+        m.count = l.count + r.count + 1;
+        return m;
+    }
+
+    private Node<K, V> splitLow;
+    private Node<K, V> splitHigh;
+    private int splitLowHeight;
+    private int splitHighHeight;
+
+    /**
+     * Splits subtree {@code t} of black height {@code h} into splitLow with keys less than pivot and splitHigh
+     * with the rest. Each level joins trees whose heights differ by the heights already passed, so the total
+     * is O(log n).
+     */
+    private void splitAt(Node<K, V> t, int h, K pivot) {
+        if (t == LEAF) {
+            splitLow = splitHigh = t;
+            splitLowHeight = splitHighHeight = 0;
+            return;
+        }
+        final Node<K, V> l = t.lChild;
+        final Node<K, V> r = t.rChild;
+        final int childHeight = t.red? h : h - 1;
+        if (compare(pivot, t.key) <= 0) {
+            splitAt(l, childHeight, pivot);
+            splitHigh = join(splitHigh, splitHighHeight, t, r, childHeight);
+            splitHighHeight = joinedHeight;
+        } else {
+            splitAt(r, childHeight, pivot);
+            splitLow = join(l, childHeight, t, splitLow, splitLowHeight);
+            splitLowHeight = joinedHeight;
+        }
+    }
+
+    /**
+     * Moves entries with keys greater than or equal to {@code pivot} to a new tree in O(log n),
+     * this tree keeps keys less than {@code pivot}.
+     * @return tree with the same comparator holding keys at or above pivot
+     */
+    public RbTree<K, V> split(K pivot) {
+        if (pivot == null)
+            throw new NullPointerException("Key must be not null");
+        final RbTree<K, V> retVal = new RbTree<>(comparator);
+        if (root == LEAF)
+            return retVal;
+        splitAt(root, blackHeight(root), pivot);
+        root = splitLow;
+        root.red = false;
+        size = root.count;
+        ++changes;
+        retVal.root = splitHigh;
+        retVal.root.red = false;
+        retVal.size = retVal.root.count;
+        splitLow = splitHigh = null;
+        return retVal;
+    }
+
+    /**
+     * Moves all entries of {@code right} to {@code left} in O(log n), every key of {@code left} must be less
+     * than every key of {@code right}.
+     * @return left
+     * @throws IllegalArgumentException if key ranges overlap or trees have different comparators
+     */
+    public static <K, V> RbTree<K, V> join(RbTree<K, V> left, RbTree<K, V> right) {
+        if (left == right)
+            throw new IllegalArgumentException("Can not join tree with itself");
+        if (!Objects.equals(left.comparator(), right.comparator()))
+            throw new IllegalArgumentException("Trees have different comparators");
+        if (right.isEmpty())
+            return left;
+        if (!left.isEmpty() && left.compare(left.highestNode().key, right.lowestNode().key) >= 0)
+            throw new IllegalArgumentException("Key ranges overlap");
+        final Node<K, V> lowest = right.lowestNode();
+        final K key = lowest.key;
+        final V value = lowest.value;
+        right.erase(key);
+        final Node<K, V> m = createNode(key, value, false);
+        final Node<K, V> joined = left.join(left.root, blackHeight(left.root), m, right.root,
+                blackHeight(right.root));
+        joined.red = false;
+        left.root = joined;
+        left.size = joined.count;
+        ++left.changes;
+        right.clear();
+        return left;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public V remove(Object key) {
@@ -249,6 +700,8 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
             t.key = tt.key;
             t.value = tt.value;
         }
+        for (int i = 0; i < path.size() - 1; ++i)
+            --path.get(i).count;
 
         boolean fixed;
         if (path.size() == 1){
@@ -337,85 +790,1113 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
         path.clear();
         root.red = false;
         --size;
-        --changes;
+        ++changes;
         return retVal;
     }
 
+    /**
+     * @return upper bound of the tree height, the height of red black tree is at most 2 log2(size + 1)
+     */
+    private int maxHeight(){
+        return 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size + 1));
+    }
+
+    /**
+     * @return array for the spine of an in-order walk
+     */
+    @SuppressWarnings("unchecked")
+    private Node<K, V>[] newStack(){
+        return (Node<K, V>[]) new Node<?, ?>[maxHeight()];
+    }
+
     @Override
-    public Set<Entry<K, V>> entrySet() {
-        return new AbstractSet<Entry<K, V>>() {
-            @Override
-            public Iterator<Entry<K, V>> iterator() {
-                return new Iterator<Entry<K, V>>() {
-                    long changes = -1;
-                    final Stack<Node<K, V>> st = new Stack<>();
-                    final Stack<Boolean> goLeft = new Stack<>();
-                    boolean initialized = false;
-                    void init(){
-                        if (initialized) return;
-                        initialized = true;
-                        st.push(root);
-                        goLeft.push(true);
-                        changes = RbTree.this.changes;
-                    }
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        final long expectedChanges = changes;
+        final Node<K, V>[] stack = newStack();
+        int depth = 0;
+        Node<K, V> cur = root;
+        while (cur != LEAF || depth > 0) {
+            for (; cur != LEAF; cur = cur.lChild)
+                stack[depth++] = cur;
+            cur = stack[--depth];
+            action.accept(cur.key, cur.value);
+            if (changes != expectedChanges)
+                throw new ConcurrentModificationException();
+            cur = cur.rChild;
+        }
+    }
 
+    /**
+     * In-order walk over a range (ascending or descending) keeping the spine of unvisited nodes
+     * in an array sized to the tree height. Starts by a single descent to the first bound.
+     */
+    private abstract class NodeIterator<T> implements Iterator<T> {
+        private long changes = RbTree.this.changes;
+        private final Node<K, V>[] stack = newStack();
+        private int depth = 0;
+        private final boolean descending;
+        private final boolean unbounded;
+        private final K fence;
+        private final boolean fenceInclusive;
+        private Node<K, V> lastReturned = null;
 
-                    private Node<K, V> nextNode(){
-                        Boolean toLeft = goLeft.pop();
-                        Node<K, V> retVal;
-                        if (toLeft){
-                            goLeft.push(false);
-                            while ((retVal = st.peek().lChild) != LEAF){
-                                st.push(retVal);
-                                goLeft.push(true);
-                            }
-                            goLeft.pop();
-                        }
-                        retVal = st.pop();
-                        if (retVal.rChild != LEAF) {
-                            st.push(retVal.rChild);
-                            goLeft.push(true);
-                        } else if (!goLeft.empty() && goLeft.peek()){
-                            goLeft.pop();
-                            goLeft.push(false);
-                        }
-                        return retVal;
-                    }
+        NodeIterator(SubMap range, boolean descending) {
+            this.descending = descending;
+            this.unbounded = descending? range.fromStart : range.toEnd;
+            this.fence = descending? range.lo : range.hi;
+            this.fenceInclusive = descending? range.loInclusive : range.hiInclusive;
+            if (descending? range.toEnd : range.fromStart)
+                pushSpine(root);
+            else if (descending)
+                seek(range.hi, range.hiInclusive);
+            else
+                seek(range.lo, range.loInclusive);
+            checkFence();
+        }
 
-                    @Override
-                    public boolean hasNext() {
-                        init();
-                        if (RbTree.this.changes != this.changes)
-                            throw new ConcurrentModificationException();
-                        return !st.isEmpty();
-                    }
+        /**
+         * Pushes nodes from the root towards {@code key} which are not before it in the walk order.
+         */
+        private void seek(K key, boolean inclusive){
+            for (Node<K, V> node = root; node != LEAF; ) {
+                final int c = descending? compare(key, node.key) : compare(node.key, key);
+                if (c > 0 || c == 0 && inclusive) {
+                    stack[depth++] = node;
+                    if (c == 0)
+                        break;
+                    node = descending? node.rChild : node.lChild;
+                } else {
+                    node = descending? node.lChild : node.rChild;
+                }
+            }
+        }
 
-                    @Override
-                    public Entry<K, V> next() {
-                        init();
-                        if (RbTree.this.changes != this.changes)
-                            throw new ConcurrentModificationException();
-                        if (st.isEmpty())
-                            throw new UnsupportedOperationException();
-                        Node<K, V> cur = nextNode();
-
-                        return new SimpleEntry<K, V>(cur.key, cur.value) {
-                            @Override
-                            public V setValue(V value) {
-                                if (RbTree.this.changes != changes)
-                                    throw new ConcurrentModificationException();
-                                cur.value = value;
-                                changes = ++RbTree.this.changes;
-                                return super.setValue(value);
-                            }
-                        };
-                    }
+        private void pushSpine(Node<K, V> node){
+            for (; node != LEAF; node = descending? node.rChild : node.lChild)
+                stack[depth++] = node;
+        }
 
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
+        /**
+         * Ends the walk once the next node is beyond the far bound.
+         */
+        private void checkFence(){
+            if (unbounded || depth == 0)
+                return;
+            final int c = descending? compare(fence, stack[depth - 1].key) : compare(stack[depth - 1].key, fence);
+            if (c > 0 || c == 0 && !fenceInclusive)
+                depth = 0;
+        }
+
+        final Node<K, V> nextNode(){
+            if (RbTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+            if (depth == 0)
+                throw new NoSuchElementException();
+            final Node<K, V> retVal = stack[--depth];
+            pushSpine(descending? retVal.lChild : retVal.rChild);
+            checkFence();
+            lastReturned = retVal;
+            return retVal;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (RbTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+            return depth > 0;
+        }
+
+        /**
+         * Erasing may move keys between nodes, so the walk is restarted right after the removed key.
+         */
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (RbTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+            final K key = lastReturned.key;
+            lastReturned = null;
+            final boolean hadNext = depth > 0;
+            erase(key);
+            changes = RbTree.this.changes;
+            depth = 0;
+            if (hadNext) {
+                seek(key, false);
+                checkFence();
+            }
+        }
+    }
+
+    private final class EntryIterator extends NodeIterator<Entry<K, V>> {
+        EntryIterator(SubMap range, boolean descending) {
+            super(range, descending);
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    private final class KeyIterator extends NodeIterator<K> {
+        KeyIterator(SubMap range, boolean descending) {
+            super(range, descending);
+        }
+
+        @Override
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    private final class ValueIterator extends NodeIterator<V> {
+        ValueIterator(SubMap range, boolean descending) {
+            super(range, descending);
+        }
+
+        @Override
+        public V next() {
+            return nextNode().value;
+        }
+    }
+
+    /**
+     * Spliterator over nodes at in-order positions [from; to). It splits at the highest node strictly inside
+     * the range, i.e. at subtree boundaries, and knows exact sizes of both parts from subtree counts.
+     */
+    private abstract class NodeSpliterator<T> implements Spliterator<T> {
+        private final long changes = RbTree.this.changes;
+        private int from;
+        private final int to;
+        /**
+         * pending nodes of the in-order walk, allocated when traversal starts
+         */
+        private Node<K, V>[] stack = null;
+        private int depth = 0;
+
+        NodeSpliterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract T get(Node<K, V> node);
+
+        abstract NodeSpliterator<T> create(int from, int to);
+
+        private void checkChanges() {
+            if (RbTree.this.changes != this.changes)
+                throw new ConcurrentModificationException();
+        }
+
+        private void seek() {
+            stack = newStack();
+            depth = 0;
+            int index = from;
+            for (Node<K, V> cur = root; cur != LEAF; ) {
+                final int leftCount = cur.lChild.count;
+                if (index <= leftCount)
+                    stack[depth++] = cur;
+                if (index == leftCount)
+                    break;
+                if (index < leftCount) {
+                    cur = cur.lChild;
+                } else {
+                    index -= leftCount + 1;
+                    cur = cur.rChild;
+                }
+            }
+        }
+
+        private Node<K, V> nextNode() {
+            final Node<K, V> retVal = stack[--depth];
+            for (Node<K, V> cur = retVal.rChild; cur != LEAF; cur = cur.lChild)
+                stack[depth++] = cur;
+            ++from;
+            return retVal;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (to - from < 2)
+                return null;
+            checkChanges();
+            Node<K, V> cur = root;
+            int base = 0;
+            int index;
+            while (true) {
+                index = base + cur.lChild.count;
+                if (index <= from) {
+                    base = index + 1;
+                    cur = cur.rChild;
+                } else if (index >= to) {
+                    cur = cur.lChild;
+                } else {
+                    break;
+                }
+            }
+            final NodeSpliterator<T> prefix = create(from, index);
+            from = index;
+            stack = null;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (from >= to)
+                return false;
+            checkChanges();
+            if (stack == null)
+                seek();
+            action.accept(get(nextNode()));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (from >= to)
+                return;
+            checkChanges();
+            if (stack == null)
+                seek();
+            while (from < to) {
+                action.accept(get(nextNode()));
+                checkChanges();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED;
+        }
+    }
+
+    private final class EntrySpliterator extends NodeSpliterator<Entry<K, V>> {
+        EntrySpliterator(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        Entry<K, V> get(Node<K, V> node) {
+            return node;
+        }
+
+        @Override
+        NodeSpliterator<Entry<K, V>> create(int from, int to) {
+            return new EntrySpliterator(from, to);
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Entry<K, V>> getComparator() {
+            return Map.Entry.comparingByKey(comparator);
+        }
+    }
+
+    private final class KeySpliterator extends NodeSpliterator<K> {
+        KeySpliterator(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        K get(Node<K, V> node) {
+            return node.key;
+        }
+
+        @Override
+        NodeSpliterator<K> create(int from, int to) {
+            return new KeySpliterator(from, to);
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super K> getComparator() {
+            return comparator();
+        }
+    }
+
+    private final class ValueSpliterator extends NodeSpliterator<V> {
+        ValueSpliterator(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        V get(Node<K, V> node) {
+            return node.value;
+        }
+
+        @Override
+        NodeSpliterator<V> create(int from, int to) {
+            return new ValueSpliterator(from, to);
+        }
+    }
+
+    private SubMap wholeRange(boolean descending) {
+        return new SubMap(true, null, false, true, null, false, descending);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return new KeySet(wholeRange(false));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return new KeySet(wholeRange(true));
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return wholeRange(true);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator == NATURAL? null : comparator;
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return exportEntry(lowestNode());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return exportEntry(highestNode());
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return pollNode(lowestNode());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return pollNode(highestNode());
+    }
+
+    @Override
+    public K firstKey() {
+        return keyOrThrow(lowestNode());
+    }
+
+    @Override
+    public K lastKey() {
+        return keyOrThrow(highestNode());
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return exportEntry(floorNode(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(floorNode(key, false));
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return exportEntry(floorNode(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorNode(key, true));
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return exportEntry(ceilingNode(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingNode(key, true));
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return exportEntry(ceilingNode(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(ceilingNode(key, false));
+    }
+
+    /**
+     * @return number of keys less than (or equal to, if inclusive) {@code key}
+     */
+    private int countBelow(K key, boolean inclusive) {
+        int retVal = 0;
+        for (Node<K, V> cur = root; cur != LEAF; ) {
+            final int c = compare(cur.key, key);
+            if (c < 0 || c == 0 && inclusive) {
+                retVal += cur.lChild.count + 1;
+                if (c == 0)
+                    break;
+                cur = cur.rChild;
+            } else {
+                cur = cur.lChild;
+            }
+        }
+        return retVal;
+    }
+
+    private Node<K, V> nodeAt(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        Node<K, V> cur = root;
+        while (index != cur.lChild.count) {
+            if (index < cur.lChild.count) {
+                cur = cur.lChild;
+            } else {
+                index -= cur.lChild.count + 1;
+                cur = cur.rChild;
+            }
+        }
+        return cur;
+    }
+
+    /**
+     * @return number of keys strictly less than {@code key}, i.e. index of the key if it is present. O(log n)
+     */
+    public int rank(K key) {
+        return countBelow(key, false);
+    }
+
+    /**
+     * @return key with given index in ascending order. O(log n)
+     * @throws IndexOutOfBoundsException if index is not in [0; size())
+     */
+    public K select(int index) {
+        return nodeAt(index).key;
+    }
+
+    /**
+     * @return snapshot of entry with given index in ascending order of keys. O(log n)
+     * @throws IndexOutOfBoundsException if index is not in [0; size())
+     */
+    public Entry<K, V> entryAt(int index) {
+        return exportEntry(nodeAt(index));
+    }
+
+    /**
+     * @return number of keys in [from; to). O(log n)
+     */
+    public int countInRange(K from, K to) {
+        return countInRange(from, true, to, false);
+    }
+
+    /**
+     * @return number of keys between {@code from} and {@code to}, 0 if from is above to. O(log n)
+     */
+    public int countInRange(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        return Math.max(0, countBelow(to, toInclusive) - countBelow(from, !fromInclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        compare(toKey, toKey);
+        return new SubMap(true, null, false, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        compare(fromKey, fromKey);
+        return new SubMap(false, fromKey, inclusive, true, null, false, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * View of keys between {@code lo} and {@code hi} (each bound may be absent) backed by the tree,
+     * in ascending or descending order. Lookups descend once from the root and reject nodes outside
+     * of the bounds, iteration seeks to the first bound and stops at the other one.
+     */
+    private final class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        final boolean fromStart;
+        final K lo;
+        final boolean loInclusive;
+        final boolean toEnd;
+        final K hi;
+        final boolean hiInclusive;
+        final boolean descending;
+
+        SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (fromStart)
+                return false;
+            final int c = compare(key, lo);
+            return c < 0 || c == 0 && !loInclusive;
+        }
+
+        private boolean tooHigh(K key) {
+            if (toEnd)
+                return false;
+            final int c = compare(key, hi);
+            return c > 0 || c == 0 && !hiInclusive;
+        }
+
+        private boolean inRange(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        /**
+         * @return whether {@code key} may be a bound of a nested view
+         */
+        private boolean inRange(K key, boolean inclusive) {
+            if (inclusive)
+                return inRange(key);
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean inRangeObject(Object key) {
+            return inRange((K) key);
+        }
+
+        private Node<K, V> absLowest() {
+            final Node<K, V> node = fromStart? lowestNode() : ceilingNode(lo, loInclusive);
+            return node == null || tooHigh(node.key)? null : node;
+        }
+
+        private Node<K, V> absHighest() {
+            final Node<K, V> node = toEnd? highestNode() : floorNode(hi, hiInclusive);
+            return node == null || tooLow(node.key)? null : node;
+        }
+
+        private Node<K, V> absCeiling(K key, boolean inclusive) {
+            if (tooLow(key))
+                return absLowest();
+            final Node<K, V> node = ceilingNode(key, inclusive);
+            return node == null || tooHigh(node.key)? null : node;
+        }
+
+        private Node<K, V> absFloor(K key, boolean inclusive) {
+            if (tooHigh(key))
+                return absHighest();
+            final Node<K, V> node = floorNode(key, inclusive);
+            return node == null || tooLow(node.key)? null : node;
+        }
+
+        private Node<K, V> first() {
+            return descending? absHighest() : absLowest();
+        }
+
+        private Node<K, V> last() {
+            return descending? absLowest() : absHighest();
+        }
+
+        private Node<K, V> lower(K key, boolean inclusive) {
+            return descending? absCeiling(key, inclusive) : absFloor(key, inclusive);
+        }
+
+        private Node<K, V> higher(K key, boolean inclusive) {
+            return descending? absFloor(key, inclusive) : absCeiling(key, inclusive);
+        }
+
+        /**
+         * @return in-order index of the first node in range
+         */
+        private int fromIndex() {
+            return fromStart? 0 : countBelow(lo, !loInclusive);
+        }
+
+        /**
+         * @return in-order index after the last node in range, may be less than {@link #fromIndex()} for empty range
+         */
+        private int toIndex() {
+            return toEnd? RbTree.this.size : countBelow(hi, hiInclusive);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, toIndex() - fromIndex());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRangeObject(key) && RbTree.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRangeObject(key)? RbTree.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return RbTree.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRangeObject(key)? RbTree.this.remove(key) : null;
+        }
+
+        @Override
+        public void clear() {
+            if (fromStart && toEnd) {
+                RbTree.this.clear();
+                return;
+            }
+            for (Iterator<K> it = new KeyIterator(this, false); it.hasNext(); ) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator(SubMap.this, descending);
+                }
+
+                @Override
+                public Spliterator<Entry<K, V>> spliterator() {
+                    if (descending)
+                        return super.spliterator();
+                    final int from = fromIndex();
+                    return new EntrySpliterator(from, Math.max(from, toIndex()));
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    final Entry<?, ?> e = (Entry<?, ?>) o;
+                    return inRangeObject(e.getKey()) && RbTree.this.entrySet().contains(e);
+                }
+
+                @Override
+                public void clear() {
+                    SubMap.this.clear();
+                }
+            };
+        }
+
+        @Override
+        public Collection<V> values() {
+            return new AbstractCollection<V>() {
+                @Override
+                public Iterator<V> iterator() {
+                    return new ValueIterator(SubMap.this, descending);
+                }
+
+                @Override
+                public Spliterator<V> spliterator() {
+                    if (descending)
+                        return super.spliterator();
+                    final int from = fromIndex();
+                    return new ValueSpliterator(from, Math.max(from, toIndex()));
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    SubMap.this.clear();
+                }
+            };
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet(descendingMap());
+        }
+
+        @Override
+        public SubMap descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            final Comparator<? super K> order = RbTree.this.comparator();
+            if (!descending)
+                return order;
+            return order == null? Collections.reverseOrder() : Collections.reverseOrder(order);
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return exportEntry(first());
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return exportEntry(last());
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            return pollNode(first());
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            return pollNode(last());
+        }
+
+        @Override
+        public K firstKey() {
+            return keyOrThrow(first());
+        }
+
+        @Override
+        public K lastKey() {
+            return keyOrThrow(last());
+        }
+
+        @Override
+        public Entry<K, V> lowerEntry(K key) {
+            return exportEntry(lower(key, false));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(lower(key, false));
+        }
+
+        @Override
+        public Entry<K, V> floorEntry(K key) {
+            return exportEntry(lower(key, true));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(lower(key, true));
+        }
+
+        @Override
+        public Entry<K, V> ceilingEntry(K key) {
+            return exportEntry(higher(key, true));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(higher(key, true));
+        }
+
+        @Override
+        public Entry<K, V> higherEntry(K key) {
+            return exportEntry(higher(key, false));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(higher(key, false));
+        }
+
+        /**
+         * @return view restricted to [from; to] in ascending order of keys, flipped to this view's order
+         */
+        private SubMap restrict(boolean fromStart, K from, boolean fromInclusive, boolean toEnd, K to, boolean toInclusive) {
+            if (!fromStart && !inRange(from, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!toEnd && !inRange(to, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            if (!fromStart && !toEnd && compare(from, to) > 0)
+                throw new IllegalArgumentException("fromKey > toKey");
+            return new SubMap(fromStart && this.fromStart, fromStart? lo : from, fromStart? loInclusive : fromInclusive,
+                    toEnd && this.toEnd, toEnd? hi : to, toEnd? hiInclusive : toInclusive, descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (descending)
+                return restrict(false, toKey, toInclusive, false, fromKey, fromInclusive);
+            return restrict(false, fromKey, fromInclusive, false, toKey, toInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (descending)
+                return restrict(false, toKey, inclusive, true, null, false);
+            return restrict(true, null, false, false, toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (descending)
+                return restrict(true, null, false, false, fromKey, inclusive);
+            return restrict(false, fromKey, inclusive, true, null, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /**
+     * Key view of a (sub)map.
+     */
+    private final class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+        private final SubMap m;
+
+        KeySet(SubMap m) {
+            this.m = m;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator(m, m.descending);
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return new KeyIterator(m, !m.descending);
+        }
+
+        @Override
+        public Spliterator<K> spliterator() {
+            if (m.descending)
+                return super.spliterator();
+            final int from = m.fromIndex();
+            return new KeySpliterator(from, Math.max(from, m.toIndex()));
+        }
+
+        @Override
+        public int size() {
+            return m.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!m.containsKey(o))
+                return false;
+            m.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            m.clear();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public K first() {
+            return m.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return m.lastKey();
+        }
+
+        @Override
+        public K lower(K k) {
+            return m.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return m.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return m.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return m.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            final Entry<K, V> e = m.pollFirstEntry();
+            return e == null? null : e.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            final Entry<K, V> e = m.pollLastEntry();
+            return e == null? null : e.getKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(m.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet((SubMap) m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet((SubMap) m.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet((SubMap) m.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator(wholeRange(false), false);
+            }
+
+            @Override
+            public Spliterator<V> spliterator() {
+                return new ValueSpliterator(0, size);
+            }
+
+            @Override
+            public int size() {
+                return RbTree.this.size;
+            }
+
+            @Override
+            public void clear() {
+                RbTree.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator(wholeRange(false), false);
+            }
+
+            @Override
+            public Spliterator<Entry<K, V>> spliterator() {
+                return new EntrySpliterator(0, size);
             }
 
             @Override
@@ -440,4 +1921,4 @@ public class RbTree<K, V> extends AbstractMap<K, V> {
             }
         };
     }
-}
\ No newline at end of file
+}
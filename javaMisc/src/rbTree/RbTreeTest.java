@@ -0,0 +1,399 @@
+package rbTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RbTreeTest {
+    @Test
+    void randomOpsTest() {
+        Map<Integer, Integer> tm = new TreeMap<>();
+        Map<Integer, Integer> rb = new RbTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 50000; ++i) {
+            int t = r.nextInt(5000);
+            if (r.nextInt(3) == 0)
+                assertEquals(tm.remove(t), rb.remove(t));
+            else
+                assertEquals(tm.put(t, i), rb.put(t, i));
+            assertEquals(tm.size(), rb.size());
+        }
+        assertEquals(tm, rb);
+        assertEquals(rb, tm);
+        assertEquals(tm.hashCode(), rb.hashCode());
+    }
+
+    @Test
+    void iterationTest() {
+        TreeMap<Integer, String> tm = new TreeMap<>();
+        RbTree<Integer, String> rb = new RbTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 20000; ++i) {
+            int t = r.nextInt(100000);
+            tm.put(t, "v" + i);
+            rb.put(t, "v" + i);
+        }
+        assertArrayEquals(tm.entrySet().toArray(), rb.entrySet().toArray());
+        assertArrayEquals(tm.keySet().toArray(), rb.keySet().toArray());
+        assertArrayEquals(tm.values().toArray(), rb.values().toArray());
+        List<Map.Entry<Integer, String>> viaForEach = new ArrayList<>();
+        rb.forEach((k, v) -> viaForEach.add(new AbstractMap.SimpleEntry<>(k, v)));
+        assertEquals(new ArrayList<>(tm.entrySet()), viaForEach);
+
+        for (Map.Entry<Integer, String> e : rb.entrySet())
+            e.setValue(e.getValue() + "!");
+        for (Map.Entry<Integer, String> e : tm.entrySet())
+            assertEquals(e.getValue() + "!", rb.get(e.getKey()));
+
+        Iterator<Integer> it = rb.keySet().iterator();
+        it.next();
+        rb.remove(tm.firstKey());
+        assertThrows(ConcurrentModificationException.class, it::next);
+        assertThrows(ConcurrentModificationException.class, () -> rb.forEach((k, v) -> rb.remove(k)));
+
+        Iterator<Map.Entry<Integer, String>> empty = new RbTree<Integer, String>().entrySet().iterator();
+        assertFalse(empty.hasNext());
+        assertThrows(NoSuchElementException.class, empty::next);
+        assertTrue(rb.keySet().remove(tm.lastKey()));
+        assertFalse(rb.keySet().remove(-1));
+        assertFalse(rb.containsKey(tm.lastKey()));
+    }
+
+    private static void assertSameNavigable(NavigableMap<Integer, Integer> expected, NavigableMap<Integer, Integer> actual,
+                                            Random r) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertArrayEquals(expected.entrySet().toArray(), actual.entrySet().toArray());
+        assertArrayEquals(expected.keySet().toArray(), actual.keySet().toArray());
+        assertArrayEquals(expected.values().toArray(), actual.values().toArray());
+        assertArrayEquals(expected.descendingKeySet().toArray(), actual.descendingKeySet().toArray());
+        assertArrayEquals(expected.descendingMap().entrySet().toArray(), actual.descendingMap().entrySet().toArray());
+        assertEquals(expected.firstEntry(), actual.firstEntry());
+        assertEquals(expected.lastEntry(), actual.lastEntry());
+        if (!expected.isEmpty()) {
+            assertEquals(expected.firstKey(), actual.firstKey());
+            assertEquals(expected.lastKey(), actual.lastKey());
+        } else {
+            assertThrows(NoSuchElementException.class, actual::firstKey);
+        }
+        for (int i = 0; i < 50; ++i) {
+            int t = r.nextInt(1200) - 100;
+            assertEquals(expected.lowerEntry(t), actual.lowerEntry(t));
+            assertEquals(expected.floorKey(t), actual.floorKey(t));
+            assertEquals(expected.ceilingEntry(t), actual.ceilingEntry(t));
+            assertEquals(expected.higherKey(t), actual.higherKey(t));
+            assertEquals(expected.get(t), actual.get(t));
+            assertEquals(expected.containsKey(t), actual.containsKey(t));
+            assertEquals(expected.navigableKeySet().lower(t), actual.navigableKeySet().lower(t));
+        }
+    }
+
+    @Test
+    void navigableTest() {
+        TreeMap<Integer, Integer> tm = new TreeMap<>();
+        RbTree<Integer, Integer> rb = new RbTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 600; ++i) {
+            int t = r.nextInt(1000);
+            tm.put(t, i);
+            rb.put(t, i);
+        }
+        assertNull(rb.comparator());
+        assertSameNavigable(tm, rb, r);
+        assertSameNavigable(tm.descendingMap(), rb.descendingMap(), r);
+        for (int i = 0; i < 300; ++i) {
+            int from = r.nextInt(1100) - 50;
+            int to = from + r.nextInt(400);
+            boolean fi = r.nextBoolean();
+            boolean ti = r.nextBoolean();
+            NavigableMap<Integer, Integer> expected = tm.subMap(from, fi, to, ti);
+            NavigableMap<Integer, Integer> actual = rb.subMap(from, fi, to, ti);
+            assertSameNavigable(expected, actual, r);
+            assertSameNavigable(tm.headMap(to, ti), rb.headMap(to, ti), r);
+            assertSameNavigable(tm.tailMap(from, fi), rb.tailMap(from, fi), r);
+            assertSameNavigable(expected.descendingMap(), actual.descendingMap(), r);
+            int inner = from + r.nextInt(to - from + 1);
+            if ((fi || inner != from) && (ti || inner != to)) {
+                assertSameNavigable(expected.headMap(inner, true), actual.headMap(inner, true), r);
+                assertSameNavigable(expected.descendingMap().headMap(inner, false),
+                        actual.descendingMap().headMap(inner, false), r);
+                assertSameNavigable(expected.descendingMap().tailMap(inner, true).descendingMap(),
+                        actual.descendingMap().tailMap(inner, true).descendingMap(), r);
+            }
+            assertThrows(IllegalArgumentException.class, () -> actual.put(to + 1, 0));
+            assertThrows(IllegalArgumentException.class, () -> actual.subMap(from - 1, true, to, true));
+        }
+        assertThrows(IllegalArgumentException.class, () -> rb.subMap(5, 4));
+
+        // modifications through views
+        for (int i = 0; i < 100; ++i) {
+            int from = r.nextInt(1000);
+            int to = from + r.nextInt(30);
+            switch (i % 4) {
+                case 0:
+                    tm.subMap(from, to).clear();
+                    rb.subMap(from, to).clear();
+                    break;
+                case 1:
+                    assertEquals(tm.tailMap(from, true).pollFirstEntry(), rb.tailMap(from, true).pollFirstEntry());
+                    assertEquals(tm.descendingMap().pollFirstEntry(), rb.descendingMap().pollFirstEntry());
+                    break;
+                case 2:
+                    assertEquals(tm.headMap(to, false).navigableKeySet().pollLast(), rb.headMap(to, false).navigableKeySet().pollLast());
+                    break;
+                default:
+                    for (Iterator<Integer> it = rb.descendingMap().headMap(to, true).keySet().iterator(); it.hasNext(); ) {
+                        int t = it.next();
+                        if (t % 3 == 0) {
+                            it.remove();
+                            tm.remove(t);
+                        }
+                    }
+            }
+            assertEquals(tm, rb);
+        }
+        for (Iterator<Map.Entry<Integer, Integer>> it = rb.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getKey() % 2 == 0)
+                it.remove();
+        }
+        tm.keySet().removeIf(t -> t % 2 == 0);
+        assertSameNavigable(tm, rb, r);
+        while (!tm.isEmpty()) {
+            assertEquals(tm.pollLastEntry(), rb.pollLastEntry());
+            assertEquals(tm.pollFirstEntry(), rb.pollFirstEntry());
+        }
+        assertTrue(rb.isEmpty());
+        assertNull(rb.pollFirstEntry());
+
+        RbTree<String, Integer> reversed = new RbTree<>(Comparator.reverseOrder());
+        reversed.put("a", 1);
+        reversed.put("b", 2);
+        assertEquals("b", reversed.firstKey());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(reversed.descendingMap().keySet()));
+        assertTrue(reversed.descendingMap().comparator().compare("a", "b") < 0);
+    }
+
+    @Test
+    void orderStatisticsTest() {
+        TreeMap<Integer, Integer> tm = new TreeMap<>();
+        RbTree<Integer, Integer> rb = new RbTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 30000; ++i) {
+            int t = r.nextInt(3000);
+            if (r.nextInt(3) == 0)
+                assertEquals(tm.remove(t), rb.remove(t));
+            else
+                assertEquals(tm.put(t, i), rb.put(t, i));
+            if (i % 100 == 0) {
+                List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(tm.entrySet());
+                for (int j = 0; j < entries.size(); j += 7) {
+                    assertEquals(entries.get(j), rb.entryAt(j));
+                    assertEquals(entries.get(j).getKey(), rb.select(j));
+                    assertEquals(j, rb.rank(entries.get(j).getKey()));
+                }
+                int probe = r.nextInt(3200) - 100;
+                assertEquals(tm.headMap(probe).size(), rb.rank(probe));
+                int to = probe + r.nextInt(500);
+                assertEquals(tm.subMap(probe, to).size(), rb.countInRange(probe, to));
+                assertEquals(tm.subMap(probe, false, to, true).size(), rb.countInRange(probe, false, to, true));
+                assertEquals(tm.subMap(probe, false, to, true).size(), rb.subMap(probe, false, to, true).size());
+                assertEquals(tm.tailMap(probe).size(), rb.tailMap(probe).size());
+            }
+        }
+        assertEquals(0, rb.countInRange(10, 5));
+        assertEquals(0, rb.subMap(7, false, 7, false).size());
+        assertThrows(IndexOutOfBoundsException.class, () -> rb.select(rb.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> rb.entryAt(-1));
+    }
+
+    @Test
+    void fromSortedTest() {
+        Random r = new Random(777);
+        for (int size : new int[]{0, 1, 2, 3, 7, 8, 100, 3000}) {
+            TreeMap<Integer, Integer> tm = new TreeMap<>();
+            TreeSet<Integer> sorted = new TreeSet<>();
+            while (sorted.size() < size)
+                sorted.add(r.nextInt(100000));
+            final int n = size + 20;
+            Integer[] keys = new Integer[n + 1];
+            Integer[] values = new Integer[n + 1];
+            int j = 10;
+            for (int t : sorted) {
+                keys[j++] = t;
+                if (j == 12)
+                    keys[j++] = t;
+            }
+            for (int i = 10; i < j; ++i) {
+                values[i] = i;
+                tm.put(keys[i], i);
+            }
+            RbTree<Integer, Integer> rb = RbTree.fromSorted(keys, values, 10, j);
+            assertEquals(tm, rb);
+            assertArrayEquals(tm.entrySet().toArray(), rb.entrySet().toArray());
+            for (int i = 0; i < tm.size(); i += 13)
+                assertEquals(i, rb.rank(rb.select(i)));
+            for (int i = 0; i < 500; ++i) {
+                int t = r.nextInt(100000);
+                assertEquals(tm.put(t, -i), rb.put(t, -i));
+                t = r.nextInt(100000);
+                assertEquals(tm.remove(t), rb.remove(t));
+            }
+            assertEquals(tm, rb);
+        }
+        RbTree<String, Integer> reversed = RbTree.fromSorted(new String[]{"b", "a"}, new Integer[]{2, 1}, 0, 2,
+                Comparator.reverseOrder());
+        assertEquals("b", reversed.firstKey());
+        assertThrows(IllegalArgumentException.class, () -> RbTree.fromSorted(new Integer[]{2, 1}, new Object[2], 0, 2));
+        assertThrows(NullPointerException.class, () -> RbTree.fromSorted(new Integer[]{1, null}, new Object[2], 0, 2));
+    }
+
+    @Test
+    void sortedPutAllTest() {
+        Random r = new Random(777);
+        TreeMap<Integer, Integer> tm = new TreeMap<>();
+        RbTree<Integer, Integer> rb = new RbTree<>();
+        for (int round = 0; round < 12; ++round) {
+            TreeMap<Integer, Integer> other = new TreeMap<>();
+            for (int i = 0; i < (round % 3 == 0? 10 : 2000 * round); ++i)
+                other.put(r.nextInt(50000), round * 100000 + i);
+            NavigableMap<Integer, Integer> source = round % 2 == 0? other : RbTree.fromSorted(
+                    other.keySet().toArray(new Integer[0]), other.values().toArray(new Integer[0]), 0, other.size());
+            tm.putAll(source);
+            rb.putAll(source);
+            assertEquals(tm, rb);
+            assertEquals(tm.headMap(25000).size(), rb.countInRange(Integer.MIN_VALUE, 25000));
+        }
+        rb.putAll(rb.tailMap(Integer.MIN_VALUE, true));
+        assertEquals(tm, rb);
+        // different order falls back to put by put
+        TreeMap<Integer, Integer> reversed = new TreeMap<>(Comparator.reverseOrder());
+        reversed.putAll(tm.headMap(100));
+        reversed.put(-5, -5);
+        tm.put(-5, -5);
+        rb.putAll(reversed);
+        assertEquals(tm, rb);
+    }
+
+    @Test
+    void splitJoinTest() {
+        Random r = new Random(777);
+        for (int round = 0; round < 200; ++round) {
+            final int n = round < 20? round : r.nextInt(4000);
+            TreeMap<Integer, Integer> tm = new TreeMap<>();
+            RbTree<Integer, Integer> rb = new RbTree<>();
+            for (int i = 0; i < n; ++i) {
+                int t = r.nextInt(3 * n + 1);
+                tm.put(t, i);
+                rb.put(t, i);
+            }
+            int pivot = r.nextInt(3 * n + 3) - 1;
+            RbTree<Integer, Integer> high = rb.split(pivot);
+            assertEquals(tm.headMap(pivot), rb);
+            assertEquals(tm.tailMap(pivot), high);
+            assertEquals(tm.headMap(pivot).size(), rb.size());
+            if (!high.isEmpty()) {
+                assertEquals(tm.ceilingKey(pivot), high.firstKey());
+                assertEquals(high.size() - 1, high.rank(high.lastKey()));
+            }
+
+            // remove a key range in bulk and put it back
+            int to = pivot + r.nextInt(n + 1);
+            RbTree<Integer, Integer> rest = high.split(to);
+            assertEquals(tm.subMap(pivot, to), high);
+            for (int i = 0; i < 50; ++i) {
+                int t = r.nextInt(3 * n + 1);
+                if (t < pivot)
+                    assertEquals(tm.remove(t), rb.remove(t));
+                else if (t >= to)
+                    assertEquals(tm.put(t, -i), rest.put(t, -i));
+            }
+            assertSame(rb, RbTree.join(RbTree.join(rb, high), rest));
+            assertTrue(high.isEmpty());
+            assertTrue(rest.isEmpty());
+            assertEquals(tm, rb);
+            for (int i = 0; i < tm.size(); i += 17)
+                assertEquals(i, rb.rank(rb.select(i)));
+            for (int i = 0; i < 100; ++i) {
+                int t = r.nextInt(3 * n + 1);
+                assertEquals(tm.put(t, i), rb.put(t, i));
+                t = r.nextInt(3 * n + 1);
+                assertEquals(tm.remove(t), rb.remove(t));
+            }
+            assertEquals(tm, rb);
+        }
+        RbTree<Integer, Integer> a = new RbTree<>();
+        RbTree<Integer, Integer> b = new RbTree<>();
+        a.put(5, 5);
+        b.put(5, 6);
+        assertThrows(IllegalArgumentException.class, () -> RbTree.join(a, b));
+        assertThrows(IllegalArgumentException.class, () -> RbTree.join(a, new RbTree<>(Comparator.reverseOrder())));
+        assertThrows(IllegalArgumentException.class, () -> RbTree.join(a, a));
+        assertThrows(NullPointerException.class, () -> a.split(null));
+    }
+
+    private static <T> void splitFully(Spliterator<T> s, List<T> out) {
+        final long size = s.getExactSizeIfKnown();
+        final Spliterator<T> prefix = s.trySplit();
+        if (prefix == null) {
+            assertTrue(size < 2);
+            s.forEachRemaining(out::add);
+            return;
+        }
+        assertTrue(prefix.estimateSize() > 0 && s.estimateSize() > 0);
+        assertEquals(size, prefix.getExactSizeIfKnown() + s.getExactSizeIfKnown());
+        splitFully(prefix, out);
+        splitFully(s, out);
+    }
+
+    @Test
+    void spliteratorTest() {
+        TreeMap<Integer, Integer> tm = new TreeMap<>();
+        RbTree<Integer, Integer> rb = new RbTree<>();
+        Random r = new Random(777);
+        for (int i = 0; i < 50000; ++i) {
+            int t = r.nextInt(200000);
+            tm.put(t, i);
+            rb.put(t, i);
+        }
+        final Spliterator<Map.Entry<Integer, Integer>> entries = rb.entrySet().spliterator();
+        assertTrue(entries.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED |
+                Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL));
+        assertEquals(rb.size(), entries.getExactSizeIfKnown());
+        assertNull(rb.keySet().spliterator().getComparator());
+        assertFalse(rb.values().spliterator().hasCharacteristics(Spliterator.SORTED));
+        // first split is at the root: the prefix is its left subtree, the rest starts with the root
+        final Spliterator<Map.Entry<Integer, Integer>> left = entries.trySplit();
+        assertEquals(rb.size(), left.estimateSize() + entries.estimateSize());
+        assertTrue(entries.tryAdvance(e -> assertEquals(rb.select((int) left.estimateSize()), e.getKey())));
+
+        List<Integer> keys = new ArrayList<>();
+        splitFully(rb.keySet().spliterator(), keys);
+        assertEquals(new ArrayList<>(tm.keySet()), keys);
+        List<Integer> values = new ArrayList<>();
+        splitFully(rb.values().spliterator(), values);
+        assertEquals(new ArrayList<>(tm.values()), values);
+
+        assertEquals(tm.entrySet().stream().mapToLong(e -> (long) e.getKey() * e.getValue()).sum(),
+                rb.entrySet().parallelStream().mapToLong(e -> (long) e.getKey() * e.getValue()).sum());
+        assertEquals(new ArrayList<>(tm.keySet()), rb.keySet().parallelStream().collect(Collectors.toList()));
+        for (int i = 0; i < 50; ++i) {
+            int from = r.nextInt(210000) - 5000;
+            int to = from + r.nextInt(20000);
+            assertEquals(new ArrayList<>(tm.subMap(from, to).keySet()),
+                    rb.subMap(from, to).keySet().parallelStream().collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(tm.tailMap(from, false).values()),
+                    rb.tailMap(from, false).values().parallelStream().collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(tm.headMap(to, true).descendingMap().entrySet()),
+                    rb.headMap(to, true).descendingMap().entrySet().stream().collect(Collectors.toList()));
+        }
+        assertEquals(0, rb.subMap(7, false, 7, false).keySet().spliterator().estimateSize());
+
+        final Spliterator<Integer> stale = rb.keySet().spliterator();
+        rb.remove(tm.firstKey());
+        assertThrows(ConcurrentModificationException.class, () -> stale.tryAdvance(k -> { }));
+        assertThrows(ConcurrentModificationException.class, () -> rb.keySet().spliterator().forEachRemaining(rb::remove));
+    }
+}
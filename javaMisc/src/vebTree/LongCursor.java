@@ -0,0 +1,29 @@
+package vebTree;
+
+/**
+ * Forward only cursor over primitive keys. Unlike iterators it allocates nothing per step
+ * and can be rewound with {@link #reset()} to walk the same structure again:
+ * <pre>
+ * for (LongCursor c = set.cursor(); c.advance(); )
+ *     use(c.key());
+ * </pre>
+ * Cursors are not fail-fast: modification of the backing structure during the walk leaves
+ * the cursor in undefined state until {@link #reset()}.
+ */
+public interface LongCursor {
+    /**
+     * Moves to the next key.
+     * @return false if there are no more keys
+     */
+    boolean advance();
+
+    /**
+     * @return current key, valid only after {@link #advance()} returned true
+     */
+    long key();
+
+    /**
+     * Rewinds cursor to the position before the first key.
+     */
+    void reset();
+}
@@ -0,0 +1,11 @@
+package vebTree;
+
+/**
+ * {@link LongCursor} over primitive keys with primitive int values.
+ */
+public interface LongIntCursor extends LongCursor {
+    /**
+     * @return value associated with current {@link #key()}
+     */
+    int value();
+}
@@ -0,0 +1,11 @@
+package vebTree;
+
+/**
+ * {@link LongCursor} over primitive keys with primitive long values.
+ */
+public interface LongLongCursor extends LongCursor {
+    /**
+     * @return value associated with current {@link #key()}
+     */
+    long value();
+}
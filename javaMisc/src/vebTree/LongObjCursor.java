@@ -0,0 +1,11 @@
+package vebTree;
+
+/**
+ * {@link LongCursor} over primitive keys with associated values.
+ */
+public interface LongObjCursor<V> extends LongCursor {
+    /**
+     * @return value associated with current {@link #key()}
+     */
+    V value();
+}
@@ -0,0 +1,55 @@
+package vebTree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes values of {@link vebTreeMap} for {@link vebTreeMap#writeTo} and reads them back in
+ * {@link vebTreeMap#readFrom}. Values are written one after another in key order, so codec must
+ * read exactly the bytes it has written. Null values are passed to the codec as is.
+ */
+public interface ValueCodec<V> {
+    ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public void write(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+        @Override
+        public void write(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /**
+     * Strings in modified UTF-8 as by {@link DataOutput#writeUTF}, i.e. up to 65535 bytes long.
+     */
+    ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    void write(V value, DataOutput out) throws IOException;
+
+    V read(DataInput in) throws IOException;
+}
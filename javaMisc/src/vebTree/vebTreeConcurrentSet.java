@@ -0,0 +1,451 @@
+package vebTree;
+
+import java.util.AbstractSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Thread safe Van Emde Boas tree over keys [0; 2^k). Default universe is 2^32, others (up to 2^64)
+ * are available through {@link #withUniverseBits(int)}, with 2^64 universe keys are unsigned.
+ * <p>
+ * Top level clusters (segments) are plain {@link vebTreeSet}s, each guarded by its own
+ * {@link StampedLock}, and there is no top level min/max, so writers lock only the segment of the key
+ * and writers of different high bit ranges do not contend. Readers first try optimistic reads of the
+ * segment and take its read lock only if a writer interfered. Non-empty segments are tracked in an
+ * atomic bitmap which is updated under the segment lock.
+ * <p>
+ * Consistency guarantees:
+ * <ul>
+ *     <li>{@link #add(long)}, {@link #remove(long)} and {@link #contains(long)} are linearizable.</li>
+ *     <li>{@link #nextKey}, {@link #prevKey}, {@link #firstKey} and {@link #lastKey} are linearizable
+ *     while the answer is in the segment of the argument (for first/last key, in the first/last
+ *     non-empty segment they look at). Otherwise segments are examined one by one and, as with
+ *     {@link java.util.concurrent.ConcurrentSkipListSet}, the returned key was present at some moment
+ *     during the call and every key in between was absent at some moment during the call.</li>
+ *     <li>Iteration is weakly consistent: it never throws {@link java.util.ConcurrentModificationException},
+ *     each segment is copied out atomically, and keys are returned in ascending order.</li>
+ *     <li>{@link #size()} is exact only in the absence of concurrent updates.</li>
+ * </ul>
+ */
+public class vebTreeConcurrentSet extends AbstractSet<Long> {
+    public static final long MIN_POSSIBLE_KEY = vebTreeSet.MIN_POSSIBLE_KEY;
+    public static final long NO_ELEMENT = vebTreeSet.NO_ELEMENT;
+    /**
+     * at most 2^MAX_SEGMENT_BITS segments
+     */
+    static final int MAX_SEGMENT_BITS = 16;
+
+    private final int k;
+    /**
+     * number of high bits selecting the segment
+     */
+    private final int segmentBits;
+    private final boolean sparse;
+    private final AtomicReferenceArray<Segment> segments;
+    /**
+     * bit per non-empty segment
+     */
+    private final AtomicLongArray occupied;
+    private final LongAdder size = new LongAdder();
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        final vebTreeSet keys;
+
+        Segment(vebTreeSet keys) {
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Query against a segment, answers {@link #NO_ELEMENT} when there is no key
+     */
+    private interface SegmentQuery {
+        long apply(vebTreeSet keys, long low);
+    }
+
+    private static final SegmentQuery CONTAINS = (keys, low) -> keys.contains(low)? low : NO_ELEMENT;
+    private static final SegmentQuery NEXT = vebTreeSet::nextKey;
+    private static final SegmentQuery PREV = vebTreeSet::prevKey;
+    private static final SegmentQuery FIRST = (keys, low) -> keys.firstKey();
+    private static final SegmentQuery LAST = (keys, low) -> keys.lastKey();
+
+    public vebTreeConcurrentSet(){
+        this(32, false);
+    }
+    public vebTreeConcurrentSet(vebTreeSet.ClusterPolicy policy){
+        this(32, policy == vebTreeSet.ClusterPolicy.SPARSE);
+    }
+    private vebTreeConcurrentSet(int k, boolean sparse){
+        this.k = k;
+        this.segmentBits = Math.min(k / 2, MAX_SEGMENT_BITS);
+        this.sparse = sparse;
+        this.segments = new AtomicReferenceArray<>(1 << segmentBits);
+        this.occupied = new AtomicLongArray(((1 << segmentBits) + 63) >>> 6);
+    }
+
+    /**
+     * @return empty set for keys in range [0; 2^bits), 64 bits stand for all (unsigned) longs
+     */
+    public static vebTreeConcurrentSet withUniverseBits(int bits){
+        return withUniverseBits(bits, vebTreeSet.ClusterPolicy.DENSE);
+    }
+
+    public static vebTreeConcurrentSet withUniverseBits(int bits, vebTreeSet.ClusterPolicy policy){
+        vebTreeSet.checkUniverseBits(bits);
+        return new vebTreeConcurrentSet(bits, policy == vebTreeSet.ClusterPolicy.SPARSE);
+    }
+
+    /**
+     * @return this set holds keys in range [0; 2^universeBits())
+     */
+    public int universeBits(){
+        return k;
+    }
+
+    /**
+     * @return largest key this set can hold, -1 stands for 2^64 - 1
+     */
+    public long maxPossibleKey(){
+        return k == 64? -1L : (1L << k) - 1L;
+    }
+
+    private int segmentOf(long key){
+        return (int) (key >>> (k - segmentBits));
+    }
+
+    private long lowBits(long key){
+        return key & ((1L << (k - segmentBits)) - 1L);
+    }
+
+    private long combine(long low, int segment){
+        return ((long) segment << (k - segmentBits)) | low;
+    }
+
+    private int compareKeys(long a, long b){
+        return k == 64? Long.compareUnsigned(a, b) : Long.compare(a, b);
+    }
+
+    private boolean inUniverse(long key){
+        return k == 64 || (key >>> k) == 0;
+    }
+
+    private Segment segmentAt(int segment){
+        Segment retVal = segments.get(segment);
+        if (retVal == null) {
+            final Segment created = new Segment(new vebTreeSet(k - segmentBits, sparse));
+            retVal = segments.compareAndSet(segment, null, created)? created : segments.get(segment);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the first non-empty segment in [from; to] (or [to; from] if descending) or -1
+     */
+    private int occupiedSegment(int from, int to, boolean descending){
+        if (descending? from < to : from > to)
+            return -1;
+        int word = from >>> 6;
+        long bits = occupied.get(word) & (descending? -1L >>> (63 - (from & 63)) : -1L << (from & 63));
+        while (bits == 0) {
+            word += descending? -1 : 1;
+            if (descending? word < to >>> 6 : word > to >>> 6)
+                return -1;
+            bits = occupied.get(word);
+        }
+        final int retVal = (word << 6) + (descending? vebTreeSet.wordMax(bits) : vebTreeSet.wordMin(bits));
+        return (descending? retVal < to : retVal > to)? -1 : retVal;
+    }
+
+    private void markOccupied(int segment, boolean value){
+        final int word = segment >>> 6;
+        final long bit = 1L << segment;
+        long cur;
+        do {
+            cur = occupied.get(word);
+        } while (!occupied.compareAndSet(word, cur, value? cur | bit : cur & ~bit));
+    }
+
+    /**
+     * Runs {@code query} against the segment optimistically, falls back to read lock if a writer interfered.
+     */
+    private static long read(Segment segment, SegmentQuery query, long low){
+        final long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final long retVal = query.apply(segment.keys, low);
+                if (segment.lock.validate(stamp))
+                    return retVal;
+            } catch (RuntimeException ignored) {
+                // torn state seen through a racing writer, retry under the lock
+            }
+        }
+        final long readStamp = segment.lock.readLock();
+        try {
+            return query.apply(segment.keys, low);
+        } finally {
+            segment.lock.unlockRead(readStamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size.sum()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return occupiedSegment(0, segments.length() - 1, false) < 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains((long) o);
+    }
+
+    public boolean contains(long val){
+        if (!inUniverse(val)) return false;
+        final Segment segment = segments.get(segmentOf(val));
+        return segment != null && read(segment, CONTAINS, lowBits(val)) != NO_ELEMENT;
+    }
+
+    @Override
+    public boolean add(Long aLong) {
+        return add(aLong.longValue());
+    }
+
+    public boolean add(long val){
+        if (!inUniverse(val))
+            throw new UnsupportedOperationException("Adding element " + val +
+                    " to (sub)vebTree which can contains only values in range [0; " +
+                    Long.toUnsignedString(maxPossibleKey()) + "].");
+        final int hi = segmentOf(val);
+        final Segment segment = segmentAt(hi);
+        final long stamp = segment.lock.writeLock();
+        try {
+            if (!segment.keys.insert(lowBits(val)))
+                return false;
+            if (segment.keys.size() == 1)
+                markOccupied(hi, true);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        size.increment();
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    public boolean remove(long val){
+        if (!inUniverse(val)) return false;
+        final int hi = segmentOf(val);
+        final Segment segment = segments.get(hi);
+        if (segment == null) return false;
+        final long stamp = segment.lock.writeLock();
+        try {
+            if (!segment.keys.remove(lowBits(val)))
+                return false;
+            if (segment.keys.isEmpty())
+                markOccupied(hi, false);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        size.decrement();
+        return true;
+    }
+
+    /**
+     * Removes all keys, segment by segment. Keys added concurrently may survive.
+     */
+    @Override
+    public void clear() {
+        for (int hi = 0; hi < segments.length(); ++hi) {
+            final Segment segment = segments.get(hi);
+            if (segment == null) continue;
+            final long stamp = segment.lock.writeLock();
+            try {
+                final int removed = segment.keys.size();
+                if (removed != 0) {
+                    segment.keys.clear();
+                    markOccupied(hi, false);
+                    size.add(-removed);
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return {@code query} answer from the first segment in [from; to] (or [to; from] if descending)
+     * which has one, or {@link #NO_ELEMENT}
+     */
+    private long scan(int from, int to, boolean descending, SegmentQuery query, long low){
+        for (int hi = occupiedSegment(from, to, descending); hi >= 0;
+             hi = hi == to? -1 : occupiedSegment(descending? hi - 1 : hi + 1, to, descending)) {
+            final long retVal = read(segments.get(hi), query, low);
+            if (retVal != NO_ELEMENT)
+                return combine(retVal, hi);
+        }
+        return NO_ELEMENT;
+    }
+
+    /**
+     * @return the smallest key or {@link #NO_ELEMENT} if the set is empty
+     */
+    public long firstKey(){
+        return scan(0, segments.length() - 1, false, FIRST, 0);
+    }
+
+    /**
+     * @return the largest key or {@link #NO_ELEMENT} if the set is empty
+     */
+    public long lastKey(){
+        return scan(segments.length() - 1, 0, true, LAST, 0);
+    }
+
+    /**
+     * @return the smallest key strictly greater than {@code val} or {@link #NO_ELEMENT}
+     * (see {@link vebTreeSet#NO_ELEMENT} for 2^64 universe)
+     */
+    public long nextKey(long val){
+        if (compareKeys(val, MIN_POSSIBLE_KEY) < 0) return firstKey();
+        if (compareKeys(val, maxPossibleKey()) >= 0) return NO_ELEMENT;
+        final int hi = segmentOf(val);
+        final Segment segment = segments.get(hi);
+        if (segment != null) {
+            final long retVal = read(segment, NEXT, lowBits(val));
+            if (retVal != NO_ELEMENT)
+                return combine(retVal, hi);
+        }
+        return hi == segments.length() - 1? NO_ELEMENT : scan(hi + 1, segments.length() - 1, false, FIRST, 0);
+    }
+
+    /**
+     * @return the largest key strictly less than {@code val} or {@link #NO_ELEMENT}
+     */
+    public long prevKey(long val){
+        if (compareKeys(val, MIN_POSSIBLE_KEY) <= 0) return NO_ELEMENT;
+        if (compareKeys(val, maxPossibleKey()) > 0) return lastKey();
+        final int hi = segmentOf(val);
+        final Segment segment = segments.get(hi);
+        if (segment != null) {
+            final long retVal = read(segment, PREV, lowBits(val));
+            if (retVal != NO_ELEMENT)
+                return combine(retVal, hi);
+        }
+        return hi == 0? NO_ELEMENT : scan(hi - 1, 0, true, LAST, 0);
+    }
+
+    /**
+     * Performs the given action for each key in ascending order, weakly consistent as {@link #iterator()}.
+     */
+    public void forEachLong(LongConsumer action) {
+        for (PrimitiveIterator.OfLong it = iterator(); it.hasNext(); )
+            action.accept(it.nextLong());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Long> action) {
+        if (action instanceof LongConsumer)
+            forEachLong((LongConsumer) action);
+        else
+            forEachLong(action::accept);
+    }
+
+    /**
+     * @return weakly consistent iterator over keys in ascending order. Keys of each segment are copied
+     * out at once (optimistically, or under the segment read lock if a writer interferes).
+     */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new SegmentIterator();
+    }
+
+    private final class SegmentIterator implements PrimitiveIterator.OfLong {
+        private long[] buffer = new long[16];
+        private int count = 0;
+        private int pos = 0;
+        private int hi = -1;
+        private boolean canRemove = false;
+        private long prev;
+
+        SegmentIterator() {
+            fill();
+        }
+
+        /**
+         * Copies keys of the next non-empty segment into the buffer.
+         */
+        private void fill(){
+            pos = count = 0;
+            while (count == 0 && hi < segments.length() - 1) {
+                hi = occupiedSegment(hi + 1, segments.length() - 1, false);
+                if (hi < 0) {
+                    hi = segments.length();
+                    return;
+                }
+                copy(segments.get(hi));
+            }
+        }
+
+        private void copy(Segment segment){
+            final long stamp = segment.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    copyKeys(segment.keys);
+                    if (segment.lock.validate(stamp))
+                        return;
+                } catch (RuntimeException ignored) {
+                    // torn state seen through a racing writer, retry under the lock
+                }
+            }
+            final long readStamp = segment.lock.readLock();
+            try {
+                copyKeys(segment.keys);
+            } finally {
+                segment.lock.unlockRead(readStamp);
+            }
+        }
+
+        private void copyKeys(vebTreeSet keys){
+            final int expected = keys.size();
+            if (buffer.length < expected)
+                buffer = new long[Math.max(expected, 2 * buffer.length)];
+            count = 0;
+            for (LongCursor cursor = keys.cursor(); count < expected && cursor.advance(); )
+                buffer[count++] = combine(cursor.key(), hi);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < count;
+        }
+
+        @Override
+        public long nextLong() {
+            if (pos >= count) throw new NoSuchElementException();
+            prev = buffer[pos++];
+            canRemove = true;
+            if (pos == count)
+                fill();
+            return prev;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            vebTreeConcurrentSet.this.remove(prev);
+            canRemove = false;
+        }
+    }
+}
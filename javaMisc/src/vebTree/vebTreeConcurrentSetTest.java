@@ -0,0 +1,144 @@
+package vebTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class vebTreeConcurrentSetTest {
+    @Test
+    void sequentialTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 5, 20, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                vebTreeConcurrentSet cs = vebTreeConcurrentSet.withUniverseBits(bits, policy);
+                TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                final long mask = cs.maxPossibleKey();
+                for (int i = 0; i < 5000; ++i) {
+                    long t = (r.nextBoolean()? r.nextInt(1 << 12) : r.nextLong()) & mask;
+                    if (r.nextInt(4) == 0)
+                        assertEquals(ts.remove(t), cs.remove(t));
+                    else
+                        assertEquals(ts.add(t), cs.add(t));
+                    assertEquals(ts.size(), cs.size());
+                }
+                assertArrayEquals(ts.toArray(), cs.toArray());
+                for (int i = 0; i < 1000; ++i) {
+                    long t = (r.nextInt(8) == 0? mask - r.nextInt(3) : r.nextLong()) & mask;
+                    assertEquals(ts.contains(t), cs.contains(t));
+                    Long next = ts.higher(t);
+                    assertEquals(next == null? vebTreeSet.NO_ELEMENT : next, cs.nextKey(t));
+                    Long prev = ts.lower(t);
+                    assertEquals(prev == null? vebTreeSet.NO_ELEMENT : prev, cs.prevKey(t));
+                }
+                assertEquals((long) ts.first(), cs.firstKey());
+                assertEquals((long) ts.last(), cs.lastKey());
+                for (Iterator<Long> it = cs.iterator(); it.hasNext(); ) {
+                    long t = it.next();
+                    if (t % 3 == 0) {
+                        it.remove();
+                        ts.remove(t);
+                    }
+                }
+                assertArrayEquals(ts.toArray(), cs.toArray());
+                List<Long> viaForEach = new ArrayList<>();
+                cs.forEachLong(viaForEach::add);
+                List<Long> viaBoxedForEach = new ArrayList<>();
+                cs.forEach(t -> viaBoxedForEach.add(t));
+                assertEquals(new ArrayList<>(ts), viaForEach);
+                assertEquals(new ArrayList<>(ts), viaBoxedForEach);
+                cs.clear();
+                assertTrue(cs.isEmpty());
+                assertEquals(vebTreeSet.NO_ELEMENT, cs.firstKey());
+            }
+        }
+    }
+
+    @Test
+    void largeUniverseDefaultPolicyTest() {
+        // segments of 2^44 keys must not allocate dense directories of 2^22 slots for a few keys
+        List<vebTreeConcurrentSet> sets = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            vebTreeConcurrentSet cs = vebTreeConcurrentSet.withUniverseBits(60);
+            for (long t : new long[]{i, 1L << 30, 1L << 45, (1L << 60) - 1})
+                cs.add(t);
+            sets.add(cs);
+        }
+        for (int i = 0; i < sets.size(); ++i)
+            assertEquals(1L << 30, sets.get(i).nextKey(i));
+    }
+
+    @Test
+    void concurrentTest() throws Exception {
+        final int threads = 8;
+        final int perThread = 20000;
+        final vebTreeConcurrentSet cs = new vebTreeConcurrentSet(vebTreeSet.ClusterPolicy.SPARSE);
+        // keys divisible by 4 are never removed, so readers must always see them once added
+        final long[][] keys = new long[threads][perThread];
+        Random r = new Random(777);
+        for (long[] part : keys) {
+            for (int i = 0; i < perThread; ++i)
+                part[i] = r.nextLong() & vebTreeSet.MAX_POSSIBLE_KEY & ~3L | (i % 2 == 0? 0 : 1);
+        }
+        final long[] stable = new long[perThread / 2];
+        for (int i = 0; i < stable.length; ++i)
+            stable[i] = keys[0][2 * i];
+        for (long t : stable)
+            cs.add(t);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads + 2);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final List<Future<?>> writers = new ArrayList<>();
+        for (int th = 1; th < threads; ++th) {
+            final long[] part = keys[th];
+            writers.add(pool.submit(() -> {
+                for (int round = 0; round < 3; ++round) {
+                    for (long t : part)
+                        cs.add(t);
+                    for (int i = 1; i < part.length; i += 2)
+                        cs.remove(part[i]);
+                }
+            }));
+        }
+        final List<Future<?>> readers = new ArrayList<>();
+        for (int th = 0; th < 2; ++th) {
+            readers.add(pool.submit(() -> {
+                Random rr = new Random();
+                while (!done.get()) {
+                    long t = stable[rr.nextInt(stable.length)];
+                    assertTrue(cs.contains(t));
+                    long next = cs.nextKey(t - 1);
+                    assertTrue(next >= 0 && next <= t);
+                    long prev = cs.prevKey(t + 1);
+                    assertTrue(prev >= t);
+                    long last = -1;
+                    int seen = 0;
+                    for (PrimitiveIterator.OfLong it = cs.iterator(); it.hasNext() && seen < 1000; ++seen) {
+                        long cur = it.nextLong();
+                        assertTrue(cur > last);
+                        last = cur;
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : writers)
+            f.get();
+        done.set(true);
+        for (Future<?> f : readers)
+            f.get();
+        pool.shutdown();
+
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long t : stable)
+            expected.add(t);
+        for (int th = 1; th < threads; ++th) {
+            for (int i = 0; i < perThread; i += 2)
+                expected.add(keys[th][i]);
+        }
+        assertEquals(expected.size(), cs.size());
+        assertArrayEquals(expected.toArray(), cs.toArray());
+    }
+}
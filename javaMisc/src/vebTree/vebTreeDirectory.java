@@ -0,0 +1,181 @@
+package vebTree;
+
+import static vebTree.vebTreeSet.MAX_DENSE_BITS;
+import static vebTree.vebTreeSet.MAX_EAGER_DENSE_BITS;
+import static vebTree.vebTreeSet.SPARSE_DENSITY_SHIFT;
+import static vebTree.vebTreeSet.SPARSE_MIN_CAPACITY;
+
+/**
+ * Clusters of a map (sub)tree looked up by high bits: open addressing table keyed by clusterKeys, or dense array
+ * indexed by high bits once clusterKeys is null. Shared by {@link vebTreeMap}, {@link vebTreeLongLongMap} and
+ * {@link vebTreeLongIntMap}, the static methods are the directory policy of {@link vebTreeSet} as well.
+ */
+final class vebTreeDirectory<C> {
+    /**
+     * number of high bits, i.e. there are 2^bits possible clusters
+     */
+    private final int bits;
+    private Object[] clusters;
+    private int[] clusterKeys;
+    private int clusterCount = 0;
+
+    /**
+     * @return directory of 2^bits clusters may be dense array
+     */
+    static boolean denseAllowed(int bits){
+        return bits <= MAX_DENSE_BITS;
+    }
+
+    /**
+     * @return directory of 2^bits clusters starts as dense array rather than hash table,
+     * see {@link vebTreeSet#MAX_EAGER_DENSE_BITS}
+     */
+    static boolean denseFirst(int bits, boolean sparse){
+        return denseAllowed(bits) && (!sparse && bits <= MAX_EAGER_DENSE_BITS ||
+                ((1 << bits) >>> SPARSE_DENSITY_SHIFT) == 0);
+    }
+
+    /**
+     * @return directory holding {@code count} of 2^bits clusters should be dense array:
+     * more than 1/2^SPARSE_DENSITY_SHIFT of clusters are in use
+     */
+    static boolean denseFor(int bits, int count){
+        return denseAllowed(bits) && count > (1 << bits) >>> SPARSE_DENSITY_SHIFT;
+    }
+
+    /**
+     * @return capacity of hash table for {@code count} clusters, at most half full
+     */
+    static int sparseCapacityFor(int count){
+        int capacity = SPARSE_MIN_CAPACITY;
+        while (capacity < 2L * count)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Empty directory of 2^bits clusters as the first insert into clusters needs it.
+     */
+    vebTreeDirectory(int bits, boolean sparse){
+        this.bits = bits;
+        allocate(denseFirst(bits, sparse)? 0 : SPARSE_MIN_CAPACITY);
+    }
+
+    /**
+     * Empty directory for {@code count} clusters added at once, in the representation
+     * {@link #claimSlot} would have grown to.
+     */
+    vebTreeDirectory(int bits, boolean sparse, int count){
+        this.bits = bits;
+        allocate(denseFirst(bits, sparse) || denseFor(bits, count)? 0 : sparseCapacityFor(count));
+    }
+
+    /**
+     * Allocates empty table with given capacity or dense array if capacity is 0.
+     */
+    private void allocate(int capacity){
+        clusterKeys = capacity == 0? null : new int[capacity];
+        clusters = new Object[capacity == 0? 1 << bits : capacity];
+    }
+
+    private int probeStart(int hi){
+        return (hi * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(clusterKeys.length) + 1);
+    }
+
+    /**
+     * @return cluster responsible for high bits {@code hi} or null
+     */
+    C get(int hi){
+        if (clusterKeys == null)
+            return at(hi);
+        final int slot = findSlot(hi);
+        return slot < 0? null : at(slot);
+    }
+
+    @SuppressWarnings("unchecked")
+    C at(int slot){
+        return (C) clusters[slot];
+    }
+
+    void set(int slot, C cluster){
+        clusters[slot] = cluster;
+    }
+
+    /**
+     * @return slot of cluster {@code hi} or -1 if there is no such cluster
+     */
+    int findSlot(int hi){
+        if (clusterKeys == null)
+            return clusters[hi] != null? hi : -1;
+        final int mask = clusterKeys.length - 1;
+        for (int slot = probeStart(hi); clusters[slot] != null; slot = (slot + 1) & mask) {
+            if (clusterKeys[slot] == hi)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * @return slot for cluster {@code hi}. If there is no such cluster returned slot is free and
+     * must be filled by the caller.
+     */
+    int claimSlot(int hi){
+        if (clusterKeys == null)
+            return hi;
+        int slot = findSlot(hi);
+        if (slot >= 0)
+            return slot;
+        if (2 * (clusterCount + 1) > clusterKeys.length) {
+            grow();
+            if (clusterKeys == null)
+                return hi;
+        }
+        final int mask = clusterKeys.length - 1;
+        for (slot = probeStart(hi); clusters[slot] != null; slot = (slot + 1) & mask);
+        clusterKeys[slot] = hi;
+        ++clusterCount;
+        return slot;
+    }
+
+    /**
+     * Doubles the table or switches it to dense array, see {@link #denseFor}.
+     */
+    private void grow(){
+        final int[] oldKeys = clusterKeys;
+        final Object[] oldClusters = clusters;
+        final boolean dense = denseFor(bits, clusterCount + 1);
+        allocate(dense? 0 : 2 * oldKeys.length);
+        final int mask = dense? 0 : clusterKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldClusters[i] == null)
+                continue;
+            int slot = oldKeys[i];
+            if (!dense) {
+                for (slot = probeStart(slot); clusters[slot] != null; slot = (slot + 1) & mask);
+                clusterKeys[slot] = oldKeys[i];
+            }
+            clusters[slot] = oldClusters[i];
+        }
+    }
+
+    /**
+     * Empties {@code slot} of just emptied cluster (backward shift deletion in the table).
+     */
+    void release(int slot){
+        clusters[slot] = null;
+        if (clusterKeys == null)
+            return;
+        --clusterCount;
+        final int mask = clusterKeys.length - 1;
+        int hole = slot;
+        for (int cur = (slot + 1) & mask; clusters[cur] != null; cur = (cur + 1) & mask) {
+            final int home = probeStart(clusterKeys[cur]);
+            if (((cur - home) & mask) >= ((cur - hole) & mask)) {
+                clusterKeys[hole] = clusterKeys[cur];
+                clusters[hole] = clusters[cur];
+                clusters[cur] = null;
+                hole = cur;
+            }
+        }
+    }
+}
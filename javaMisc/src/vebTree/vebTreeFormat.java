@@ -0,0 +1,325 @@
+package vebTree;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Binary format of {@link vebTreeSet#writeTo} and {@link vebTreeMap#writeTo}:
+ * <pre>
+ * header: int magic, byte version, byte kind (set or map), byte universe bits, byte cluster policy, int size
+ * keys:   blocks of keys sharing all bits but the lowest 6 (i.e. leaf words of vebTreeSet) in ascending
+ *         order, each block is a varint delta of its index (key &gt;&gt;&gt; 6) from the previous one
+ *         (-1 before the first block), a byte with number of keys in it minus one and either
+ *         low 6 bits of every key as bytes (up to 8 keys) or the whole 64 bit word
+ * values: map only, values in key order written by {@link ValueCodec}
+ * </pre>
+ * Sparse keys cost a few bytes each, dense ones about a bit. Everything is split into chunks prefixed
+ * with int length and followed by a chunk of zero length, so reader consumes exactly the bytes written
+ * and the channel may hold other data after them. Channels must be blocking.
+ */
+final class vebTreeFormat {
+    static final int MAGIC = 0x56454254;
+    static final byte VERSION = 1;
+    static final byte SET = 0;
+    static final byte MAP = 1;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int MAX_POSITIONS = 8;
+    private static final int BLOCK_BITS = 6;
+
+    private vebTreeFormat() {
+    }
+
+    static final class Header {
+        final int bits;
+        final boolean sparse;
+        final int size;
+
+        Header(int bits, boolean sparse, int size) {
+            this.bits = bits;
+            this.sparse = sparse;
+            this.size = size;
+        }
+
+        vebTreeSet.ClusterPolicy policy() {
+            return sparse? vebTreeSet.ClusterPolicy.SPARSE : vebTreeSet.ClusterPolicy.DENSE;
+        }
+    }
+
+    static void writeHeader(DataOutput out, byte kind, int bits, boolean sparse, int size) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+        out.writeByte(bits);
+        out.writeByte(sparse? 1 : 0);
+        out.writeInt(size);
+    }
+
+    static Header readHeader(DataInput in, byte kind) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("Not a vebTree stream");
+        final byte version = in.readByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported version " + version);
+        final byte actualKind = in.readByte();
+        if (actualKind != kind)
+            throw new StreamCorruptedException(actualKind == SET? "Stream holds a set" : "Stream holds a map");
+        final int bits = in.readUnsignedByte();
+        final int policy = in.readUnsignedByte();
+        final int size = in.readInt();
+        if (bits < 1 || bits > vebTreeSet.MAX_UNIVERSE_BITS || policy > 1 || size < 0 ||
+                bits < Integer.SIZE - 1 && size > 1L << bits)
+            throw new StreamCorruptedException("Corrupted header");
+        return new Header(bits, policy == 1, size);
+    }
+
+    /**
+     * Packs ascending keys into blocks, see format description above.
+     */
+    static final class KeyWriter {
+        private final DataOutput out;
+        private long prevBlock = -1;
+        private long block = -1;
+        private long word = 0;
+
+        KeyWriter(DataOutput out) {
+            this.out = out;
+        }
+
+        void add(long key) throws IOException {
+            final long keyBlock = key >>> BLOCK_BITS;
+            if (word != 0 && keyBlock != block)
+                writeBlock();
+            block = keyBlock;
+            word |= 1L << key;
+        }
+
+        void finish() throws IOException {
+            if (word != 0)
+                writeBlock();
+        }
+
+        private void writeBlock() throws IOException {
+            writeVarLong(out, block - prevBlock);
+            prevBlock = block;
+            final int count = Long.bitCount(word);
+            out.writeByte(count - 1);
+            if (count <= MAX_POSITIONS) {
+                for (long rest = word; rest != 0; rest &= rest - 1)
+                    out.writeByte(Long.numberOfTrailingZeros(rest));
+            } else {
+                out.writeLong(word);
+            }
+            word = 0;
+        }
+    }
+
+    /**
+     * @return {@code size} ascending keys of 2^bits universe written by {@link KeyWriter}
+     */
+    static long[] readKeys(DataInput in, int size, int bits) throws IOException {
+        // size comes from the stream, so the array grows with the keys actually read instead of trusting it
+        long[] keys = new long[Math.min(size, CHUNK_SIZE)];
+        long block = -1;
+        for (int n = 0; n < size; ) {
+            final long delta = readVarLong(in);
+            block += delta;
+            if (delta <= 0 || (block >>> (Long.SIZE - BLOCK_BITS)) != 0)
+                throw new StreamCorruptedException("Corrupted key block");
+            final int count = in.readUnsignedByte() + 1;
+            if (count > size - n)
+                throw new StreamCorruptedException("More keys than expected");
+            if (n + count > keys.length)
+                keys = Arrays.copyOf(keys, (int) Math.min(size, Math.max(2L * keys.length, n + count)));
+            final long base = block << BLOCK_BITS;
+            if (count <= MAX_POSITIONS) {
+                int prev = -1;
+                for (int i = 0; i < count; ++i) {
+                    final int low = in.readUnsignedByte();
+                    if (low <= prev || low >= Long.SIZE)
+                        throw new StreamCorruptedException("Corrupted key block");
+                    keys[n++] = base | low;
+                    prev = low;
+                }
+            } else {
+                final long word = in.readLong();
+                if (Long.bitCount(word) != count)
+                    throw new StreamCorruptedException("Corrupted key block");
+                for (long rest = word; rest != 0; rest &= rest - 1)
+                    keys[n++] = base | Long.numberOfTrailingZeros(rest);
+            }
+        }
+        if (size > 0 && bits < Long.SIZE && (keys[size - 1] >>> bits) != 0)
+            throw new StreamCorruptedException("Key " + keys[size - 1] + " out of universe 2^" + bits);
+        return keys;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long retVal = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final int b = in.readUnsignedByte();
+            retVal |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return retVal;
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Chunked data output, {@link #finish()} writes the end marker and leaves the channel open.
+     */
+    static final class Output extends DataOutputStream {
+        Output(WritableByteChannel channel) {
+            super(new ChunkedOutputStream(channel));
+        }
+
+        void finish() throws IOException {
+            ((ChunkedOutputStream) out).finish();
+        }
+    }
+
+    /**
+     * Chunked data input, {@link #finish()} checks that all written data is read and consumes the end marker.
+     */
+    static final class Input extends DataInputStream {
+        Input(ReadableByteChannel channel) {
+            super(new ChunkedInputStream(channel));
+        }
+
+        void finish() throws IOException {
+            ((ChunkedInputStream) in).finish();
+        }
+    }
+
+    private static final class ChunkedOutputStream extends OutputStream {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + CHUNK_SIZE);
+
+        ChunkedOutputStream(WritableByteChannel channel) {
+            this.channel = channel;
+            buffer.position(Integer.BYTES);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining())
+                writeChunk();
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining())
+                    writeChunk();
+                final int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            final int length = buffer.position() - Integer.BYTES;
+            if (length == 0)
+                return;
+            buffer.putInt(0, length);
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+            buffer.position(Integer.BYTES);
+        }
+
+        void finish() throws IOException {
+            writeChunk();
+            writeFully(channel, ByteBuffer.allocate(Integer.BYTES));
+        }
+    }
+
+    private static final class ChunkedInputStream extends InputStream {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        private boolean ended = false;
+
+        ChunkedInputStream(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        /**
+         * @return false if the end marker is reached
+         */
+        private boolean fill() throws IOException {
+            while (!buffer.hasRemaining()) {
+                if (ended)
+                    return false;
+                header.clear();
+                readFully(channel, header);
+                final int length = header.getInt(0);
+                if (length == 0) {
+                    ended = true;
+                    return false;
+                }
+                if (length < 0 || length > CHUNK_SIZE)
+                    throw new StreamCorruptedException("Corrupted chunk length " + length);
+                buffer.clear();
+                buffer.limit(length);
+                readFully(channel, buffer);
+                buffer.flip();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill()? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        void finish() throws IOException {
+            if (fill())
+                throw new StreamCorruptedException("Unexpected data after the end");
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException();
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package vebTree;
+
+import static vebTree.vebTreeSet.DUMMY_MAX;
+import static vebTree.vebTreeSet.DUMMY_MIN;
+import static vebTree.vebTreeSet.less;
+
+/**
+ * {@link vebTreeMap} specialized for primitive int values, nothing is boxed on lookups and updates.
+ * Layout and universes are the same, keys in [0; 2^k), default universe is 2^32.
+ * <p>
+ * Lookups return {@link #noEntryValue()} for missing keys. It defaults to 0 and is still a legal value,
+ * use {@link #containsKey} when it may be stored. Counters are kept with {@link #addTo} and {@link #increment}.
+ */
+public class vebTreeLongIntMap {
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    public static final long NO_ELEMENT = vebTreeSet.NO_ELEMENT;
+    private long minKey = DUMMY_MIN;
+    private long maxKey = DUMMY_MAX;
+    private int minVal;
+    private int maxVal;
+    private final int noEntryValue;
+
+    private final int k;
+    private final int k2;
+    private vebTreeSet summary = null;
+    private vebTreeDirectory<vebTreeLongIntMap> clusters = null;
+    /**
+     * see {@link vebTreeMap}
+     */
+    private final boolean sparse;
+    private int size = 0;
+
+    private long lowBits(long num){
+        return num & ((1L << k2) - 1L);
+    }
+
+    private int highBits(long num){
+        return (int)(num >>> k2);
+    }
+
+    private long combineLowHigh(long low, int high){
+        return (Integer.toUnsignedLong(high) << k2) | low;
+    }
+
+    private int compareKeys(long a, long b){
+        return k == 64? Long.compareUnsigned(a, b) : Long.compare(a, b);
+    }
+
+    private boolean inUniverse(long key){
+        return k == 64 || (key >>> k) == 0;
+    }
+
+    private vebTreeLongIntMap clusterAt(int hi){
+        return clusters == null? null : clusters.get(hi);
+    }
+
+    public vebTreeLongIntMap(){
+        this(0);
+    }
+
+    /**
+     * @param noEntryValue value returned by lookups when there is no such key
+     */
+    public vebTreeLongIntMap(int noEntryValue){
+        this(32, false, noEntryValue);
+    }
+
+    private vebTreeLongIntMap(int k, boolean sparse, int noEntryValue){
+        this.k = k;
+        this.k2 = k / 2;
+        this.sparse = sparse;
+        this.noEntryValue = noEntryValue;
+    }
+
+    /**
+     * @return empty map for keys in range [0; 2^bits), 64 bits stand for all (unsigned) longs
+     */
+    public static vebTreeLongIntMap withUniverseBits(int bits){
+        return withUniverseBits(bits, vebTreeSet.ClusterPolicy.DENSE, 0);
+    }
+
+    public static vebTreeLongIntMap withUniverseBits(int bits, vebTreeSet.ClusterPolicy policy, int noEntryValue){
+        vebTreeSet.checkUniverseBits(bits);
+        return new vebTreeLongIntMap(bits, policy == vebTreeSet.ClusterPolicy.SPARSE, noEntryValue);
+    }
+
+    public int noEntryValue(){
+        return noEntryValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @return this map holds keys in range [0; 2^universeBits())
+     */
+    public int universeBits(){
+        return k;
+    }
+
+    /**
+     * @return largest key this map can hold, -1 stands for 2^64 - 1
+     */
+    public long maxPossibleKey(){
+        return k == 64? -1L : (1L << k) - 1L;
+    }
+
+    public void clear() {
+        minKey = DUMMY_MIN;
+        maxKey = DUMMY_MAX;
+        size = 0;
+        summary = null;
+        clusters = null;
+    }
+
+    public boolean containsKey(long key){
+        if (size == 0 || !inUniverse(key)) return false;
+        if (minKey == key || maxKey == key) return true;
+        final vebTreeLongIntMap cluster = clusterAt(highBits(key));
+        return cluster != null && cluster.containsKey(lowBits(key));
+    }
+
+    /**
+     * @return value of {@code key} or {@link #noEntryValue()} if there is no such key
+     */
+    public int get(long key){
+        return getOrDefault(key, noEntryValue);
+    }
+
+    public int getOrDefault(long key, int defaultValue){
+        if (size == 0 || !inUniverse(key))
+            return defaultValue;
+        if (key == minKey)
+            return minVal;
+        if (key == maxKey)
+            return maxVal;
+        final vebTreeLongIntMap cluster = clusterAt(highBits(key));
+        return cluster == null? defaultValue : cluster.getOrDefault(lowBits(key), defaultValue);
+    }
+
+    /**
+     * @return previous value of {@code key} or {@link #noEntryValue()} if there was no such key
+     * @throws UnsupportedOperationException if {@code key} is out of universe
+     */
+    public int put(long key, int value) {
+        checkKey(key);
+        final int retVal = get(key);
+        insert(key, value);
+        return retVal;
+    }
+
+    /**
+     * Adds {@code delta} to the value of {@code key}, missing key is put with value {@code delta}
+     * (i.e. counts from 0 whatever {@link #noEntryValue()} is).
+     * @return new value of {@code key}
+     * @throws UnsupportedOperationException if {@code key} is out of universe
+     */
+    public int addTo(long key, int delta) {
+        checkKey(key);
+        long low = key;
+        for (vebTreeLongIntMap node = this; node != null && node.size > 0; ) {
+            if (low == node.minKey || low == node.maxKey) {
+                if (low == node.maxKey)
+                    node.maxVal += delta;
+                if (low == node.minKey)
+                    node.minVal += delta;
+                return low == node.minKey? node.minVal : node.maxVal;
+            }
+            final vebTreeLongIntMap cluster = node.clusterAt(node.highBits(low));
+            low = node.lowBits(low);
+            node = cluster;
+        }
+        insert(key, delta);
+        return delta;
+    }
+
+    /**
+     * Same as {@code addTo(key, 1)}.
+     */
+    public int increment(long key) {
+        return addTo(key, 1);
+    }
+
+    private void checkKey(long key){
+        if (!inUniverse(key))
+            throw new UnsupportedOperationException("Adding key " + key +
+                    " to (sub)vebTree which can contains only values in range [0; " +
+                    Long.toUnsignedString(maxPossibleKey()) + "].");
+    }
+
+    @SuppressWarnings("Duplicates")
+    private boolean insert(long key, int value){
+        boolean addedNewKey = false;
+        if (size == 0){
+            minKey = maxKey = key;
+            minVal = maxVal = value;
+            addedNewKey = true;
+        } else if (key == minKey || key == maxKey){
+            if (key == minKey){
+                minVal = value;
+            }
+            if (key == maxKey) {
+                maxVal = value;
+            }
+        }
+        else if (size == 1){
+            if (less(key, minKey)) {
+                minKey = key;
+                minVal = value;
+            }
+            else {
+                maxKey = key;
+                maxVal = value;
+            }
+            addedNewKey = true;
+        }
+        else {
+            if (less(key, minKey)) {
+                long tk = key;
+                int tv = value;
+                key = minKey;
+                value = minVal;
+                minKey = tk;
+                minVal = tv;
+            }
+            else if (less(maxKey, key)){
+                long tk = key;
+                int tv = value;
+                key = maxKey;
+                value = maxVal;
+                maxKey = tk;
+                maxVal = tv;
+            }
+
+            if (summary == null) summary = new vebTreeSet(k - k2, sparse);
+            final long low = lowBits(key);
+            final int hi = highBits(key);
+            if (clusters == null) clusters = new vebTreeDirectory<>(k - k2, sparse);
+            final int slot = clusters.claimSlot(hi);
+            final vebTreeLongIntMap cluster = clusters.at(slot);
+            if (cluster == null){
+                final vebTreeLongIntMap created = new vebTreeLongIntMap(k2, sparse, noEntryValue);
+                created.insert(low, value);
+                clusters.set(slot, created);
+                summary.insert(Integer.toUnsignedLong(hi));
+                addedNewKey = true;
+            } else {
+                addedNewKey = cluster.insert(low, value);
+            }
+        }
+        if (addedNewKey) {
+            ++size;
+        }
+        return addedNewKey;
+    }
+
+    /**
+     * @return removed value or {@link #noEntryValue()} if there was no such key
+     */
+    public int remove(long key){
+        final int retVal = get(key);
+        if (inUniverse(key))
+            erase(key);
+        return retVal;
+    }
+
+    @SuppressWarnings("Duplicates")
+    private boolean erase(long key){
+        if (size < 2){
+            if (size == 1 && key == minKey) {
+                clear();
+                return true;
+            }
+            return false;
+        }
+
+        boolean retVal = false;
+        if (size == 2){
+            if (minKey == key){
+                minKey = maxKey;
+                minVal = maxVal;
+                retVal = true;
+            }
+            else if (maxKey == key){
+                maxKey = minKey;
+                maxVal = minVal;
+                retVal = true;
+            }
+        }
+        else {
+            if (minKey == key){
+                final vebTreeLongIntMap cluster = clusterAt((int) summary.minKey);
+                this.minKey = combineLowHigh(cluster.minKey, (int) summary.minKey);
+                this.minVal = cluster.minVal;
+                key = this.minKey;
+            }
+            else if (maxKey == key){
+                final vebTreeLongIntMap cluster = clusterAt((int) summary.maxKey);
+                this.maxKey = combineLowHigh(cluster.maxKey, (int) summary.maxKey);
+                this.maxVal = cluster.maxVal;
+                key = this.maxKey;
+            }
+            final long low = lowBits(key);
+            final int hi = highBits(key);
+            final int slot = clusters.findSlot(hi);
+            if (slot >= 0){
+                final vebTreeLongIntMap cluster = clusters.at(slot);
+                retVal = cluster.erase(low);
+                if (cluster.isEmpty()){
+                    clusters.release(slot);
+                    summary.remove(Integer.toUnsignedLong(hi));
+                }
+            }
+        }
+        if (retVal){
+            --size;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the smallest key strictly greater than {@code val} or {@link #NO_ELEMENT}
+     * (see {@link vebTreeSet#NO_ELEMENT} for 2^64 universe)
+     */
+    public long nextKey(long val){
+        if (isEmpty() || compareKeys(val, maxKey) >= 0) return NO_ELEMENT;
+        if (compareKeys(val, minKey) < 0) return minKey;
+        return successor(val);
+    }
+
+    /**
+     * minKey <= val < maxKey
+     */
+    @SuppressWarnings("Duplicates")
+    private long successor(long val){
+        if (size <= 2) return maxKey;
+        final long low = lowBits(val);
+        final int hi = highBits(val);
+        final vebTreeLongIntMap cluster = clusterAt(hi);
+        if (cluster != null && low < cluster.maxKey){
+            return combineLowHigh(cluster.nextKey(low), hi);
+        }
+        final long nextHi = summary.nextKey(Integer.toUnsignedLong(hi));
+        if (nextHi == NO_ELEMENT) return maxKey;
+        return combineLowHigh(clusterAt((int) nextHi).minKey, (int) nextHi);
+    }
+
+    /**
+     * @return the smallest key or {@link #NO_ELEMENT} if the map is empty
+     */
+    public long firstKey(){
+        return isEmpty()? NO_ELEMENT : minKey;
+    }
+
+    /**
+     * @return cursor over keys in ascending order and their values, see {@link LongCursor}
+     */
+    public LongIntCursor cursor(){
+        return new EntryCursor(this);
+    }
+
+    public void forEach(EntryConsumer action) {
+        for (EntryCursor cursor = new EntryCursor(this); cursor.advance(); )
+            action.accept(cursor.key, cursor.value);
+    }
+
+    /**
+     * @return keys in ascending order
+     */
+    public long[] keys() {
+        final long[] retVal = new long[size];
+        int n = 0;
+        for (EntryCursor cursor = new EntryCursor(this); cursor.advance(); )
+            retVal[n++] = cursor.key;
+        return retVal;
+    }
+
+    /**
+     * Ascending walk over (sub)tree {@code node}, see {@link vebTreeMap}'s cursor.
+     */
+    @SuppressWarnings("Duplicates")
+    private static final class EntryCursor implements LongIntCursor {
+        private static final int BEFORE_FIRST = 0;
+        private static final int IN_CLUSTERS = 1;
+        private static final int BEFORE_LAST = 2;
+        private static final int DONE = 3;
+
+        private vebTreeLongIntMap node;
+        private int state;
+        long key;
+        int value;
+        private vebTreeSet.KeyCursor summaryCursor = null;
+        private boolean inCluster;
+        private int hi;
+        private EntryCursor clusterCursor = null;
+
+        EntryCursor(vebTreeLongIntMap node) {
+            reset(node);
+        }
+
+        private void reset(vebTreeLongIntMap node){
+            this.node = node;
+            state = BEFORE_FIRST;
+            inCluster = false;
+        }
+
+        @Override
+        public void reset() {
+            reset(node);
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        @Override
+        public int value() {
+            return value;
+        }
+
+        @Override
+        public boolean advance() {
+            switch (state) {
+                case BEFORE_FIRST:
+                    if (node.size == 0) {
+                        state = DONE;
+                        return false;
+                    }
+                    key = node.minKey;
+                    value = node.minVal;
+                    if (node.size == 1) {
+                        state = DONE;
+                    } else if (node.size == 2) {
+                        state = BEFORE_LAST;
+                    } else {
+                        state = IN_CLUSTERS;
+                        if (summaryCursor == null)
+                            summaryCursor = new vebTreeSet.KeyCursor(node.summary, false);
+                        else
+                            summaryCursor.reset(node.summary);
+                    }
+                    return true;
+                case IN_CLUSTERS:
+                    if (clusterAdvance() || nextCluster() && clusterAdvance())
+                        return true;
+                    key = node.maxKey;
+                    value = node.maxVal;
+                    state = DONE;
+                    return true;
+                case BEFORE_LAST:
+                    key = node.maxKey;
+                    value = node.maxVal;
+                    state = DONE;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean nextCluster(){
+            if (!summaryCursor.advance()) return false;
+            hi = (int) summaryCursor.key;
+            final vebTreeLongIntMap cluster = node.clusterAt(hi);
+            if (clusterCursor == null)
+                clusterCursor = new EntryCursor(cluster);
+            else
+                clusterCursor.reset(cluster);
+            inCluster = true;
+            return true;
+        }
+
+        private boolean clusterAdvance(){
+            if (!inCluster || !clusterCursor.advance()) return false;
+            key = node.combineLowHigh(clusterCursor.key, hi);
+            value = clusterCursor.value;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package vebTree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class vebTreeLongIntMapTest {
+    @Test
+    void randomOpsTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 7, 20, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                TreeMap<Long, Integer> tm = bits == 64? new TreeMap<>(Long::compareUnsigned) : new TreeMap<>();
+                vebTreeLongIntMap m = vebTreeLongIntMap.withUniverseBits(bits, policy, -1);
+                final long mask = m.maxPossibleKey();
+                for (int i = 0; i < 30000; ++i) {
+                    long t = r.nextInt(3) == 0? r.nextInt(1 << 12) & mask : r.nextLong() & mask;
+                    int v = r.nextInt();
+                    switch (r.nextInt(4)) {
+                        case 0:
+                            assertEquals(tm.getOrDefault(t, -1), m.remove(t));
+                            tm.remove(t);
+                            break;
+                        case 1:
+                            assertEquals(tm.merge(t, v, Integer::sum), m.addTo(t, v));
+                            break;
+                        default:
+                            assertEquals(tm.getOrDefault(t, -1), m.put(t, v));
+                            tm.put(t, v);
+                    }
+                    assertEquals(tm.size(), m.size());
+                    if (i % 50 == 0) {
+                        long probe = r.nextInt(2) == 0 || tm.isEmpty()? r.nextLong() & mask : tm.firstKey() + i & mask;
+                        assertEquals(tm.containsKey(probe), m.containsKey(probe));
+                        assertEquals(tm.getOrDefault(probe, -1), m.get(probe));
+                        assertEquals(tm.getOrDefault(probe, 5), m.getOrDefault(probe, 5));
+                        Long next = tm.higherKey(probe);
+                        assertEquals(next == null? vebTreeSet.NO_ELEMENT : next, m.nextKey(probe));
+                    }
+                }
+                List<Map.Entry<Long, Integer>> entries = new ArrayList<>();
+                m.forEach((k, v) -> entries.add(new AbstractMap.SimpleEntry<>(k, v)));
+                assertEquals(new ArrayList<>(tm.entrySet()), entries);
+                assertArrayEquals(tm.keySet().stream().mapToLong(Long::longValue).toArray(), m.keys());
+                assertEquals(tm.isEmpty()? vebTreeSet.NO_ELEMENT : tm.firstKey(), m.firstKey());
+                if (bits < 64)
+                    assertThrows(UnsupportedOperationException.class, () -> m.put(1L << bits, 1));
+            }
+        }
+    }
+
+    @Test
+    void largeUniverseDefaultPolicyTest() {
+        List<vebTreeLongIntMap> maps = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            vebTreeLongIntMap m = vebTreeLongIntMap.withUniverseBits(i % 2 == 0? 48 : 60);
+            for (long t : new long[]{i, 1L << 30, 1L << 45})
+                m.put(t, i);
+            maps.add(m);
+        }
+        for (int i = 0; i < maps.size(); ++i) {
+            assertEquals(1L << 30, maps.get(i).nextKey(i));
+            assertEquals(i, maps.get(i).get(1L << 45));
+        }
+    }
+
+    @Test
+    void countersTest() {
+        vebTreeLongIntMap m = new vebTreeLongIntMap();
+        assertEquals(0, m.noEntryValue());
+        for (long c : new long[]{1, 4, 3, 3, 5, 7, 3})
+            m.increment(c);
+        assertEquals(3, m.get(3));
+        assertEquals(1, m.get(7));
+        assertEquals(0, m.get(2));
+        assertEquals(-2, m.addTo(3, -5));
+        assertEquals(10, m.addTo(100, 10));
+        LongIntCursor c = m.cursor();
+        StringBuilder sb = new StringBuilder();
+        while (c.advance())
+            sb.append(c.key()).append('=').append(c.value()).append(' ');
+        assertEquals("1=1 3=-2 4=1 5=1 7=1 100=10 ", sb.toString());
+        c.reset();
+        assertTrue(c.advance());
+        assertEquals(1, c.key());
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertFalse(m.cursor().advance());
+    }
+}
@@ -1,10 +1,19 @@
 package vebTree;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 import static vebTree.vebTreeSet.DUMMY_MAX;
 import static vebTree.vebTreeSet.DUMMY_MIN;
+import static vebTree.vebTreeSet.less;
 
+/**
+ * Van Emde Boas tree based map over keys [0; 2^k). Default universe is 2^32, others (up to 2^64)
+ * are available through {@link #withUniverseBits(int)}, with 2^64 universe keys are unsigned.
+ */
 public class vebTreeMap<V> extends AbstractMap<Long, V>{
     public static long MIN_POSSIBLE_KEY = vebTreeSet.MIN_POSSIBLE_KEY;
     public static long MAX_POSSIBLE_KEY = vebTreeSet.MAX_POSSIBLE_KEY;
@@ -17,18 +26,73 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
     private final int k;
     private final int k2;
     private vebTreeSet summary = null;
-    private vebTreeMap<V>[] clusters = null;
-
-    private int lowBits(long num){
-        return (int)(num & ((1L << k2) - 1L));
+    private vebTreeDirectory<vebTreeMap<V>> clusters = null;
+    /**
+     * with SPARSE policy clusters start as open addressing table, see {@link vebTreeDirectory}
+     */
+    private final boolean sparse;
+
+    private long lowBits(long num){
+        return num & ((1L << k2) - 1L);
     }
 
     private int highBits(long num){
-        return (int)(num >> k2);
+        return (int)(num >>> k2);
+    }
+
+    private long combineLowHigh(long low, int high){
+        return (Integer.toUnsignedLong(high) << k2) | low;
+    }
+
+    private int compareKeys(long a, long b){
+        return k == 64? Long.compareUnsigned(a, b) : Long.compare(a, b);
     }
 
-    private long combineLowHigh(long low, long high){
-        return (high << k2) | low;
+    private boolean inUniverse(long key){
+        return k == 64 || (key >>> k) == 0;
+    }
+
+    /**
+     * @return cluster responsible for high bits {@code hi} or null
+     */
+    private vebTreeMap<V> clusterAt(int hi){
+        return clusters == null? null : clusters.get(hi);
+    }
+
+    /**
+     * Fills empty (sub)tree with keys[from; to) which must be distinct, ascending and in the universe,
+     * values[i] goes to keys[i]. See {@link vebTreeSet#build}.
+     */
+    @SuppressWarnings("Duplicates")
+    private void build(long[] keys, V[] values, int from, int to){
+        final long mask = maxPossibleKey();
+        size = to - from;
+        if (size == 0) return;
+        minKey = keys[from] & mask;
+        minVal = values[from];
+        maxKey = keys[to - 1] & mask;
+        maxVal = values[to - 1];
+        ++from;
+        --to;
+        if (from >= to) return;
+        int count = 1;
+        for (int i = from + 1; i < to; ++i) {
+            if (highBits(keys[i] & mask) != highBits(keys[i - 1] & mask))
+                ++count;
+        }
+        clusters = new vebTreeDirectory<>(k - k2, sparse, count);
+        final long[] his = new long[count];
+        int n = 0;
+        for (int runFrom = from, runTo; runFrom < to; runFrom = runTo) {
+            final int hi = highBits(keys[runFrom] & mask);
+            for (runTo = runFrom + 1; runTo < to && highBits(keys[runTo] & mask) == hi; ++runTo);
+            final vebTreeMap<V> cluster = new vebTreeMap<>(k2, sparse);
+            cluster.build(keys, values, runFrom, runTo);
+            clusters.set(clusters.claimSlot(hi), cluster);
+            his[n++] = Integer.toUnsignedLong(hi);
+        }
+        summary = new vebTreeSet(k - k2, sparse);
+        summary.build(his, 0, count);
     }
 
     private int size = 0;
@@ -42,11 +106,120 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
     }
 
     public vebTreeMap(){
-        this(32);
+        this(32, false);
+    }
+    public vebTreeMap(vebTreeSet.ClusterPolicy policy){
+        this(32, policy == vebTreeSet.ClusterPolicy.SPARSE);
     }
-    private vebTreeMap(int k){
+    private vebTreeMap(int k, boolean sparse){
         this.k = k;
         this.k2 = k / 2;
+        this.sparse = sparse;
+    }
+
+    /**
+     * @return empty map for keys in range [0; 2^bits), 64 bits stand for all (unsigned) longs
+     */
+    public static <V> vebTreeMap<V> withUniverseBits(int bits){
+        return withUniverseBits(bits, vebTreeSet.ClusterPolicy.DENSE);
+    }
+
+    public static <V> vebTreeMap<V> withUniverseBits(int bits, vebTreeSet.ClusterPolicy policy){
+        vebTreeSet.checkUniverseBits(bits);
+        return new vebTreeMap<>(bits, policy == vebTreeSet.ClusterPolicy.SPARSE);
+    }
+
+    /**
+     * Builds map of keys[i] to values[i] for i in [from; to) in linear time, keys must be ascending,
+     * for duplicate keys the last value wins.
+     * @throws IllegalArgumentException if keys are not sorted or do not fit in 2^32 universe
+     */
+    public static <V> vebTreeMap<V> fromSorted(long[] keys, V[] values, int from, int to){
+        return fromSorted(keys, values, from, to, 32, vebTreeSet.ClusterPolicy.DENSE);
+    }
+
+    /**
+     * Builds map of keys[i] to values[i] for i in [from; to) over 2^bits universe in linear time,
+     * keys must be ascending in the order of the map (unsigned for 64 bits), for duplicate keys
+     * the last value wins.
+     * @throws IllegalArgumentException if keys are not sorted or do not fit in the universe
+     */
+    public static <V> vebTreeMap<V> fromSorted(long[] keys, V[] values, int from, int to,
+                                               int bits, vebTreeSet.ClusterPolicy policy){
+        final vebTreeMap<V> retVal = withUniverseBits(bits, policy);
+        final int distinct = vebTreeSet.countSortedDistinct(keys, from, to, bits);
+        if (to > values.length)
+            throw new IndexOutOfBoundsException("Range [" + from + "; " + to + ") out of values of length " +
+                    values.length);
+        if (distinct < to - from) {
+            final long[] uniqueKeys = new long[distinct];
+            final V[] uniqueValues = Arrays.copyOf(values, distinct);
+            int n = 0;
+            for (int i = from; i < to; ++i) {
+                if (i + 1 < to && keys[i + 1] == keys[i])
+                    continue;
+                uniqueKeys[n] = keys[i];
+                uniqueValues[n++] = values[i];
+            }
+            keys = uniqueKeys;
+            values = uniqueValues;
+            from = 0;
+            to = distinct;
+        }
+        retVal.build(keys, values, from, to);
+        return retVal;
+    }
+
+    /**
+     * Writes this map in compact binary form (see {@link vebTreeFormat}): keys packed as by
+     * {@link vebTreeSet#writeTo} followed by values in key order written by {@code codec}.
+     * The channel is left open and must be blocking.
+     */
+    public void writeTo(WritableByteChannel channel, ValueCodec<? super V> codec) throws IOException {
+        final vebTreeFormat.Output out = new vebTreeFormat.Output(channel);
+        vebTreeFormat.writeHeader(out, vebTreeFormat.MAP, k, sparse, size);
+        final vebTreeFormat.KeyWriter keys = new vebTreeFormat.KeyWriter(out);
+        final EntryCursor<V> cursor = new EntryCursor<>(this);
+        while (cursor.advance())
+            keys.add(cursor.key);
+        keys.finish();
+        for (cursor.reset(); cursor.advance(); )
+            codec.write(cursor.value, out);
+        out.finish();
+    }
+
+    /**
+     * Reads map written by {@link #writeTo} (with the same universe and cluster policy) and builds it
+     * bottom-up as {@link #fromSorted} does, without per-key inserts. Exactly the written bytes are consumed.
+     * @throws java.io.StreamCorruptedException if the data is not a map written by {@link #writeTo}
+     */
+    public static <V> vebTreeMap<V> readFrom(ReadableByteChannel channel, ValueCodec<? extends V> codec)
+            throws IOException {
+        final vebTreeFormat.Input in = new vebTreeFormat.Input(channel);
+        final vebTreeFormat.Header header = vebTreeFormat.readHeader(in, vebTreeFormat.MAP);
+        final long[] keys = vebTreeFormat.readKeys(in, header.size, header.bits);
+        @SuppressWarnings("unchecked")
+        final V[] values = (V[]) new Object[keys.length];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = codec.read(in);
+        in.finish();
+        final vebTreeMap<V> retVal = new vebTreeMap<>(header.bits, header.sparse);
+        retVal.build(keys, values, 0, keys.length);
+        return retVal;
+    }
+
+    /**
+     * @return this map holds keys in range [0; 2^universeBits())
+     */
+    public int universeBits(){
+        return k;
+    }
+
+    /**
+     * @return largest key this map can hold, -1 stands for 2^64 - 1
+     */
+    public long maxPossibleKey(){
+        return k == 64? -1L : (1L << k) - 1L;
     }
 
     @Override
@@ -62,37 +235,38 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
 
     @Override
     public boolean containsKey(Object key) {
-        return key instanceof Long && containsKey(((Long) key).longValue());
+        return key instanceof Long && inUniverse((Long) key) && containsKey(((Long) key).longValue());
     }
 
     private boolean containsKey(long key){
+        if (size == 0) return false;
         boolean retVal = minKey == key || maxKey == key;
         if (!retVal) {
-            final int low = lowBits(key);
-            final int hi = highBits(key);
-            if (clusters != null && clusters[hi] != null)
-                retVal = clusters[hi].containsKey(low);
+            final vebTreeMap<V> cluster = clusterAt(highBits(key));
+            if (cluster != null)
+                retVal = cluster.containsKey(lowBits(key));
         }
         return retVal;
     }
 
     @Override
     public V get(Object key) {
-        if (key instanceof Long) return get(((Long) key).longValue());
+        if (key instanceof Long && inUniverse((Long) key)) return get(((Long) key).longValue());
         return null;
     }
 
     private V get(long key){
         V retVal = null;
-        if (key == minKey)
+        if (size == 0)
+            retVal = null;
+        else if (key == minKey)
             retVal = minVal;
         else if (key == maxKey)
             retVal = maxVal;
         else {
-            final int low = lowBits(key);
-            final int hi = highBits(key);
-            if (clusters != null && clusters[hi] != null)
-                retVal = clusters[hi].get(low);
+            final vebTreeMap<V> cluster = clusterAt(highBits(key));
+            if (cluster != null)
+                retVal = cluster.get(lowBits(key));
         }
         return retVal;
     }
@@ -103,10 +277,10 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
     }
 
     private V put(long key, V value) {
-        if (key < 0 || key >= (1L << k))
+        if (!inUniverse(key))
             throw new UnsupportedOperationException("Adding key " + key +
                     " to (sub)vebTree which can contains only values in range [0; " +
-                    (1L << k) + ").");
+                    Long.toUnsignedString(maxPossibleKey()) + "].");
         final V retVal = get(key);
         insert(key, value);
         return retVal;
@@ -127,12 +301,12 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
             }
         }
         else if (size == 1){
-            if (key < minKey) {
+            if (less(key, minKey)) {
                 minKey = key;
                 minVal = value;
                 addedNewKey = true;
             }
-            else if (key > maxKey){
+            else if (less(maxKey, key)){
                 maxKey = key;
                 maxVal = value;
                 addedNewKey = true;
@@ -142,7 +316,7 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
             }
         }
         else {
-            if (key < minKey) {
+            if (less(key, minKey)) {
                 long tk = key;
                 V tv = value;
                 key = minKey;
@@ -150,7 +324,7 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
                 minKey = tk;
                 minVal = tv;
             }
-            else if (key > maxKey){
+            else if (less(maxKey, key)){
                 long tk = key;
                 V tv = value;
                 key = maxKey;
@@ -159,17 +333,20 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
                 maxVal = tv;
             }
 
-            if (summary == null) summary = new vebTreeSet(k2);
-            if (clusters == null) clusters = new vebTreeMap[1 << k2];
-            final int low = lowBits(key);
+            if (summary == null) summary = new vebTreeSet(k - k2, sparse);
+            final long low = lowBits(key);
             final int hi = highBits(key);
-            if (clusters[hi] == null){
-                clusters[hi] = new vebTreeMap<>(k - k2);
-                clusters[hi].insert((long)low, value);
-                summary.insert(hi);
+            if (clusters == null) clusters = new vebTreeDirectory<>(k - k2, sparse);
+            final int slot = clusters.claimSlot(hi);
+            final vebTreeMap<V> cluster = clusters.at(slot);
+            if (cluster == null){
+                final vebTreeMap<V> created = new vebTreeMap<>(k2, sparse);
+                created.insert(low, value);
+                clusters.set(slot, created);
+                summary.insert(Integer.toUnsignedLong(hi));
                 addedNewKey = true;
             } else {
-                addedNewKey = clusters[hi].insert((long)low, value);
+                addedNewKey = cluster.insert(low, value);
             }
         }
         if (addedNewKey) {
@@ -180,7 +357,7 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
 
     @Override
     public V remove(Object key) {
-        if (key instanceof Long) return remove(((Long) key).longValue());
+        if (key instanceof Long && inUniverse((Long) key)) return remove(((Long) key).longValue());
         return null;
     }
 
@@ -193,7 +370,7 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
     @SuppressWarnings("Duplicates")
     private boolean erase(long key){
         if (size < 2){
-            if (key == minKey && key == maxKey) {
+            if (size == 1 && key == minKey) {
                 clear();
                 return true;
             }
@@ -215,24 +392,26 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
         }
         else {
             if (minKey == key){
-                int i = (int) summary.minKey;
-                this.minKey = combineLowHigh(clusters[i].minKey,summary.minKey);
-                this.minVal = clusters[i].minVal;
+                final vebTreeMap<V> cluster = clusterAt((int) summary.minKey);
+                this.minKey = combineLowHigh(cluster.minKey, (int) summary.minKey);
+                this.minVal = cluster.minVal;
                 key = this.minKey;
             }
             else if (maxKey == key){
-                int i = (int) summary.maxKey;
-                this.maxKey = combineLowHigh(clusters[i].maxKey,summary.maxKey);
-                this.maxVal = clusters[i].maxVal;
+                final vebTreeMap<V> cluster = clusterAt((int) summary.maxKey);
+                this.maxKey = combineLowHigh(cluster.maxKey, (int) summary.maxKey);
+                this.maxVal = cluster.maxVal;
                 key = this.maxKey;
             }
-            final int low = lowBits(key);
+            final long low = lowBits(key);
             final int hi = highBits(key);
-            if (clusters[hi] != null){
-                retVal = clusters[hi].erase(low);
-                if (clusters[hi].isEmpty()){
-                    clusters[hi] = null;
-                    summary.remove(hi);
+            final int slot = clusters.findSlot(hi);
+            if (slot >= 0){
+                final vebTreeMap<V> cluster = clusters.at(slot);
+                retVal = cluster.erase(low);
+                if (cluster.isEmpty()){
+                    clusters.release(slot);
+                    summary.remove(Integer.toUnsignedLong(hi));
                 }
             }
         }
@@ -242,23 +421,150 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
         return retVal;
     }
 
-    @SuppressWarnings("Duplicates")
+    /**
+     * @return the smallest key strictly greater than {@code val} or {@link #NO_ELEMENT}
+     * (see {@link vebTreeSet#NO_ELEMENT} for 2^64 universe)
+     */
     public long nextKey(long val){
-        if (isEmpty() || val >= maxKey) return NO_ELEMENT;
-        if (val < minKey) return minKey;
-        long defaultRetVal = val < maxKey? maxKey : NO_ELEMENT;
-        if (summary == null || clusters == null) return defaultRetVal;
-        final int low = lowBits(val);
-        int hi = highBits(val);
-        if (clusters[hi] != null && low < clusters[hi].maxKey){
-            return combineLowHigh(clusters[hi].nextKey(low), hi);
+        if (isEmpty() || compareKeys(val, maxKey) >= 0) return NO_ELEMENT;
+        if (compareKeys(val, minKey) < 0) return minKey;
+        return successor(val);
+    }
+
+    /**
+     * minKey <= val < maxKey
+     */
+    @SuppressWarnings("Duplicates")
+    private long successor(long val){
+        if (size <= 2) return maxKey;
+        final long low = lowBits(val);
+        final int hi = highBits(val);
+        final vebTreeMap<V> cluster = clusterAt(hi);
+        if (cluster != null && low < cluster.maxKey){
+            return combineLowHigh(cluster.nextKey(low), hi);
         }
-        hi = (int)summary.nextKey(hi);
-        if (hi == NO_ELEMENT) return defaultRetVal;
-        return combineLowHigh(clusters[hi].minKey, hi);
+        final long nextHi = summary.nextKey(Integer.toUnsignedLong(hi));
+        if (nextHi == NO_ELEMENT) return maxKey;
+        return combineLowHigh(clusterAt((int) nextHi).minKey, (int) nextHi);
+    }
+
+
+    /**
+     * @return cursor over keys in ascending order and their values, see {@link LongCursor}
+     */
+    public LongObjCursor<V> cursor(){
+        return new EntryCursor<>(this);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Long, ? super V> action) {
+        for (EntryCursor<V> cursor = new EntryCursor<>(this); cursor.advance(); )
+            action.accept(cursor.key, cursor.value);
     }
 
+    /**
+     * Ascending walk over (sub)tree {@code node}, same as {@link vebTreeSet.KeyCursor} but
+     * picks up values along with keys.
+     */
+    private static final class EntryCursor<V> implements LongObjCursor<V> {
+        private static final int BEFORE_FIRST = 0;
+        private static final int IN_CLUSTERS = 1;
+        private static final int BEFORE_LAST = 2;
+        private static final int DONE = 3;
+
+        private vebTreeMap<V> node;
+        private int state;
+        long key;
+        V value;
+        private vebTreeSet.KeyCursor summaryCursor = null;
+        private boolean inCluster;
+        private int hi;
+        private EntryCursor<V> clusterCursor = null;
+
+        EntryCursor(vebTreeMap<V> node) {
+            reset(node);
+        }
+
+        private void reset(vebTreeMap<V> node){
+            this.node = node;
+            state = BEFORE_FIRST;
+            inCluster = false;
+            value = null;
+        }
+
+        @Override
+        public void reset() {
+            reset(node);
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+
+        @Override
+        public boolean advance() {
+            switch (state) {
+                case BEFORE_FIRST:
+                    if (node.size == 0) {
+                        state = DONE;
+                        return false;
+                    }
+                    key = node.minKey;
+                    value = node.minVal;
+                    if (node.size == 1) {
+                        state = DONE;
+                    } else if (node.size == 2) {
+                        state = BEFORE_LAST;
+                    } else {
+                        state = IN_CLUSTERS;
+                        if (summaryCursor == null)
+                            summaryCursor = new vebTreeSet.KeyCursor(node.summary, false);
+                        else
+                            summaryCursor.reset(node.summary);
+                    }
+                    return true;
+                case IN_CLUSTERS:
+                    if (clusterAdvance() || nextCluster() && clusterAdvance())
+                        return true;
+                    key = node.maxKey;
+                    value = node.maxVal;
+                    state = DONE;
+                    return true;
+                case BEFORE_LAST:
+                    key = node.maxKey;
+                    value = node.maxVal;
+                    state = DONE;
+                    return true;
+                default:
+                    return false;
+            }
+        }
 
+        private boolean nextCluster(){
+            if (!summaryCursor.advance()) return false;
+            hi = (int) summaryCursor.key;
+            final vebTreeMap<V> cluster = node.clusterAt(hi);
+            if (clusterCursor == null)
+                clusterCursor = new EntryCursor<>(cluster);
+            else
+                clusterCursor.reset(cluster);
+            inCluster = true;
+            return true;
+        }
+
+        private boolean clusterAdvance(){
+            if (!inCluster || !clusterCursor.advance()) return false;
+            key = node.combineLowHigh(clusterCursor.key, hi);
+            value = clusterCursor.value;
+            return true;
+        }
+    }
 
     @Override
     public Set<Entry<Long, V>> entrySet() {
@@ -280,7 +586,7 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
                 try {
                     long key = (Long) entry.getKey();
                     Object val = entry.getValue();
-                    if (!vebTreeMap.this.containsKey(key))
+                    if (!vebTreeMap.this.containsKey((Object) key))
                         return false;
                     V realVal = get(key);
                     return (val == null || realVal == null)?
@@ -294,26 +600,26 @@ public class vebTreeMap<V> extends AbstractMap<Long, V>{
             @Override
             public Iterator<Entry<Long, V>> iterator() {
                 return new Iterator<Entry<Long, V>>() {
-                    long prev = NO_ELEMENT;
-                    long cur = isEmpty()? NO_ELEMENT : minKey;
+                    final EntryCursor<V> cursor = new EntryCursor<>(vebTreeMap.this);
+                    boolean hasNext = cursor.advance();
 
                     @Override
                     public boolean hasNext() {
-                        return cur != NO_ELEMENT;
+                        return hasNext;
                     }
 
                     @Override
                     public Entry<Long, V> next() {
-                        if (cur == NO_ELEMENT) throw new NoSuchElementException();
-                        prev = cur;
-                        cur = nextKey(cur);
-                        return new SimpleEntry<Long, V>(prev, get(prev)){
+                        if (!hasNext) throw new NoSuchElementException();
+                        final Entry<Long, V> retVal = new SimpleEntry<Long, V>(cursor.key, cursor.value){
                             @Override
                             public V setValue(V value) {
                                 vebTreeMap.this.insert(getKey(), value);
                                 return super.setValue(value);
                             }
                         };
+                        hasNext = cursor.advance();
+                        return retVal;
                     }
                 };
             }
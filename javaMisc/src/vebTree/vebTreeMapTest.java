@@ -2,7 +2,13 @@ package vebTree;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.Map;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,4 +23,162 @@ class vebTreeMapTest {
         for (Object o : m.entrySet())
             System.out.println(o);
     }
-}
\ No newline at end of file
+
+    @Test
+    void sparsePolicyTest(){
+        Map<Long, Integer> tm = new TreeMap<>();
+        Map<Long, Integer> m = new vebTreeMap<>(vebTreeSet.ClusterPolicy.SPARSE);
+        Random r = new Random(777);
+        for (int i = 0; i < 20000; ++i) {
+            long t = r.nextInt(3) == 0? r.nextInt(1 << 12) : r.nextLong() & vebTreeMap.MAX_POSSIBLE_KEY;
+            if (r.nextInt(4) == 0)
+                assertEquals(tm.remove(t), m.remove(t));
+            else
+                assertEquals(tm.put(t, i), m.put(t, i));
+            assertEquals(tm.size(), m.size());
+        }
+        assertEquals(tm, m);
+        assertArrayEquals(tm.entrySet().toArray(), m.entrySet().toArray());
+    }
+
+    @Test
+    void universeBitsTest(){
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 7, 20, 40, 64}) {
+            vebTreeMap<Long> m = vebTreeMap.withUniverseBits(bits, vebTreeSet.ClusterPolicy.SPARSE);
+            Map<Long, Long> tm = new TreeMap<>(Long::compareUnsigned);
+            final long mask = m.maxPossibleKey();
+            for (int i = 0; i < 5000; ++i) {
+                long t = i % 100 == 0? mask : r.nextLong() & mask;
+                if (r.nextInt(4) == 0)
+                    assertEquals(tm.remove(t), m.remove(t));
+                else
+                    assertEquals(tm.put(t, (long) i), m.put(t, (long) i));
+            }
+            assertEquals(tm, m);
+            assertArrayEquals(tm.entrySet().toArray(), m.entrySet().toArray());
+            assertNull(m.get(mask + 1 == 0? null : mask + 1));
+        }
+    }
+
+    @Test
+    void largeUniverseDefaultPolicyTest(){
+        List<vebTreeMap<Integer>> maps = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            vebTreeMap<Integer> m = vebTreeMap.withUniverseBits(i % 2 == 0? 48 : 60);
+            for (long t : new long[]{i, 1L << 30, 1L << 45})
+                m.put(t, i);
+            maps.add(m);
+        }
+        for (int i = 0; i < maps.size(); ++i) {
+            assertEquals(1L << 30, maps.get(i).nextKey(i));
+            assertEquals(i, (int) maps.get(i).get(1L << 45));
+        }
+    }
+
+    @Test
+    void cursorTest(){
+        Random r = new Random(777);
+        for (int bits : new int[]{3, 20, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                vebTreeMap<Integer> m = vebTreeMap.withUniverseBits(bits, policy);
+                TreeMap<Long, Integer> tm = new TreeMap<>(Long::compareUnsigned);
+                final long mask = m.maxPossibleKey();
+                for (int i = 0; i < 5000; ++i) {
+                    long t = (r.nextBoolean()? r.nextInt(1 << 10) : r.nextLong()) & mask;
+                    tm.put(t, i);
+                    m.put(t, i);
+                }
+                LongObjCursor<Integer> cursor = m.cursor();
+                for (int pass = 0; pass < 2; ++pass) {
+                    for (Map.Entry<Long, Integer> e : tm.entrySet()) {
+                        assertTrue(cursor.advance());
+                        assertEquals((long) e.getKey(), cursor.key());
+                        assertEquals(e.getValue(), cursor.value());
+                    }
+                    assertFalse(cursor.advance());
+                    cursor.reset();
+                }
+                List<Map.Entry<Long, Integer>> viaForEach = new ArrayList<>();
+                m.forEach((key, value) -> viaForEach.add(new AbstractMap.SimpleEntry<>(key, value)));
+                assertEquals(new ArrayList<>(tm.entrySet()), viaForEach);
+                for (Map.Entry<Long, Integer> e : m.entrySet())
+                    e.setValue(-e.getValue());
+                for (Map.Entry<Long, Integer> e : tm.entrySet())
+                    assertEquals(-e.getValue(), (int) m.get(e.getKey()));
+            }
+        }
+        assertFalse(new vebTreeMap<>().cursor().advance());
+    }
+
+    @Test
+    void fromSortedTest(){
+        Random r = new Random(777);
+        for (int bits : new int[]{2, 7, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                TreeMap<Long, Integer> tm = new TreeMap<>(Long::compareUnsigned);
+                final long mask = bits == 64? -1L : (1L << bits) - 1L;
+                TreeSet<Long> sorted = new TreeSet<>(Long::compareUnsigned);
+                for (int i = 0; i < 3000; ++i)
+                    sorted.add((r.nextInt(4) == 0? r.nextInt(1 << 12) : r.nextLong()) & mask);
+                final int n = sorted.size() + 20;
+                long[] keys = new long[n];
+                Integer[] values = new Integer[n];
+                int j = 10;
+                for (long t : sorted) {
+                    keys[j++] = t;
+                    if (j == 12)
+                        keys[j++] = t;
+                }
+                for (int i = 10; i < n - 10; ++i) {
+                    values[i] = i;
+                    tm.put(keys[i], i);
+                }
+                vebTreeMap<Integer> m = vebTreeMap.fromSorted(keys, values, 10, n - 10, bits, policy);
+                assertEquals(tm, m);
+                assertArrayEquals(tm.entrySet().toArray(), m.entrySet().toArray());
+                for (int i = 0; i < 500; ++i) {
+                    long t = r.nextLong() & mask;
+                    assertEquals(tm.put(t, -i), m.put(t, -i));
+                    t = keys[10 + r.nextInt(n - 20)];
+                    assertEquals(tm.remove(t), m.remove(t));
+                }
+                assertEquals(tm, m);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> vebTreeMap.fromSorted(new long[]{2, 1}, new Object[2], 0, 2));
+    }
+
+    @Test
+    void serializationTest() throws IOException {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 13, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                TreeMap<Long, String> tm = new TreeMap<>(vebTreeSet.UNSIGNED_ORDER);
+                vebTreeMap<String> m = vebTreeMap.withUniverseBits(bits, policy);
+                final long mask = m.maxPossibleKey();
+                for (int i = 0; i < 5000; ++i) {
+                    long t = (r.nextBoolean()? r.nextInt(1 << 12) : r.nextLong()) & mask;
+                    assertEquals(tm.put(t, "v" + i), m.put(t, "v" + i));
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                WritableByteChannel out = Channels.newChannel(bytes);
+                m.writeTo(out, ValueCodec.STRING);
+                vebTreeMap.<Long>withUniverseBits(bits, policy).writeTo(out, ValueCodec.LONG);
+
+                ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+                vebTreeMap<String> restored = vebTreeMap.readFrom(in, ValueCodec.STRING);
+                assertEquals(bits, restored.universeBits());
+                assertEquals(tm, restored);
+                assertArrayEquals(tm.keySet().toArray(), restored.keySet().toArray());
+                assertTrue(vebTreeMap.readFrom(in, ValueCodec.LONG).isEmpty());
+                for (int i = 0; i < 1000; ++i) {
+                    long t = (r.nextBoolean()? r.nextInt(1 << 12) : r.nextLong()) & mask;
+                    assertEquals(tm.put(t, "w"), restored.put(t, "w"));
+                    assertEquals(tm.get(t ^ 1), restored.get(t ^ 1));
+                }
+                assertEquals(tm, restored);
+            }
+        }
+    }
+}
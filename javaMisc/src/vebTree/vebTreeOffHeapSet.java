@@ -0,0 +1,795 @@
+package vebTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import static vebTree.vebTreeSet.LEAF_BITS;
+import static vebTree.vebTreeSet.NO_ELEMENT;
+import static vebTree.vebTreeSet.less;
+import static vebTree.vebTreeSet.wordMax;
+import static vebTree.vebTreeSet.wordMin;
+import static vebTree.vebTreeSet.wordNext;
+import static vebTree.vebTreeSet.wordPrev;
+
+/**
+ * Van Emde Boas tree over keys [0; 2^k) which keeps all its nodes, directories and summaries in a flat
+ * region of 64 bit words outside of the heap: direct buffers or a memory mapped file. The layout is the one
+ * of {@link vebTreeSet} with {@link vebTreeSet.ClusterPolicy#SPARSE SPARSE} policy, references are word
+ * addresses inside the region, so the garbage collector sees a handful of buffers however large the set is.
+ * <p>
+ * Region is split into pages of 2^pageBits words (a buffer each, mapped on demand), blocks of power of two
+ * words are cut from its end and freed blocks are kept in free lists by size and reused.
+ * <p>
+ * A mapped file holds the whole state, so {@link #open(Path, boolean) reopening} it only reads the header and
+ * read only instances of several processes share one copy through the page cache. Instances are not thread safe,
+ * read only ones may be used by concurrent readers.
+ */
+public final class vebTreeOffHeapSet implements Closeable {
+    private static final long MAGIC = 0x5645424F46464831L;
+    static final int DEFAULT_MEMORY_PAGE_BITS = 20;
+    static final int DEFAULT_FILE_PAGE_BITS = 24;
+    static final int MIN_PAGE_BITS = 10;
+    static final int MAX_PAGE_BITS = 27;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_BITS = 1;
+    private static final int H_PAGE_BITS = 2;
+    private static final int H_BUMP = 3;
+    private static final int H_ROOT = 4;
+    /**
+     * heads of free lists of blocks of 2^i words, next block is linked through the first word
+     */
+    private static final int H_FREE = 8;
+    private static final int HEADER_WORDS = H_FREE + Long.SIZE;
+
+    private static final int N_SIZE = 0;
+    private static final int N_MIN = 1;
+    private static final int N_MAX = 2;
+    /**
+     * summary bit word or address of summary node
+     */
+    private static final int N_SUMMARY = 3;
+    /**
+     * address of directory: 2^(k - k2) words indexed by high bits (leaf words or cluster nodes) if capacity
+     * is 0, otherwise open addressing table of {@code capacity} pairs of words (high bits, leaf word or node)
+     */
+    private static final int N_DIR = 4;
+    private static final int N_CAPACITY = 5;
+    private static final int N_COUNT = 6;
+    private static final int NODE_LOG = 3;
+    private static final int SPARSE_MIN_CAPACITY = 4;
+
+    private final int k;
+    private final int pageBits;
+    private final long pageMask;
+    private final boolean readOnly;
+    private final FileChannel channel;
+    private final List<LongBuffer> pages = new ArrayList<>();
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final long root;
+
+    private vebTreeOffHeapSet(int k, int pageBits, FileChannel channel, boolean readOnly, boolean fresh)
+            throws IOException {
+        this.k = k;
+        this.pageBits = pageBits;
+        this.pageMask = (1L << pageBits) - 1L;
+        this.channel = channel;
+        this.readOnly = readOnly;
+        if (fresh) {
+            mapPage(0);
+            put(H_MAGIC, MAGIC);
+            put(H_BITS, k);
+            put(H_PAGE_BITS, pageBits);
+            put(H_BUMP, HEADER_WORDS);
+            put(H_ROOT, allocateBlock(NODE_LOG));
+        } else {
+            final long pageCount = (readHeader(channel)[H_BUMP] + pageMask) >>> pageBits;
+            for (int page = 0; page < pageCount; ++page)
+                mapPage(page);
+        }
+        this.root = get(H_ROOT);
+    }
+
+    /**
+     * @return empty set over 2^bits universe in direct (off-heap) memory
+     */
+    public static vebTreeOffHeapSet allocate(int bits) {
+        return allocate(bits, DEFAULT_MEMORY_PAGE_BITS);
+    }
+
+    static vebTreeOffHeapSet allocate(int bits, int pageBits) {
+        checkParameters(bits, pageBits);
+        try {
+            return new vebTreeOffHeapSet(bits, pageBits, null, false, true);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return empty set over 2^bits universe mapped from {@code file}, which is created or truncated
+     */
+    public static vebTreeOffHeapSet create(Path file, int bits) throws IOException {
+        return create(file, bits, DEFAULT_FILE_PAGE_BITS);
+    }
+
+    static vebTreeOffHeapSet create(Path file, int bits, int pageBits) throws IOException {
+        checkParameters(bits, pageBits);
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new vebTreeOffHeapSet(bits, pageBits, channel, false, true);
+    }
+
+    /**
+     * Maps set previously {@link #create created} in {@code file}. Only the header is read, pages are loaded
+     * by the OS on access.
+     * @param readOnly mutators of read only set throw {@link UnsupportedOperationException}
+     * @throws StreamCorruptedException if the file does not hold a set
+     */
+    public static vebTreeOffHeapSet open(Path file, boolean readOnly) throws IOException {
+        final FileChannel channel = readOnly? FileChannel.open(file, StandardOpenOption.READ) :
+                FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long[] header = readHeader(channel);
+            return new vebTreeOffHeapSet((int) header[H_BITS], (int) header[H_PAGE_BITS], channel, readOnly, false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void checkParameters(int bits, int pageBits) {
+        vebTreeSet.checkUniverseBits(bits);
+        if (pageBits < MIN_PAGE_BITS || pageBits > MAX_PAGE_BITS)
+            throw new IllegalArgumentException("Page must be from 2^" + MIN_PAGE_BITS + " to 2^" + MAX_PAGE_BITS +
+                    " words, got 2^" + pageBits);
+    }
+
+    private static long[] readHeader(FileChannel channel) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.allocate(HEADER_WORDS * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining() && channel.read(bytes, bytes.position()) > 0);
+        if (bytes.hasRemaining())
+            throw new StreamCorruptedException("File is too short");
+        bytes.flip();
+        final long[] header = new long[HEADER_WORDS];
+        bytes.asLongBuffer().get(header);
+        if (header[H_MAGIC] != MAGIC || header[H_BITS] < 1 || header[H_BITS] > vebTreeSet.MAX_UNIVERSE_BITS ||
+                header[H_PAGE_BITS] < MIN_PAGE_BITS || header[H_PAGE_BITS] > MAX_PAGE_BITS ||
+                header[H_BUMP] < HEADER_WORDS || header[H_BUMP] > channel.size() / Long.BYTES)
+            throw new StreamCorruptedException("Not a vebTreeOffHeapSet file");
+        return header;
+    }
+
+    private void mapPage(int page) throws IOException {
+        final long bytes = Long.BYTES << pageBits;
+        final ByteBuffer buffer;
+        if (channel == null)
+            buffer = ByteBuffer.allocateDirect((int) bytes);
+        else
+            buffer = channel.map(readOnly? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                    page * bytes, bytes);
+        buffers.add(buffer);
+        pages.add(buffer.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+    }
+
+    private long get(long addr) {
+        return pages.get((int) (addr >>> pageBits)).get((int) (addr & pageMask));
+    }
+
+    private void put(long addr, long value) {
+        pages.get((int) (addr >>> pageBits)).put((int) (addr & pageMask), value);
+    }
+
+    /**
+     * @return address of zeroed block of 2^log words
+     */
+    private long allocateBlock(int log) {
+        final long size = 1L << log;
+        long retVal = get(H_FREE + log);
+        if (retVal != 0) {
+            put(H_FREE + log, get(retVal));
+            for (long i = 0; i < size; ++i)
+                put(retVal + i, 0);
+            return retVal;
+        }
+        retVal = get(H_BUMP);
+        final int page = (int) ((retVal + size - 1) >>> pageBits);
+        try {
+            while (pages.size() <= page)
+                mapPage(pages.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't map page " + page, e);
+        }
+        put(H_BUMP, retVal + size);
+        return retVal;
+    }
+
+    private void freeBlock(long addr, int log) {
+        put(addr, get(H_FREE + log));
+        put(H_FREE + log, addr);
+    }
+
+    private static int lowBitsCount(int k) {
+        return k <= 2 * LEAF_BITS? Math.min(k, LEAF_BITS) : k / 2;
+    }
+
+    private static boolean leafClusters(int k) {
+        return lowBitsCount(k) <= LEAF_BITS;
+    }
+
+    private static boolean leafSummary(int k) {
+        return k - lowBitsCount(k) <= LEAF_BITS;
+    }
+
+    private static long lowBits(int k, long num) {
+        return num & ((1L << lowBitsCount(k)) - 1L);
+    }
+
+    private static int highBits(int k, long num) {
+        return (int) (num >>> lowBitsCount(k));
+    }
+
+    private static long combineLowHigh(int k, long low, int high) {
+        return (Integer.toUnsignedLong(high) << lowBitsCount(k)) | low;
+    }
+
+    private long allocateNode() {
+        return allocateBlock(NODE_LOG);
+    }
+
+    /**
+     * Releases empty (sub)tree {@code node} with its directory and summary.
+     */
+    private void freeNode(long node, int k) {
+        final long dir = get(node + N_DIR);
+        if (dir != 0) {
+            final long capacity = get(node + N_CAPACITY);
+            if (!leafClusters(k)) {
+                final long words = capacity == 0? 1L << (k - lowBitsCount(k)) : capacity;
+                for (long i = 0; i < words; ++i) {
+                    final long child = get(capacity == 0? dir + i : dir + 2 * i + 1);
+                    if (child != 0)
+                        freeNode(child, lowBitsCount(k));
+                }
+            }
+            freeBlock(dir, capacity == 0? k - lowBitsCount(k) : Long.numberOfTrailingZeros(2 * capacity));
+        }
+        final long summary = get(node + N_SUMMARY);
+        if (!leafSummary(k) && summary != 0)
+            freeNode(summary, k - lowBitsCount(k));
+        freeBlock(node, NODE_LOG);
+    }
+
+    // ---- directory: slots are indices of words (dense) or of pairs of words (sparse)
+
+    private static boolean denseAllowed(int k) {
+        return k - lowBitsCount(k) <= vebTreeSet.MAX_DENSE_BITS;
+    }
+
+    private static int probeStart(int hi, long capacity) {
+        return (hi * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros((int) capacity) + 1);
+    }
+
+    /**
+     * @return address of leaf word or cluster node reference of slot {@code slot}
+     */
+    private long valueAddr(long node, int slot) {
+        final long dir = get(node + N_DIR);
+        return get(node + N_CAPACITY) == 0? dir + slot : dir + 2L * slot + 1;
+    }
+
+    /**
+     * @return slot of cluster {@code hi} or -1 if there is no such cluster
+     */
+    private int findSlot(long node, int hi) {
+        final long dir = get(node + N_DIR);
+        if (dir == 0)
+            return -1;
+        final long capacity = get(node + N_CAPACITY);
+        if (capacity == 0)
+            return get(dir + hi) != 0? hi : -1;
+        final int mask = (int) capacity - 1;
+        for (int slot = probeStart(hi, capacity); get(dir + 2L * slot + 1) != 0; slot = (slot + 1) & mask) {
+            if ((int) get(dir + 2L * slot) == hi)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * @return slot for cluster {@code hi}. If there is no such cluster returned slot is free and
+     * must be filled by the caller.
+     */
+    private int claimSlot(long node, int k, int hi) {
+        final int highCount = k - lowBitsCount(k);
+        if (get(node + N_DIR) == 0) {
+            if (denseAllowed(k) && highCount <= NODE_LOG) {
+                put(node + N_DIR, allocateBlock(highCount));
+            } else {
+                put(node + N_DIR, allocateBlock(Long.numberOfTrailingZeros(2 * SPARSE_MIN_CAPACITY)));
+                put(node + N_CAPACITY, SPARSE_MIN_CAPACITY);
+            }
+        }
+        long capacity = get(node + N_CAPACITY);
+        if (capacity == 0)
+            return hi;
+        int slot = findSlot(node, hi);
+        if (slot >= 0)
+            return slot;
+        final long count = get(node + N_COUNT);
+        if (2 * (count + 1) > capacity) {
+            growDirectory(node, k, count);
+            capacity = get(node + N_CAPACITY);
+            if (capacity == 0)
+                return hi;
+        }
+        final long dir = get(node + N_DIR);
+        final int mask = (int) capacity - 1;
+        for (slot = probeStart(hi, capacity); get(dir + 2L * slot + 1) != 0; slot = (slot + 1) & mask);
+        put(dir + 2L * slot, Integer.toUnsignedLong(hi));
+        put(node + N_COUNT, count + 1);
+        return slot;
+    }
+
+    /**
+     * Doubles sparse directory or switches it to dense array once more than 1/8 of clusters are in use.
+     */
+    private void growDirectory(long node, int k, long count) {
+        final int highCount = k - lowBitsCount(k);
+        final long oldDir = get(node + N_DIR);
+        final long oldCapacity = get(node + N_CAPACITY);
+        final boolean dense = denseAllowed(k) && count + 1 > (1L << highCount) >>> vebTreeSet.SPARSE_DENSITY_SHIFT;
+        final long capacity = dense? 0 : 2 * oldCapacity;
+        final long dir = allocateBlock(dense? highCount : Long.numberOfTrailingZeros(2 * capacity));
+        final int mask = (int) capacity - 1;
+        for (long i = 0; i < oldCapacity; ++i) {
+            final long value = get(oldDir + 2 * i + 1);
+            if (value == 0)
+                continue;
+            final int hi = (int) get(oldDir + 2 * i);
+            if (dense) {
+                put(dir + Integer.toUnsignedLong(hi), value);
+            } else {
+                int slot = probeStart(hi, capacity);
+                for (; get(dir + 2L * slot + 1) != 0; slot = (slot + 1) & mask);
+                put(dir + 2L * slot, Integer.toUnsignedLong(hi));
+                put(dir + 2L * slot + 1, value);
+            }
+        }
+        freeBlock(oldDir, Long.numberOfTrailingZeros(2 * oldCapacity));
+        put(node + N_DIR, dir);
+        put(node + N_CAPACITY, capacity);
+    }
+
+    /**
+     * Removes just emptied slot from sparse directory (backward shift deletion).
+     */
+    private void releaseSlot(long node, int slot) {
+        final long capacity = get(node + N_CAPACITY);
+        if (capacity == 0)
+            return;
+        put(node + N_COUNT, get(node + N_COUNT) - 1);
+        final long dir = get(node + N_DIR);
+        final int mask = (int) capacity - 1;
+        int hole = slot;
+        for (int cur = (slot + 1) & mask; get(dir + 2L * cur + 1) != 0; cur = (cur + 1) & mask) {
+            final int home = probeStart((int) get(dir + 2L * cur), capacity);
+            if (((cur - home) & mask) >= ((cur - hole) & mask)) {
+                put(dir + 2L * hole, get(dir + 2L * cur));
+                put(dir + 2L * hole + 1, get(dir + 2L * cur + 1));
+                put(dir + 2L * cur + 1, 0);
+                hole = cur;
+            }
+        }
+    }
+
+    // ---- summary
+
+    private void summaryInsert(long node, int k, int hi) {
+        if (leafSummary(k)) {
+            put(node + N_SUMMARY, get(node + N_SUMMARY) | (1L << hi));
+        } else {
+            long summary = get(node + N_SUMMARY);
+            if (summary == 0) {
+                summary = allocateNode();
+                put(node + N_SUMMARY, summary);
+            }
+            insert(summary, k - lowBitsCount(k), Integer.toUnsignedLong(hi));
+        }
+    }
+
+    private void summaryErase(long node, int k, int hi) {
+        if (leafSummary(k))
+            put(node + N_SUMMARY, get(node + N_SUMMARY) & ~(1L << hi));
+        else
+            erase(get(node + N_SUMMARY), k - lowBitsCount(k), Integer.toUnsignedLong(hi));
+    }
+
+    private int summaryMin(long node, int k) {
+        return leafSummary(k)? wordMin(get(node + N_SUMMARY)) : (int) get(get(node + N_SUMMARY) + N_MIN);
+    }
+
+    private int summaryMax(long node, int k) {
+        return leafSummary(k)? wordMax(get(node + N_SUMMARY)) : (int) get(get(node + N_SUMMARY) + N_MAX);
+    }
+
+    private long summaryNext(long node, int k, int hi) {
+        return leafSummary(k)? wordNext(get(node + N_SUMMARY), hi) :
+                next(get(node + N_SUMMARY), k - lowBitsCount(k), Integer.toUnsignedLong(hi));
+    }
+
+    private long summaryPrev(long node, int k, int hi) {
+        return leafSummary(k)? wordPrev(get(node + N_SUMMARY), hi) :
+                prev(get(node + N_SUMMARY), k - lowBitsCount(k), Integer.toUnsignedLong(hi));
+    }
+
+    // ---- clusters
+
+    private long slotMin(long node, int k, int slot) {
+        final long value = get(valueAddr(node, slot));
+        return leafClusters(k)? wordMin(value) : get(value + N_MIN);
+    }
+
+    private long slotMax(long node, int k, int slot) {
+        final long value = get(valueAddr(node, slot));
+        return leafClusters(k)? wordMax(value) : get(value + N_MAX);
+    }
+
+    private long slotNext(long node, int k, int slot, long low) {
+        final long value = get(valueAddr(node, slot));
+        return leafClusters(k)? wordNext(value, (int) low) : next(value, lowBitsCount(k), low);
+    }
+
+    private long slotPrev(long node, int k, int slot, long low) {
+        final long value = get(valueAddr(node, slot));
+        return leafClusters(k)? wordPrev(value, (int) low) : prev(value, lowBitsCount(k), low);
+    }
+
+    private boolean clusterInsert(long node, int k, int hi, long low) {
+        final long addr = valueAddr(node, claimSlot(node, k, hi));
+        final long value = get(addr);
+        if (leafClusters(k)) {
+            if (value == 0)
+                summaryInsert(node, k, hi);
+            put(addr, value | (1L << low));
+            return (value & (1L << low)) == 0;
+        }
+        long cluster = value;
+        if (cluster == 0) {
+            cluster = allocateNode();
+            put(addr, cluster);
+            summaryInsert(node, k, hi);
+        }
+        return insert(cluster, lowBitsCount(k), low);
+    }
+
+    private boolean clusterErase(long node, int k, int hi, long low) {
+        final int slot = findSlot(node, hi);
+        if (slot < 0)
+            return false;
+        final long addr = valueAddr(node, slot);
+        final long value = get(addr);
+        final boolean retVal;
+        if (leafClusters(k)) {
+            if ((value & (1L << low)) == 0)
+                return false;
+            put(addr, value & ~(1L << low));
+            retVal = true;
+        } else {
+            retVal = erase(value, lowBitsCount(k), low);
+            if (get(value + N_SIZE) == 0) {
+                freeNode(value, lowBitsCount(k));
+                put(addr, 0);
+            }
+        }
+        if (get(addr) == 0) {
+            summaryErase(node, k, hi);
+            releaseSlot(node, slot);
+        }
+        return retVal;
+    }
+
+    // ---- node operations, see vebTreeSet for the same code over objects
+
+    @SuppressWarnings("Duplicates")
+    private boolean insert(long node, int k, long val) {
+        final long size = get(node + N_SIZE);
+        if (size == 0) {
+            put(node + N_MIN, val);
+            put(node + N_MAX, val);
+            put(node + N_SIZE, 1);
+            return true;
+        }
+        long min = get(node + N_MIN);
+        long max = get(node + N_MAX);
+        if (val == min || val == max)
+            return false;
+        if (size == 1) {
+            put(less(val, min)? node + N_MIN : node + N_MAX, val);
+            put(node + N_SIZE, 2);
+            return true;
+        }
+        if (less(val, min)) {
+            put(node + N_MIN, val);
+            val = min;
+        } else if (less(max, val)) {
+            put(node + N_MAX, val);
+            val = max;
+        }
+        final boolean retVal = clusterInsert(node, k, highBits(k, val), lowBits(k, val));
+        if (retVal)
+            put(node + N_SIZE, size + 1);
+        return retVal;
+    }
+
+    @SuppressWarnings("Duplicates")
+    private boolean erase(long node, int k, long val) {
+        final long size = get(node + N_SIZE);
+        final long min = get(node + N_MIN);
+        final long max = get(node + N_MAX);
+        if (size < 2) {
+            if (size == 1 && val == min) {
+                put(node + N_SIZE, 0);
+                return true;
+            }
+            return false;
+        }
+        if (size == 2) {
+            if (val != min && val != max)
+                return false;
+            put(node + N_MIN, min ^ max ^ val);
+            put(node + N_MAX, min ^ max ^ val);
+            put(node + N_SIZE, 1);
+            return true;
+        }
+        if (val == min) {
+            final int hi = summaryMin(node, k);
+            val = combineLowHigh(k, slotMin(node, k, findSlot(node, hi)), hi);
+            put(node + N_MIN, val);
+        } else if (val == max) {
+            final int hi = summaryMax(node, k);
+            val = combineLowHigh(k, slotMax(node, k, findSlot(node, hi)), hi);
+            put(node + N_MAX, val);
+        }
+        final boolean retVal = clusterErase(node, k, highBits(k, val), lowBits(k, val));
+        if (retVal)
+            put(node + N_SIZE, size - 1);
+        return retVal;
+    }
+
+    private boolean has(long node, int k, long val) {
+        final long size = get(node + N_SIZE);
+        if (size == 0)
+            return false;
+        if (get(node + N_MIN) == val || get(node + N_MAX) == val)
+            return true;
+        if (size <= 2)
+            return false;
+        final int slot = findSlot(node, highBits(k, val));
+        if (slot < 0)
+            return false;
+        final long value = get(valueAddr(node, slot));
+        final long low = lowBits(k, val);
+        return leafClusters(k)? (value & (1L << low)) != 0 : has(value, lowBitsCount(k), low);
+    }
+
+    /**
+     * @return the smallest key of (sub)tree strictly greater than {@code val} (unsigned) or {@link vebTreeSet#NO_ELEMENT}
+     */
+    @SuppressWarnings("Duplicates")
+    private long next(long node, int k, long val) {
+        final long size = get(node + N_SIZE);
+        final long max = get(node + N_MAX);
+        if (size == 0 || !less(val, max))
+            return NO_ELEMENT;
+        final long min = get(node + N_MIN);
+        if (less(val, min))
+            return min;
+        if (size <= 2)
+            return max;
+        final long low = lowBits(k, val);
+        final int hi = highBits(k, val);
+        final int slot = findSlot(node, hi);
+        if (slot >= 0 && low < slotMax(node, k, slot))
+            return combineLowHigh(k, slotNext(node, k, slot, low), hi);
+        final long nextHi = summaryNext(node, k, hi);
+        if (nextHi == NO_ELEMENT)
+            return max;
+        return combineLowHigh(k, slotMin(node, k, findSlot(node, (int) nextHi)), (int) nextHi);
+    }
+
+    /**
+     * @return the largest key of (sub)tree strictly less than {@code val} (unsigned) or {@link vebTreeSet#NO_ELEMENT}
+     */
+    @SuppressWarnings("Duplicates")
+    private long prev(long node, int k, long val) {
+        final long size = get(node + N_SIZE);
+        final long min = get(node + N_MIN);
+        if (size == 0 || !less(min, val))
+            return NO_ELEMENT;
+        final long max = get(node + N_MAX);
+        if (less(max, val))
+            return max;
+        if (size <= 2)
+            return min;
+        final long low = lowBits(k, val);
+        final int hi = highBits(k, val);
+        final int slot = findSlot(node, hi);
+        if (slot >= 0 && low > slotMin(node, k, slot))
+            return combineLowHigh(k, slotPrev(node, k, slot, low), hi);
+        final long prevHi = summaryPrev(node, k, hi);
+        if (prevHi == NO_ELEMENT)
+            return min;
+        return combineLowHigh(k, slotMax(node, k, findSlot(node, (int) prevHi)), (int) prevHi);
+    }
+
+    private void forEach(long node, int k, LongConsumer action) {
+        final long size = get(node + N_SIZE);
+        if (size == 0)
+            return;
+        action.accept(get(node + N_MIN));
+        if (size == 1)
+            return;
+        if (size > 2) {
+            final LongConsumer cluster = hi -> {
+                final long value = get(valueAddr(node, findSlot(node, (int) hi)));
+                if (leafClusters(k)) {
+                    for (long word = value; word != 0; word &= word - 1)
+                        action.accept(combineLowHigh(k, wordMin(word), (int) hi));
+                } else {
+                    forEach(value, lowBitsCount(k), low -> action.accept(combineLowHigh(k, low, (int) hi)));
+                }
+            };
+            if (leafSummary(k)) {
+                for (long word = get(node + N_SUMMARY); word != 0; word &= word - 1)
+                    cluster.accept(wordMin(word));
+            } else {
+                forEach(get(node + N_SUMMARY), k - lowBitsCount(k), cluster);
+            }
+        }
+        action.accept(get(node + N_MAX));
+    }
+
+    // ---- public API
+
+    private boolean inUniverse(long val) {
+        return k == 64 || (val >>> k) == 0;
+    }
+
+    private int compareKeys(long a, long b) {
+        return k == 64? Long.compareUnsigned(a, b) : Long.compare(a, b);
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("Set is read only");
+    }
+
+    public int universeBits() {
+        return k;
+    }
+
+    /**
+     * @return largest key this set can hold, -1 stands for 2^64 - 1
+     */
+    public long maxPossibleKey() {
+        return k == 64? -1L : (1L << k) - 1L;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public long size() {
+        return get(root + N_SIZE);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if {@code val} is out of universe or the set is read only
+     */
+    public boolean add(long val) {
+        checkWritable();
+        if (!inUniverse(val))
+            throw new UnsupportedOperationException("Adding element " + val +
+                    " to vebTree which can contains only values in range [0; " + maxPossibleKey() + "]");
+        return insert(root, k, val);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the set is read only
+     */
+    public boolean remove(long val) {
+        checkWritable();
+        return inUniverse(val) && erase(root, k, val);
+    }
+
+    public boolean contains(long val) {
+        return inUniverse(val) && has(root, k, val);
+    }
+
+    /**
+     * @return the smallest key strictly greater than {@code val} or {@link vebTreeSet#NO_ELEMENT}
+     */
+    public long nextKey(long val) {
+        if (isEmpty() || compareKeys(val, get(root + N_MAX)) >= 0)
+            return NO_ELEMENT;
+        if (compareKeys(val, get(root + N_MIN)) < 0)
+            return get(root + N_MIN);
+        return next(root, k, val);
+    }
+
+    /**
+     * @return the largest key strictly less than {@code val} or {@link vebTreeSet#NO_ELEMENT}
+     */
+    public long prevKey(long val) {
+        if (isEmpty() || compareKeys(val, get(root + N_MIN)) <= 0)
+            return NO_ELEMENT;
+        if (compareKeys(val, get(root + N_MAX)) > 0)
+            return get(root + N_MAX);
+        return prev(root, k, val);
+    }
+
+    /**
+     * @return the smallest key or {@link vebTreeSet#NO_ELEMENT} if the set is empty
+     */
+    public long firstKey() {
+        return isEmpty()? NO_ELEMENT : get(root + N_MIN);
+    }
+
+    /**
+     * @return the largest key or {@link vebTreeSet#NO_ELEMENT} if the set is empty
+     */
+    public long lastKey() {
+        return isEmpty()? NO_ELEMENT : get(root + N_MAX);
+    }
+
+    /**
+     * Performs the given action for each key in ascending order.
+     */
+    public void forEach(LongConsumer action) {
+        forEach(root, k, action);
+    }
+
+    /**
+     * @return number of words taken from the region so far, freed blocks included
+     */
+    long usedWords() {
+        return get(H_BUMP);
+    }
+
+    /**
+     * Writes changes of a file backed set to the storage device, no-op for other sets.
+     */
+    public void force() {
+        if (channel == null || readOnly)
+            return;
+        for (ByteBuffer buffer : buffers)
+            ((MappedByteBuffer) buffer).force();
+    }
+
+    /**
+     * Forces changes and closes the file. Mapped pages stay valid until they are garbage collected,
+     * but the set must not be used after close.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        if (channel != null)
+            channel.close();
+    }
+}
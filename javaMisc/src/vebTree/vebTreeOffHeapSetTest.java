@@ -0,0 +1,117 @@
+package vebTree;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class vebTreeOffHeapSetTest {
+    private static void randomOps(vebTreeOffHeapSet s, TreeSet<Long> ts, Random r, int ops) {
+        final int bits = s.universeBits();
+        final long mask = s.maxPossibleKey();
+        for (int i = 0; i < ops; ++i) {
+            long t = r.nextInt(3) == 0? r.nextInt(1 << Math.min(bits, 12)) & mask : r.nextLong() & mask;
+            if (r.nextInt(3) == 0)
+                assertEquals(ts.remove(t), s.remove(t));
+            else
+                assertEquals(ts.add(t), s.add(t));
+            assertEquals(ts.size(), s.size());
+        }
+    }
+
+    private static void checkSame(TreeSet<Long> ts, vebTreeOffHeapSet s, Random r) {
+        assertEquals(ts.size(), s.size());
+        final List<Long> keys = new ArrayList<>();
+        s.forEach(keys::add);
+        assertEquals(new ArrayList<>(ts), keys);
+        assertEquals(ts.isEmpty()? vebTreeSet.NO_ELEMENT : ts.first(), s.firstKey());
+        assertEquals(ts.isEmpty()? vebTreeSet.NO_ELEMENT : ts.last(), s.lastKey());
+        final long mask = s.maxPossibleKey();
+        for (int i = 0; i < 2000; ++i) {
+            long t = i % 2 == 0 && !ts.isEmpty()? keys.get(r.nextInt(keys.size())) + r.nextInt(3) - 1 & mask :
+                    r.nextLong() & mask;
+            assertEquals(ts.contains(t), s.contains(t));
+            Long next = ts.higher(t), prev = ts.lower(t);
+            assertEquals(next == null? vebTreeSet.NO_ELEMENT : next, s.nextKey(t));
+            assertEquals(prev == null? vebTreeSet.NO_ELEMENT : prev, s.prevKey(t));
+        }
+    }
+
+    @Test
+    void directMemoryTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 5, 12, 20, 32, 64}) {
+            TreeSet<Long> ts = bits == 64? new TreeSet<>(Long::compareUnsigned) : new TreeSet<>();
+            vebTreeOffHeapSet s = vebTreeOffHeapSet.allocate(bits, 12);
+            randomOps(s, ts, r, 30000);
+            checkSame(ts, s, r);
+            if (bits < 64) {
+                assertThrows(UnsupportedOperationException.class, () -> s.add(1L << bits));
+                assertFalse(s.contains(-1L));
+            }
+        }
+    }
+
+    @Test
+    void blocksReuseTest() {
+        Random r = new Random(777);
+        TreeSet<Long> ts = new TreeSet<>();
+        vebTreeOffHeapSet s = vebTreeOffHeapSet.allocate(40, 12);
+        for (int round = 0; round < 5; ++round) {
+            for (int i = 0; i < 5000; ++i) {
+                long t = r.nextLong() & s.maxPossibleKey();
+                ts.add(t);
+                s.add(t);
+            }
+            final long used = s.usedWords();
+            for (Long t : ts)
+                assertTrue(s.remove(t));
+            ts.clear();
+            assertTrue(s.isEmpty());
+            for (int i = 0; i < 5000; ++i) {
+                long t = r.nextLong() & s.maxPossibleKey();
+                ts.add(t);
+                s.add(t);
+            }
+            assertTrue(s.usedWords() <= used * 2);
+            checkSame(ts, s, r);
+            for (Long t : ts)
+                s.remove(t);
+            ts.clear();
+        }
+    }
+
+    @Test
+    void fileTest(@TempDir Path dir) throws IOException {
+        Random r = new Random(777);
+        Path file = dir.resolve("set.veb");
+        TreeSet<Long> ts = new TreeSet<>();
+        try (vebTreeOffHeapSet s = vebTreeOffHeapSet.create(file, 36, 12)) {
+            randomOps(s, ts, r, 30000);
+        }
+        try (vebTreeOffHeapSet s = vebTreeOffHeapSet.open(file, false)) {
+            assertFalse(s.isReadOnly());
+            randomOps(s, ts, r, 10000);
+        }
+        try (vebTreeOffHeapSet first = vebTreeOffHeapSet.open(file, true);
+             vebTreeOffHeapSet second = vebTreeOffHeapSet.open(file, true)) {
+            assertTrue(first.isReadOnly());
+            assertEquals(36, first.universeBits());
+            checkSame(ts, first, r);
+            checkSame(ts, second, r);
+            assertThrows(UnsupportedOperationException.class, () -> first.add(1));
+            assertThrows(UnsupportedOperationException.class, () -> first.remove(ts.first()));
+        }
+
+        Path garbage = dir.resolve("garbage");
+        Files.write(garbage, new byte[4096]);
+        assertThrows(StreamCorruptedException.class, () -> vebTreeOffHeapSet.open(garbage, true));
+        assertThrows(IllegalArgumentException.class, () -> vebTreeOffHeapSet.allocate(65));
+    }
+}
@@ -1,16 +1,74 @@
 package vebTree;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
-public class vebTreeSet extends AbstractSet<Long> {
+/**
+ * Van Emde Boas tree over keys [0; 2^k). Default universe is 2^32, others (up to 2^64) are
+ * available through {@link #withUniverseBits(int)}. With 2^64 universe keys are treated as
+ * unsigned, i.e. iteration order and {@link #comparator()} follow {@link Long#compareUnsigned}.
+ */
+public class vebTreeSet extends AbstractSet<Long> implements NavigableSet<Long> {
     public static final long MIN_POSSIBLE_KEY = 0;
     public static final long MAX_POSSIBLE_KEY = (1L << 32) - 1L;
+    /**
+     * Returned by primitive navigation methods when there is no such key.
+     * With 2^64 universe it is also the largest possible key; answers equal to it are real keys
+     * only if the set {@link #contains(long) contains} it, boxed methods are never ambiguous.
+     */
     public static final long NO_ELEMENT = -1;
+    public static final int MAX_UNIVERSE_BITS = 64;
     static final long DUMMY_MAX = MIN_POSSIBLE_KEY - 1;
     static final long DUMMY_MIN = MAX_POSSIBLE_KEY + 1;
+    /**
+     * clusters responsible for at most 2^LEAF_BITS keys are stored as a single bit word
+     */
+    static final int LEAF_BITS = 6;
+    static final int SPARSE_MIN_CAPACITY = 4;
+    static final int SPARSE_DENSITY_SHIFT = 3;
+    /**
+     * directories with more than 2^MAX_DENSE_BITS clusters can't be arrays and are always sparse
+     */
+    static final int MAX_DENSE_BITS = 30;
+    /**
+     * with DENSE policy directories of at most 2^MAX_EAGER_DENSE_BITS clusters are allocated as arrays right away,
+     * larger ones start sparse and become arrays on the same occupancy as with SPARSE policy
+     */
+    static final int MAX_EAGER_DENSE_BITS = 16;
+    static final Comparator<Long> UNSIGNED_ORDER = Long::compareUnsigned;
+
+    /**
+     * How clusters of each (sub)tree are looked up by high bits.
+     */
+    public enum ClusterPolicy {
+        /**
+         * Array with a slot for every possible cluster, allocated on first spill into clusters.
+         * Fastest, but default 2^32 universe allocates 65536 slots for the third key. Directories of more than
+         * 2^16 clusters (universes above 2^32) are grown from hash tables as with {@link #SPARSE} anyway.
+         */
+        DENSE,
+        /**
+         * Open addressing hash table which grows on demand and switches to dense array
+         * once more than 1/8 of possible clusters are in use.
+         */
+        SPARSE
+    }
     long minKey = DUMMY_MIN;
     long maxKey = DUMMY_MAX;
 
@@ -18,20 +76,384 @@ public class vebTreeSet extends AbstractSet<Long> {
      * this instance is responsible for array of 2^k size
      */
     private final int k;
+    /**
+     * number of low bits, i.e. each cluster is responsible for array of 2^k2 size
+     */
     private final int k2;
+    /**
+     * summary over 2^(k - k2) clusters: a bit word if k - k2 <= LEAF_BITS, vebTreeSet otherwise
+     */
+    private long summaryBits = 0;
     private vebTreeSet summary = null;
+    /**
+     * clusters: bit words if k2 <= LEAF_BITS, vebTreeSets otherwise
+     */
+    private long[] leaves = null;
     private vebTreeSet[] clusters = null;
+    /**
+     * with SPARSE policy leaves/clusters start as open addressing table keyed by clusterKeys
+     * (clusterKeys == null means leaves/clusters are dense arrays indexed by high bits)
+     */
+    private final boolean sparse;
+    private int[] clusterKeys = null;
+    private int clusterCount = 0;
 
-    private int lowBits(long num){
-        return (int)(num & ((1L << k2) - 1L));
+    private long lowBits(long num){
+        return num & ((1L << k2) - 1L);
     }
 
+    /**
+     * @return high bits of {@code num}; with 2^32 clusters they are unsigned int
+     */
     private int highBits(long num){
-        return (int)(num >> k2);
+        return (int)(num >>> k2);
+    }
+
+    private long combineLowHigh(long low, int high){
+        return (Integer.toUnsignedLong(high) << k2) | low;
+    }
+
+    /**
+     * unsigned comparison, for keys of universes smaller than 2^64 it is the same as signed one
+     */
+    static boolean less(long a, long b){
+        return a + Long.MIN_VALUE < b + Long.MIN_VALUE;
+    }
+
+    /**
+     * Compares arbitrary arguments in the order of this set's keys: unsigned for 2^64 universe,
+     * signed otherwise (so negative arguments are below every key).
+     */
+    private int compareKeys(long a, long b){
+        return k == 64? Long.compareUnsigned(a, b) : Long.compare(a, b);
+    }
+
+    private boolean inUniverse(long val){
+        return k == 64 || (val >>> k) == 0;
+    }
+
+    static long wordNext(long word, int bit){
+        final long rest = word & (-2L << bit);
+        return rest == 0? NO_ELEMENT : Long.numberOfTrailingZeros(rest);
+    }
+
+    static long wordPrev(long word, int bit){
+        final long rest = word & ((1L << bit) - 1L);
+        return rest == 0? NO_ELEMENT : 63 - Long.numberOfLeadingZeros(rest);
+    }
+
+    /**
+     * @return word with bits [from; to] set
+     */
+    static long wordRange(int from, int to){
+        return (-1L << from) & (-1L >>> (63 - to));
+    }
+
+    static int wordMin(long word){
+        return Long.numberOfTrailingZeros(word);
+    }
+
+    static int wordMax(long word){
+        return 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    private boolean leafClusters(){
+        return k2 <= LEAF_BITS;
+    }
+
+    private boolean leafSummary(){
+        return k - k2 <= LEAF_BITS;
+    }
+
+    private void summaryInsert(int hi){
+        if (leafSummary()) {
+            summaryBits |= 1L << hi;
+        } else {
+            if (summary == null) summary = new vebTreeSet(k - k2, sparse);
+            summary.insert(Integer.toUnsignedLong(hi));
+        }
+    }
+
+    private void summaryErase(int hi){
+        if (leafSummary())
+            summaryBits &= ~(1L << hi);
+        else
+            summary.erase(Integer.toUnsignedLong(hi));
+    }
+
+    private int summaryMin(){
+        return leafSummary()? wordMin(summaryBits) : (int)summary.minKey;
+    }
+
+    private int summaryMax(){
+        return leafSummary()? wordMax(summaryBits) : (int)summary.maxKey;
+    }
+
+    private long summaryNext(int hi){
+        return leafSummary()? wordNext(summaryBits, hi) : summary.nextKey(Integer.toUnsignedLong(hi));
+    }
+
+    private long summaryPrev(int hi){
+        return leafSummary()? wordPrev(summaryBits, hi) : summary.prevKey(Integer.toUnsignedLong(hi));
+    }
+
+    /**
+     * @return directory starts as dense array rather than hash table, see {@link vebTreeDirectory#denseFirst}
+     */
+    private boolean denseFirst(){
+        return vebTreeDirectory.denseFirst(k - k2, sparse);
+    }
+
+    private int directorySize(){
+        return 1 << (k - k2);
+    }
+
+    private boolean slotUsed(int slot){
+        return leafClusters()? leaves[slot] != 0 : clusters[slot] != null;
+    }
+
+    private int probeStart(int hi){
+        return (hi * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(clusterKeys.length) + 1);
+    }
+
+    /**
+     * @return slot of leaves/clusters holding cluster {@code hi} or -1 if there is no such cluster.
+     * Directory must be allocated. Probing is bounded by table length: a table is never full, but
+     * optimistic readers of {@link vebTreeConcurrentSet} may see one torn by a racing writer.
+     */
+    private int findSlot(int hi){
+        if (clusterKeys == null)
+            return slotUsed(hi)? hi : -1;
+        final int mask = clusterKeys.length - 1;
+        for (int slot = probeStart(hi), probes = 0; probes <= mask && slotUsed(slot); slot = (slot + 1) & mask, ++probes) {
+            if (clusterKeys[slot] == hi)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * @return slot for cluster {@code hi}. If there is no such cluster returned slot is free and
+     * must be filled by the caller.
+     */
+    private int claimSlot(int hi){
+        if (leaves == null && clusters == null)
+            allocateDirectory(denseFirst()? 0 : SPARSE_MIN_CAPACITY);
+        if (clusterKeys == null)
+            return hi;
+        int slot = findSlot(hi);
+        if (slot >= 0)
+            return slot;
+        if (2 * (clusterCount + 1) > clusterKeys.length) {
+            growDirectory();
+            if (clusterKeys == null)
+                return hi;
+        }
+        final int mask = clusterKeys.length - 1;
+        for (slot = probeStart(hi); slotUsed(slot); slot = (slot + 1) & mask);
+        clusterKeys[slot] = hi;
+        ++clusterCount;
+        return slot;
+    }
+
+    /**
+     * Allocates empty directory: open addressing table with given capacity or dense array if capacity is 0.
+     */
+    private void allocateDirectory(int capacity){
+        clusterKeys = capacity == 0? null : new int[capacity];
+        if (capacity == 0)
+            capacity = directorySize();
+        if (leafClusters())
+            leaves = new long[capacity];
+        else
+            clusters = new vebTreeSet[capacity];
+    }
+
+    /**
+     * Doubles sparse directory or switches it to dense array once more than
+     * 1/2^SPARSE_DENSITY_SHIFT of clusters are in use.
+     */
+    private void growDirectory(){
+        final int[] oldKeys = clusterKeys;
+        final long[] oldLeaves = leaves;
+        final vebTreeSet[] oldClusters = clusters;
+        final boolean dense = vebTreeDirectory.denseFor(k - k2, clusterCount + 1);
+        allocateDirectory(dense? 0 : 2 * oldKeys.length);
+        final int mask = dense? 0 : clusterKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (leafClusters()? oldLeaves[i] == 0 : oldClusters[i] == null)
+                continue;
+            int slot = oldKeys[i];
+            if (!dense) {
+                for (slot = probeStart(slot); slotUsed(slot); slot = (slot + 1) & mask);
+                clusterKeys[slot] = oldKeys[i];
+            }
+            if (leafClusters())
+                leaves[slot] = oldLeaves[i];
+            else
+                clusters[slot] = oldClusters[i];
+        }
+    }
+
+    /**
+     * Removes just emptied slot from sparse directory (backward shift deletion).
+     */
+    private void releaseSlot(int slot){
+        if (clusterKeys == null)
+            return;
+        --clusterCount;
+        final int mask = clusterKeys.length - 1;
+        int hole = slot;
+        for (int cur = (slot + 1) & mask; slotUsed(cur); cur = (cur + 1) & mask) {
+            final int home = probeStart(clusterKeys[cur]);
+            if (((cur - home) & mask) >= ((cur - hole) & mask)) {
+                clusterKeys[hole] = clusterKeys[cur];
+                if (leafClusters()) {
+                    leaves[hole] = leaves[cur];
+                    leaves[cur] = 0;
+                } else {
+                    clusters[hole] = clusters[cur];
+                    clusters[cur] = null;
+                }
+                hole = cur;
+            }
+        }
+    }
+
+    private long slotMin(int slot){
+        return leafClusters()? wordMin(leaves[slot]) : clusters[slot].minKey;
+    }
+
+    private long slotMax(int slot){
+        return leafClusters()? wordMax(leaves[slot]) : clusters[slot].maxKey;
+    }
+
+    private long slotNext(int slot, long low){
+        return leafClusters()? wordNext(leaves[slot], (int) low) : clusters[slot].nextKey(low);
+    }
+
+    private long slotPrev(int slot, long low){
+        return leafClusters()? wordPrev(leaves[slot], (int) low) : clusters[slot].prevKey(low);
+    }
+
+    private boolean slotContains(int slot, long low){
+        return leafClusters()? (leaves[slot] & (1L << low)) != 0 : clusters[slot].has(low);
+    }
+
+    private boolean clusterInsert(int hi, long low){
+        final int slot = claimSlot(hi);
+        if (leafClusters()) {
+            final long word = leaves[slot];
+            if (word == 0) summaryInsert(hi);
+            leaves[slot] = word | (1L << low);
+            return word != leaves[slot];
+        }
+        if (clusters[slot] == null){
+            clusters[slot] = new vebTreeSet(k2, sparse);
+            summaryInsert(hi);
+        }
+        return clusters[slot].insert(low);
+    }
+
+    private boolean clusterErase(int hi, long low){
+        final int slot = findSlot(hi);
+        if (slot < 0) return false;
+        if (leafClusters()) {
+            final long word = leaves[slot];
+            leaves[slot] = word & ~(1L << low);
+            if (word == leaves[slot]) return false;
+            if (leaves[slot] == 0) {
+                summaryErase(hi);
+                releaseSlot(slot);
+            }
+            return true;
+        }
+        final boolean retVal = clusters[slot].erase(low);
+        if (clusters[slot].isEmpty()){
+            clusters[slot] = null;
+            summaryErase(hi);
+            releaseSlot(slot);
+        }
+        return retVal;
+    }
+
+    /**
+     * Allocates directory for {@code count} clusters at once, choosing the representation
+     * {@link #claimSlot} would have grown to.
+     */
+    private void allocateDirectoryFor(int count){
+        allocateDirectory(denseFirst() || vebTreeDirectory.denseFor(k - k2, count)?
+                0 : vebTreeDirectory.sparseCapacityFor(count));
+    }
+
+    /**
+     * Fills empty (sub)tree with keys[from; to) which must be distinct, ascending and in the universe
+     * (only low k bits of each key are used). Every cluster and summary is built once, bottom-up,
+     * so it takes O((to - from) log log u) with no min/max swaps and no directory regrowth.
+     */
+    void build(long[] keys, int from, int to){
+        final long mask = maxPossibleKey();
+        size = to - from;
+        if (size == 0) return;
+        minKey = keys[from] & mask;
+        maxKey = keys[to - 1] & mask;
+        ++from;
+        --to;
+        if (from >= to) return;
+        int count = 1;
+        for (int i = from + 1; i < to; ++i) {
+            if (highBits(keys[i] & mask) != highBits(keys[i - 1] & mask))
+                ++count;
+        }
+        allocateDirectoryFor(count);
+        final long[] his = leafSummary()? null : new long[count];
+        int n = 0;
+        for (int runFrom = from, runTo; runFrom < to; runFrom = runTo) {
+            final int hi = highBits(keys[runFrom] & mask);
+            for (runTo = runFrom + 1; runTo < to && highBits(keys[runTo] & mask) == hi; ++runTo);
+            final int slot = claimSlot(hi);
+            if (leafClusters()) {
+                long word = 0;
+                for (int i = runFrom; i < runTo; ++i)
+                    word |= 1L << lowBits(keys[i]);
+                leaves[slot] = word;
+            } else {
+                clusters[slot] = new vebTreeSet(k2, sparse);
+                clusters[slot].build(keys, runFrom, runTo);
+            }
+            if (his == null)
+                summaryBits |= 1L << hi;
+            else
+                his[n++] = Integer.toUnsignedLong(hi);
+        }
+        if (his != null) {
+            summary = new vebTreeSet(k - k2, sparse);
+            summary.build(his, 0, count);
+        }
     }
 
-    private long combineLowHigh(long low, long high){
-        return (high << k2) | low;
+    /**
+     * Checks that keys[from; to) are in 2^k universe and ascending in its order, duplicates are allowed.
+     * @return number of distinct keys
+     */
+    static int countSortedDistinct(long[] keys, int from, int to, int k){
+        if (from < 0 || from > to || to > keys.length)
+            throw new IndexOutOfBoundsException("Range [" + from + "; " + to + ") out of array of length " +
+                    keys.length);
+        int retVal = 0;
+        for (int i = from; i < to; ++i) {
+            if (k < 64 && (keys[i] >>> k) != 0)
+                throw new IllegalArgumentException("Key " + keys[i] + " out of range [0; " +
+                        ((1L << k) - 1L) + "]");
+            if (i > from) {
+                if (less(keys[i], keys[i - 1]))
+                    throw new IllegalArgumentException("Keys are not sorted at index " + i);
+                if (keys[i] == keys[i - 1])
+                    continue;
+            }
+            ++retVal;
+        }
+        return retVal;
     }
 
     private int size = 0;
@@ -44,31 +466,46 @@ public class vebTreeSet extends AbstractSet<Long> {
         return 0 == size;
     }
 
+    /**
+     * @return this set holds keys in range [0; 2^universeBits())
+     */
+    public int universeBits(){
+        return k;
+    }
+
+    /**
+     * @return largest key this set can hold, -1 stands for 2^64 - 1
+     */
+    public long maxPossibleKey(){
+        return k == 64? -1L : (1L << k) - 1L;
+    }
+
     @Override
     public boolean contains(Object o) {
         return o instanceof Long && contains((long) o);
     }
 
-    private boolean contains(long val){
-        boolean retVal = minKey == val || maxKey == val;
-        if (!retVal) {
-            final int low = lowBits(val);
-            final int hi = highBits(val);
-            if (clusters != null && clusters[hi] != null)
-                retVal = clusters[hi].contains(low);
-        }
-        return retVal;
+    public boolean contains(long val){
+        return inUniverse(val) && has(val);
+    }
+
+    private boolean has(long val){
+        if (size == 0) return false;
+        if (minKey == val || maxKey == val) return true;
+        if (size <= 2) return false;
+        final int slot = findSlot(highBits(val));
+        return slot >= 0 && slotContains(slot, lowBits(val));
     }
 
     @Override
     public boolean add(Long aLong) {
         return add(aLong.longValue());
     }
-    boolean add(long val){
-        if (val < 0 || val >= (1L << k))
+    public boolean add(long val){
+        if (!inUniverse(val))
             throw new UnsupportedOperationException("Adding element " + val +
                     " to (sub)vebTree which can contains only values in range [0; " +
-                    (1L << k) + ").");
+                    Long.toUnsignedString(maxPossibleKey()) + "].");
         return insert(val);
     }
 
@@ -79,40 +516,29 @@ public class vebTreeSet extends AbstractSet<Long> {
             retVal = true;
         }
         else if (size == 1){
-            if (val < minKey) {
+            if (less(val, minKey)) {
                 minKey = val;
                 retVal = true;
             }
-            if (val > maxKey){
+            if (less(maxKey, val)){
                 maxKey = val;
                 retVal = true;
             }
         }
         else {
-            if (val < minKey) {
+            if (less(val, minKey)) {
                 long t = val;
                 val = minKey;
                 minKey = t;
             }
-            else if (val > maxKey){
+            else if (less(maxKey, val)){
                 long t = val;
                 val = maxKey;
                 maxKey = t;
             }
 
-            if (minKey < val && val < maxKey){
-                if (summary == null) summary = new vebTreeSet(k2);
-                if (clusters == null) clusters = new vebTreeSet[1 << k2];
-                final int low = lowBits(val);
-                final int hi = highBits(val);
-                if (clusters[hi] == null){
-                    clusters[hi] = new vebTreeSet(k - k2);
-                    clusters[hi].insert((long)low);
-                    summary.insert(hi);
-                    retVal = true;
-                } else {
-                    retVal = clusters[hi].insert((long)low);
-                }
+            if (less(minKey, val) && less(val, maxKey)){
+                retVal = clusterInsert(highBits(val), lowBits(val));
             }
         }
         if (retVal) {
@@ -124,119 +550,1658 @@ public class vebTreeSet extends AbstractSet<Long> {
     public vebTreeSet(){
         this(32);
     }
+    public vebTreeSet(ClusterPolicy policy){
+        this(32, policy == ClusterPolicy.SPARSE);
+    }
     vebTreeSet(int k){
+        this(k, false);
+    }
+    vebTreeSet(int k, boolean sparse){
         this.k = k;
-        this.k2 = k / 2;
+        this.k2 = k <= 2 * LEAF_BITS? Math.min(k, LEAF_BITS) : k / 2;
+        this.sparse = sparse;
     }
 
-    @Override
-    public void clear() {
-        minKey = DUMMY_MIN;
-        maxKey = DUMMY_MAX;
-        size = 0;
-        summary = null;
-        clusters = null;
+    /**
+     * @return empty set for keys in range [0; 2^bits), 64 bits stand for all (unsigned) longs
+     */
+    public static vebTreeSet withUniverseBits(int bits){
+        return withUniverseBits(bits, ClusterPolicy.DENSE);
     }
 
-    @Override
-    public boolean remove(Object o) {
-        return o instanceof Long && remove(((Long) o).longValue());
+    public static vebTreeSet withUniverseBits(int bits, ClusterPolicy policy){
+        checkUniverseBits(bits);
+        return new vebTreeSet(bits, policy == ClusterPolicy.SPARSE);
     }
 
-    @SuppressWarnings("Duplicates")
-    boolean remove(long val){
-        if (size < 2){
-            if (val == minKey && val == maxKey) {
-                clear();
-                return true;
-            }
-            return false;
-        }
-        boolean retVal = false;
-        if (size == 2){
-            if (minKey == val || maxKey == val){
-                minKey = maxKey = minKey ^ maxKey ^ val;
-                retVal = true;
-            }
-        }
-        else {
-            if (minKey == val){
-                minKey = combineLowHigh(clusters[(int)summary.minKey].minKey,summary.minKey);
-                val = minKey;
-            }
-            else if (maxKey == val){
-                maxKey = combineLowHigh(clusters[(int)summary.maxKey].maxKey,summary.maxKey);
-                val = maxKey;
-            }
-            final int low = lowBits(val);
-            final int hi = highBits(val);
-            if (clusters[hi] != null){
-                retVal = clusters[hi].remove(low);
-                if (clusters[hi].isEmpty()){
-                    clusters[hi] = null;
-                    summary.remove(hi);
-                }
+    /**
+     * Builds set of keys[from; to) in linear time, keys must be ascending (duplicates are allowed).
+     * @throws IllegalArgumentException if keys are not sorted or do not fit in 2^32 universe
+     */
+    public static vebTreeSet fromSorted(long[] keys, int from, int to){
+        return fromSorted(keys, from, to, 32, ClusterPolicy.DENSE);
+    }
+
+    /**
+     * Builds set of keys[from; to) over 2^bits universe in linear time, keys must be ascending in
+     * the order of the set (unsigned for 64 bits), duplicates are allowed.
+     * @throws IllegalArgumentException if keys are not sorted or do not fit in the universe
+     */
+    public static vebTreeSet fromSorted(long[] keys, int from, int to, int bits, ClusterPolicy policy){
+        final vebTreeSet retVal = withUniverseBits(bits, policy);
+        final int distinct = countSortedDistinct(keys, from, to, bits);
+        if (distinct < to - from) {
+            final long[] unique = new long[distinct];
+            int n = 0;
+            for (int i = from; i < to; ++i) {
+                if (i == from || keys[i] != keys[i - 1])
+                    unique[n++] = keys[i];
             }
+            keys = unique;
+            from = 0;
+            to = distinct;
         }
-        if (retVal){
-            --size;
-        }
+        retVal.build(keys, from, to);
         return retVal;
     }
 
-    @SuppressWarnings("Duplicates")
-    public long nextKey(long val){
-        if (isEmpty() || val >= maxKey) return NO_ELEMENT;
-        if (val < minKey) return minKey;
-        long defaultRetVal = val < maxKey? maxKey : NO_ELEMENT;
-        if (summary == null || clusters == null) return defaultRetVal;
-        final int low = lowBits(val);
-        int hi = highBits(val);
-        if (clusters[hi] != null && low < clusters[hi].maxKey){
-            return combineLowHigh(clusters[hi].nextKey(low), hi);
+    /**
+     * Writes this set in compact binary form (see {@link vebTreeFormat}): keys are packed by leaf words
+     * as bitmaps or positions, so dense sets cost about a bit per key. The channel is left open
+     * and must be blocking.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        final vebTreeFormat.Output out = new vebTreeFormat.Output(channel);
+        vebTreeFormat.writeHeader(out, vebTreeFormat.SET, k, sparse, size);
+        final vebTreeFormat.KeyWriter keys = new vebTreeFormat.KeyWriter(out);
+        for (KeyCursor cursor = new KeyCursor(this, false); cursor.advance(); )
+            keys.add(cursor.key);
+        keys.finish();
+        out.finish();
+    }
+
+    /**
+     * Reads set written by {@link #writeTo} (with the same universe and cluster policy) and builds it
+     * bottom-up as {@link #fromSorted} does, without per-key inserts. Exactly the written bytes are consumed.
+     * @throws java.io.StreamCorruptedException if the data is not a set written by {@link #writeTo}
+     */
+    public static vebTreeSet readFrom(ReadableByteChannel channel) throws IOException {
+        final vebTreeFormat.Input in = new vebTreeFormat.Input(channel);
+        final vebTreeFormat.Header header = vebTreeFormat.readHeader(in, vebTreeFormat.SET);
+        final long[] keys = vebTreeFormat.readKeys(in, header.size, header.bits);
+        in.finish();
+        final vebTreeSet retVal = withUniverseBits(header.bits, header.policy());
+        retVal.build(keys, 0, keys.length);
+        return retVal;
+    }
+
+    static void checkUniverseBits(int bits){
+        if (bits < 1 || bits > MAX_UNIVERSE_BITS)
+            throw new IllegalArgumentException("Universe must be from 2^1 to 2^" + MAX_UNIVERSE_BITS +
+                    ", got 2^" + bits);
+    }
+
+    /**
+     * Sorted collections in the order of this set ({@link SortedSet}s with the same {@link #comparator()},
+     * including vebTreeSets of other universes) which are at least as large as this set are merged with it and the tree
+     * is rebuilt at once, as by {@link #fromSorted}. vebTreeSets of the same universe are merged by
+     * {@link #union(vebTreeSet)}. Other collections are added key by key.
+     */
+    @Override
+    public boolean addAll(Collection<? extends Long> c) {
+        if (c instanceof vebTreeSet && ((vebTreeSet) c).k == k)
+            return union((vebTreeSet) c);
+        if (c.size() < size || !(c instanceof SortedSet) ||
+                !Objects.equals(((SortedSet<?>) c).comparator(), comparator()))
+            return super.addAll(c);
+        final long[] keys = new long[size + c.size()];
+        int n = 0;
+        final KeyCursor mine = new KeyCursor(this, false);
+        boolean hasMine = mine.advance();
+        final Iterator<? extends Long> it = c.iterator();
+        final PrimitiveIterator.OfLong primitive = it instanceof PrimitiveIterator.OfLong?
+                (PrimitiveIterator.OfLong) it : null;
+        while (it.hasNext()) {
+            final long key = primitive != null? primitive.nextLong() : it.next();
+            if (!inUniverse(key))
+                return super.addAll(c);
+            for (; hasMine && less(mine.key, key); hasMine = mine.advance())
+                keys[n++] = mine.key;
+            if (hasMine && mine.key == key)
+                hasMine = mine.advance();
+            keys[n++] = key;
         }
-        hi = (int)summary.nextKey(hi);
-        if (hi == NO_ELEMENT) return defaultRetVal;
-        return combineLowHigh(clusters[hi].minKey, hi);
+        for (; hasMine; hasMine = mine.advance())
+            keys[n++] = mine.key;
+        if (n == size)
+            return false;
+        clear();
+        build(keys, 0, n);
+        return true;
     }
 
+    private static final int OR = 0;
+    private static final int AND = 1;
+    private static final int AND_NOT = 2;
+
+    private static boolean apply(int op, boolean mine, boolean theirs){
+        switch (op) {
+            case OR:
+                return mine || theirs;
+            case AND:
+                return mine && theirs;
+            default:
+                return mine && !theirs;
+        }
+    }
 
+    private void checkSameUniverse(vebTreeSet other){
+        if (other.k != k)
+            throw new IllegalArgumentException("Universe 2^" + other.k + " differs from 2^" + k);
+    }
 
+    /**
+     * @return slot of cluster {@code hi} or -1, unlike {@link #findSlot} directory may be not allocated
+     */
+    private int clusterSlot(int hi){
+        return leaves == null && clusters == null? -1 : findSlot(hi);
+    }
 
-    @Override
-    public Iterator<Long> iterator() {
-        return new Iterator<Long>() {
-            long prev = NO_ELEMENT;
-            long cur = isEmpty()? NO_ELEMENT : minKey;
+    private int summarySize(){
+        return leafSummary()? Long.bitCount(summaryBits) : summary == null? 0 : summary.size;
+    }
 
-            @Override
-            public boolean hasNext() {
-                return cur != NO_ELEMENT;
+    /**
+     * @return high bits of all clusters in ascending order
+     */
+    private long[] clusterHighs(){
+        final long[] retVal = new long[summarySize()];
+        int n = 0;
+        if (leafSummary()) {
+            for (long word = summaryBits; word != 0; word &= word - 1)
+                retVal[n++] = wordMin(word);
+        } else if (summary != null) {
+            for (KeyCursor cursor = new KeyCursor(summary, false); cursor.advance(); )
+                retVal[n++] = cursor.key;
+        }
+        return retVal;
+    }
+
+    /**
+     * Replaces keys of this (sub)tree with result of {@code op} over them and keys of {@code other}.
+     * Min and max of both trees live outside of clusters, so their fate is decided upfront, then this
+     * tree moves its own min and max into clusters and clusters of both are combined: ones present in
+     * both trees recursively, ones present in a single tree as a whole (dropped, kept or copied).
+     * At last decided keys are patched in and min and max are taken out of clusters again.
+     */
+    private void combine(vebTreeSet other, int op){
+        if (size > 0 && size <= 2 || other.size <= 2) {
+            combineSmall(other, op);
+            return;
+        }
+        final long[] extras = new long[4];
+        final boolean[] wanted = new boolean[4];
+        int n = 0;
+        if (size > 0) {
+            extras[n++] = minKey;
+            extras[n++] = maxKey;
+        }
+        if (other.size > 0) {
+            extras[n++] = other.minKey;
+            extras[n++] = other.maxKey;
+        }
+        for (int i = 0; i < n; ++i)
+            wanted[i] = apply(op, has(extras[i]), other.has(extras[i]));
+
+        int count = size;
+        if (size > 0)
+            clusterInsert(highBits(minKey), lowBits(minKey));
+        if (size > 1)
+            clusterInsert(highBits(maxKey), lowBits(maxKey));
+        if (op == AND) {
+            for (long hi : clusterHighs())
+                count += combineCluster(findSlot((int) hi), (int) hi, other, other.clusterSlot((int) hi), op);
+        } else {
+            for (long hi : other.clusterHighs()) {
+                final int slot = op == OR? claimSlot((int) hi) : clusterSlot((int) hi);
+                if (slot >= 0)
+                    count += combineCluster(slot, (int) hi, other, other.findSlot((int) hi), op);
             }
+        }
 
-            @Override
-            public Long next() {
-                if (cur == NO_ELEMENT) throw new NoSuchElementException();
-                prev = cur;
-                cur = nextKey(cur);
-                return prev;
+        for (int i = 0; i < n; ++i) {
+            final int hi = highBits(extras[i]);
+            final long low = lowBits(extras[i]);
+            final int slot = clusterSlot(hi);
+            final boolean present = slot >= 0 && slotContains(slot, low);
+            if (wanted[i] && !present) {
+                clusterInsert(hi, low);
+                ++count;
+            } else if (!wanted[i] && present) {
+                clusterErase(hi, low);
+                --count;
             }
+        }
+        settle(count);
+    }
 
-            @Override
-            public void remove() {
-                if (prev == NO_ELEMENT) throw new IllegalStateException();
-                vebTreeSet.this.remove(prev);
-                prev = NO_ELEMENT;
+    /**
+     * {@link #combine} for trees one of which holds at most two keys, i.e. has no clusters (this one
+     * must be not empty then): its keys are handled one by one, so no directory is allocated for small trees.
+     */
+    private void combineSmall(vebTreeSet other, int op){
+        if (other.size <= 2) {
+            if (other.size == 0) {
+                if (op == AND) clear();
+                return;
+            }
+            if (op == AND) {
+                final boolean hasMin = has(other.minKey);
+                final boolean hasMax = has(other.maxKey);
+                clear();
+                if (hasMin) insert(other.minKey);
+                if (hasMax) insert(other.maxKey);
+            } else if (op == OR) {
+                insert(other.minKey);
+                insert(other.maxKey);
+            } else {
+                erase(other.minKey);
+                erase(other.maxKey);
             }
-        };
+            return;
+        }
+        final int n = size;
+        final long min = minKey;
+        final long max = maxKey;
+        clear();
+        if (op == OR) {
+            combine(other, OR);
+            if (n > 0) insert(min);
+            if (n > 1) insert(max);
+        } else {
+            if (n > 0 && other.has(min) == (op == AND)) insert(min);
+            if (n > 1 && other.has(max) == (op == AND)) insert(max);
+        }
     }
 
-    @Override
-    public boolean containsAll(Collection<?> c) {
-        for (Object o : c) {
-            if (!contains(o))
-                return false;
+    /**
+     * Combines cluster {@code hi} of this tree (possibly just claimed empty slot) with cluster of
+     * {@code other} at slot {@code theirs} (none if negative), keeps summary and directory in sync.
+     * @return change of number of keys in the cluster
+     */
+    private int combineCluster(int slot, int hi, vebTreeSet other, int theirs, int op){
+        final int before;
+        final int after;
+        if (leafClusters()) {
+            final long word = leaves[slot];
+            final long their = theirs < 0? 0 : other.leaves[theirs];
+            leaves[slot] = op == OR? word | their : op == AND? word & their : word & ~their;
+            before = Long.bitCount(word);
+            after = Long.bitCount(leaves[slot]);
+        } else {
+            if (clusters[slot] == null)
+                clusters[slot] = new vebTreeSet(k2, sparse);
+            before = clusters[slot].size;
+            if (theirs >= 0)
+                clusters[slot].combine(other.clusters[theirs], op);
+            else if (op == AND)
+                clusters[slot].clear();
+            after = clusters[slot].size;
+        }
+        if (before == 0 && after > 0)
+            summaryInsert(hi);
+        if (after == 0) {
+            if (before > 0)
+                summaryErase(hi);
+            if (leafClusters())
+                leaves[slot] = 0;
+            else
+                clusters[slot] = null;
+            releaseSlot(slot);
+        }
+        return after - before;
+    }
+
+    /**
+     * Fills empty (sub)tree with keys present in both {@code a} and {@code b} without touching clusters
+     * present in a single of them: common clusters are intersected into new ones, min and max of both
+     * trees are checked separately, as they live outside of clusters.
+     */
+    private void fillIntersection(vebTreeSet a, vebTreeSet b){
+        if (a.size <= 2 || b.size <= 2) {
+            final vebTreeSet small = a.size <= b.size? a : b;
+            final vebTreeSet large = small == a? b : a;
+            if (small.size > 0 && large.has(small.minKey)) insert(small.minKey);
+            if (small.size > 1 && large.has(small.maxKey)) insert(small.maxKey);
+            return;
+        }
+        final boolean fewer = a.summarySize() <= b.summarySize();
+        final vebTreeSet walked = fewer? a : b;
+        final vebTreeSet probed = fewer? b : a;
+        int count = 0;
+        for (long hi : walked.clusterHighs()) {
+            final int theirs = probed.clusterSlot((int) hi);
+            if (theirs < 0)
+                continue;
+            final int mine = walked.findSlot((int) hi);
+            if (leafClusters()) {
+                final long word = walked.leaves[mine] & probed.leaves[theirs];
+                if (word == 0)
+                    continue;
+                final int slot = claimSlot((int) hi);
+                leaves[slot] = word;
+                count += Long.bitCount(word);
+            } else {
+                final vebTreeSet cluster = new vebTreeSet(k2, sparse);
+                cluster.fillIntersection(walked.clusters[mine], probed.clusters[theirs]);
+                if (cluster.isEmpty())
+                    continue;
+                final int slot = claimSlot((int) hi);
+                clusters[slot] = cluster;
+                count += cluster.size;
+            }
+            summaryInsert((int) hi);
+        }
+        for (long key : new long[]{a.minKey, a.maxKey, b.minKey, b.maxKey}) {
+            if (!a.has(key) || !b.has(key))
+                continue;
+            final int slot = clusterSlot(highBits(key));
+            if (slot < 0 || !slotContains(slot, lowBits(key))) {
+                clusterInsert(highBits(key), lowBits(key));
+                ++count;
+            }
+        }
+        settle(count);
+    }
+
+    /**
+     * Takes min and max out of clusters holding all {@code count} keys of this tree.
+     */
+    private void settle(int count){
+        if (count == 0) {
+            clear();
+            return;
+        }
+        int hi = summaryMin();
+        long low = slotMin(findSlot(hi));
+        clusterErase(hi, low);
+        minKey = maxKey = combineLowHigh(low, hi);
+        if (count > 1) {
+            hi = summaryMax();
+            low = slotMax(findSlot(hi));
+            clusterErase(hi, low);
+            maxKey = combineLowHigh(low, hi);
+        }
+        size = count;
+    }
+
+    /**
+     * Adds all keys of {@code other} cluster by cluster: clusters missing here are copied as a whole,
+     * only clusters present in both sets are merged recursively.
+     * @return whether this set changed
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public boolean union(vebTreeSet other){
+        checkSameUniverse(other);
+        if (other == this || other.isEmpty())
+            return false;
+        final int before = size;
+        combine(other, OR);
+        return size != before;
+    }
+
+    /**
+     * Retains only keys contained in {@code other}: clusters missing there are dropped as a whole,
+     * only clusters present in both sets are intersected recursively.
+     * @return whether this set changed
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public boolean intersect(vebTreeSet other){
+        checkSameUniverse(other);
+        if (other == this || isEmpty())
+            return false;
+        final int before = size;
+        combine(other, AND);
+        return size != before;
+    }
+
+    /**
+     * Removes all keys contained in {@code other}, only clusters present in both sets are visited.
+     * @return whether this set changed
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public boolean andNot(vebTreeSet other){
+        checkSameUniverse(other);
+        if (isEmpty() || other.isEmpty())
+            return false;
+        if (other == this) {
+            clear();
+            return true;
+        }
+        final int before = size;
+        combine(other, AND_NOT);
+        return size != before;
+    }
+
+    /**
+     * @return whether sets have a common key, clusters are compared word by word
+     * and only clusters present in both sets are visited
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public boolean intersects(vebTreeSet other){
+        checkSameUniverse(other);
+        return intersectsWith(other);
+    }
+
+    private boolean intersectsWith(vebTreeSet other){
+        if (size == 0 || other.size == 0 || less(maxKey, other.minKey) || less(other.maxKey, minKey))
+            return false;
+        if (other.has(minKey) || other.has(maxKey) || has(other.minKey) || has(other.maxKey))
+            return true;
+        final boolean fewer = summarySize() <= other.summarySize();
+        final vebTreeSet walked = fewer? this : other;
+        final vebTreeSet probed = fewer? other : this;
+        for (long hi : walked.clusterHighs()) {
+            final int theirs = probed.clusterSlot((int) hi);
+            if (theirs < 0)
+                continue;
+            final int mine = walked.findSlot((int) hi);
+            if (leafClusters()? (walked.leaves[mine] & probed.leaves[theirs]) != 0 :
+                    walked.clusters[mine].intersectsWith(probed.clusters[theirs]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return new set (with universe and policy of {@code a}) of keys contained in any of sets
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public static vebTreeSet union(vebTreeSet a, vebTreeSet b){
+        a.checkSameUniverse(b);
+        final vebTreeSet retVal = new vebTreeSet(a.k, a.sparse);
+        retVal.combine(a.size >= b.size? a : b, OR);
+        retVal.combine(a.size >= b.size? b : a, OR);
+        return retVal;
+    }
+
+    /**
+     * @return new set (with universe and policy of {@code a}) of keys contained in both sets,
+     * built only from clusters present in both of them
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public static vebTreeSet intersect(vebTreeSet a, vebTreeSet b){
+        a.checkSameUniverse(b);
+        final vebTreeSet retVal = new vebTreeSet(a.k, a.sparse);
+        retVal.fillIntersection(a, b);
+        return retVal;
+    }
+
+    /**
+     * @return new set (with universe and policy of {@code a}) of keys contained in {@code a} but not in {@code b}
+     * @throws IllegalArgumentException if universes of sets differ
+     */
+    public static vebTreeSet andNot(vebTreeSet a, vebTreeSet b){
+        a.checkSameUniverse(b);
+        final vebTreeSet retVal = new vebTreeSet(a.k, a.sparse);
+        retVal.combine(a, OR);
+        retVal.andNot(b);
+        return retVal;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (c instanceof vebTreeSet && ((vebTreeSet) c).k == k)
+            return intersect((vebTreeSet) c);
+        return super.retainAll(c);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (c instanceof vebTreeSet && ((vebTreeSet) c).k == k)
+            return andNot((vebTreeSet) c);
+        return super.removeAll(c);
+    }
+
+    /**
+     * @return high bits of clusters in [fromHi; toHi] in ascending order
+     */
+    private long[] clusterHighs(long fromHi, long toHi){
+        if (fromHi > toHi)
+            return new long[0];
+        if (leafSummary()) {
+            final long bits = summaryBits & wordRange((int) fromHi, (int) toHi);
+            final long[] retVal = new long[Long.bitCount(bits)];
+            int n = 0;
+            for (long word = bits; word != 0; word &= word - 1)
+                retVal[n++] = wordMin(word);
+            return retVal;
+        }
+        if (summary == null)
+            return new long[0];
+        final long[] retVal = new long[summary.count(fromHi, toHi)];
+        final KeyCursor cursor = new KeyCursor(summary, false);
+        cursor.seek(fromHi);
+        for (int n = 0; n < retVal.length && cursor.advance(); ++n)
+            retVal[n] = cursor.key;
+        return retVal;
+    }
+
+    /**
+     * @return number of keys in [lo; hi] (both inclusive, in the order of this set). Clusters lying
+     * inside the range are counted by their sizes, only two boundary clusters on each level are descended into.
+     */
+    public int countInRange(long lo, long hi){
+        final SubSet range = subRange(lo, true, hi, true, false);
+        return range.empty? 0 : count(range.lo, range.hi);
+    }
+
+    /**
+     * lo <= hi, both in universe
+     */
+    private int count(long lo, long hi){
+        if (size == 0 || less(hi, minKey) || less(maxKey, lo))
+            return 0;
+        if (!less(minKey, lo) && !less(hi, maxKey))
+            return size;
+        int retVal = (less(minKey, lo)? 0 : 1) + (less(hi, maxKey)? 0 : 1);
+        if (size <= 2)
+            return retVal;
+        final int loHi = highBits(lo);
+        final int hiHi = highBits(hi);
+        if (loHi == hiHi)
+            return retVal + clusterCount(loHi, lowBits(lo), lowBits(hi));
+        retVal += clusterCount(loHi, lowBits(lo), maxLowBits()) + clusterCount(hiHi, 0, lowBits(hi));
+        for (long mid : clusterHighs(Integer.toUnsignedLong(loHi) + 1, Integer.toUnsignedLong(hiHi) - 1)) {
+            final int slot = findSlot((int) mid);
+            retVal += leafClusters()? Long.bitCount(leaves[slot]) : clusters[slot].size;
+        }
+        return retVal;
+    }
+
+    private long maxLowBits(){
+        return (1L << k2) - 1L;
+    }
+
+    private int clusterCount(int hi, long from, long to){
+        final int slot = clusterSlot(hi);
+        if (slot < 0)
+            return 0;
+        return leafClusters()? Long.bitCount(leaves[slot] & wordRange((int) from, (int) to)) :
+                clusters[slot].count(from, to);
+    }
+
+    /**
+     * Removes keys in [lo; hi] (both inclusive, in the order of this set). Clusters lying inside the range
+     * are dropped as a whole together with their summary keys, only two boundary clusters on each level
+     * are descended into.
+     * @return number of removed keys
+     */
+    public int removeRange(long lo, long hi){
+        final SubSet range = subRange(lo, true, hi, true, false);
+        return range.empty? 0 : eraseRange(range.lo, range.hi);
+    }
+
+    /**
+     * lo <= hi, both in universe. Like {@link #combine} this tree moves its min and max into clusters,
+     * clears the range there and takes new min and max out of clusters.
+     */
+    private int eraseRange(long lo, long hi){
+        if (size == 0 || less(hi, minKey) || less(maxKey, lo))
+            return 0;
+        final int before = size;
+        if (!less(minKey, lo) && !less(hi, maxKey)) {
+            clear();
+            return before;
+        }
+        if (size <= 2) {
+            final long max = maxKey;
+            if (!less(minKey, lo)) erase(minKey);
+            if (!less(hi, max)) erase(max);
+            return before - size;
+        }
+        clusterInsert(highBits(minKey), lowBits(minKey));
+        clusterInsert(highBits(maxKey), lowBits(maxKey));
+        int count = size;
+        final int loHi = highBits(lo);
+        final int hiHi = highBits(hi);
+        if (loHi == hiHi) {
+            count -= clusterEraseRange(loHi, lowBits(lo), lowBits(hi));
+        } else {
+            count -= clusterEraseRange(loHi, lowBits(lo), maxLowBits());
+            count -= clusterEraseRange(hiHi, 0, lowBits(hi));
+            final long fromHi = Integer.toUnsignedLong(loHi) + 1;
+            final long toHi = Integer.toUnsignedLong(hiHi) - 1;
+            for (long mid : clusterHighs(fromHi, toHi)) {
+                final int slot = findSlot((int) mid);
+                if (leafClusters()) {
+                    count -= Long.bitCount(leaves[slot]);
+                    leaves[slot] = 0;
+                } else {
+                    count -= clusters[slot].size;
+                    clusters[slot] = null;
+                }
+                releaseSlot(slot);
+            }
+            if (fromHi <= toHi) {
+                if (leafSummary())
+                    summaryBits &= ~wordRange((int) fromHi, (int) toHi);
+                else if (summary != null)
+                    summary.eraseRange(fromHi, toHi);
+            }
+        }
+        settle(count);
+        return before - size;
+    }
+
+    /**
+     * Removes [from; to] from cluster {@code hi}, keeps summary and directory in sync.
+     * @return number of removed keys
+     */
+    private int clusterEraseRange(int hi, long from, long to){
+        final int slot = clusterSlot(hi);
+        if (slot < 0)
+            return 0;
+        final int removed;
+        final boolean emptied;
+        if (leafClusters()) {
+            final long word = leaves[slot];
+            leaves[slot] = word & ~wordRange((int) from, (int) to);
+            removed = Long.bitCount(word) - Long.bitCount(leaves[slot]);
+            emptied = leaves[slot] == 0;
+        } else {
+            removed = clusters[slot].eraseRange(from, to);
+            emptied = clusters[slot].isEmpty();
+            if (emptied)
+                clusters[slot] = null;
+        }
+        if (emptied) {
+            summaryErase(hi);
+            releaseSlot(slot);
+        }
+        return removed;
+    }
+
+    /**
+     * Performs the given action for each key in [lo; hi] (both inclusive, in the order of this set)
+     * in ascending order, keys are walked with a cursor positioned once at {@code lo}.
+     */
+    public void forEachInRange(long lo, long hi, LongConsumer action){
+        Objects.requireNonNull(action);
+        final SubSet range = subRange(lo, true, hi, true, false);
+        if (range.empty)
+            return;
+        final KeyCursor cursor = new KeyCursor(this, false);
+        cursor.seek(range.lo);
+        while (cursor.advance() && !less(range.hi, cursor.key))
+            action.accept(cursor.key);
+    }
+
+    @Override
+    public void clear() {
+        minKey = DUMMY_MIN;
+        maxKey = DUMMY_MAX;
+        size = 0;
+        summaryBits = 0;
+        summary = null;
+        leaves = null;
+        clusters = null;
+        clusterKeys = null;
+        clusterCount = 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    public boolean remove(long val){
+        return inUniverse(val) && erase(val);
+    }
+
+    @SuppressWarnings("Duplicates")
+    private boolean erase(long val){
+        if (size < 2){
+            if (size == 1 && val == minKey) {
+                clear();
+                return true;
+            }
+            return false;
+        }
+        boolean retVal = false;
+        if (size == 2){
+            if (minKey == val || maxKey == val){
+                minKey = maxKey = minKey ^ maxKey ^ val;
+                retVal = true;
+            }
+        }
+        else {
+            if (minKey == val){
+                final int hi = summaryMin();
+                minKey = combineLowHigh(slotMin(findSlot(hi)), hi);
+                val = minKey;
+            }
+            else if (maxKey == val){
+                final int hi = summaryMax();
+                maxKey = combineLowHigh(slotMax(findSlot(hi)), hi);
+                val = maxKey;
+            }
+            retVal = clusterErase(highBits(val), lowBits(val));
+        }
+        if (retVal){
+            --size;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the smallest key strictly greater than {@code val} or {@link #NO_ELEMENT}
+     */
+    public long nextKey(long val){
+        if (isEmpty() || compareKeys(val, maxKey) >= 0) return NO_ELEMENT;
+        if (compareKeys(val, minKey) < 0) return minKey;
+        return successor(val);
+    }
+
+    /**
+     * @return the largest key strictly less than {@code val} or {@link #NO_ELEMENT}
+     */
+    public long prevKey(long val){
+        if (isEmpty() || compareKeys(val, minKey) <= 0) return NO_ELEMENT;
+        if (compareKeys(val, maxKey) > 0) return maxKey;
+        return predecessor(val);
+    }
+
+    /**
+     * minKey <= val < maxKey
+     */
+    @SuppressWarnings("Duplicates")
+    private long successor(long val){
+        if (size <= 2) return maxKey;
+        final long low = lowBits(val);
+        final int hi = highBits(val);
+        final int slot = findSlot(hi);
+        if (slot >= 0 && low < slotMax(slot)){
+            return combineLowHigh(slotNext(slot, low), hi);
+        }
+        final long nextHi = summaryNext(hi);
+        if (nextHi == NO_ELEMENT) return maxKey;
+        return combineLowHigh(slotMin(findSlot((int) nextHi)), (int) nextHi);
+    }
+
+    /**
+     * minKey < val <= maxKey
+     */
+    @SuppressWarnings("Duplicates")
+    private long predecessor(long val){
+        if (size <= 2) return minKey;
+        final long low = lowBits(val);
+        final int hi = highBits(val);
+        final int slot = findSlot(hi);
+        if (slot >= 0 && low > slotMin(slot)){
+            return combineLowHigh(slotPrev(slot, low), hi);
+        }
+        final long prevHi = summaryPrev(hi);
+        if (prevHi == NO_ELEMENT) return minKey;
+        return combineLowHigh(slotMax(findSlot((int) prevHi)), (int) prevHi);
+    }
+
+    /**
+     * @return the smallest key or {@link #NO_ELEMENT} if the set is empty
+     */
+    public long firstKey(){
+        return isEmpty()? NO_ELEMENT : minKey;
+    }
+
+    /**
+     * @return the largest key or {@link #NO_ELEMENT} if the set is empty
+     */
+    public long lastKey(){
+        return isEmpty()? NO_ELEMENT : maxKey;
+    }
+
+    /**
+     * @return the largest key strictly less than {@code val} or {@link #NO_ELEMENT}
+     */
+    public long lowerKey(long val){
+        return prevKey(val);
+    }
+
+    /**
+     * @return the largest key less than or equal to {@code val} or {@link #NO_ELEMENT}
+     */
+    public long floorKey(long val){
+        return contains(val)? val : prevKey(val);
+    }
+
+    /**
+     * @return the smallest key greater than or equal to {@code val} or {@link #NO_ELEMENT}
+     */
+    public long ceilingKey(long val){
+        return contains(val)? val : nextKey(val);
+    }
+
+    /**
+     * @return the smallest key strictly greater than {@code val} or {@link #NO_ELEMENT}
+     */
+    public long higherKey(long val){
+        return nextKey(val);
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return k == 64? UNSIGNED_ORDER : null;
+    }
+
+    @Override
+    public Long first() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return minKey;
+    }
+
+    @Override
+    public Long last() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return maxKey;
+    }
+
+    @Override
+    public Long lower(Long e) {
+        if (isEmpty() || compareKeys(e, minKey) <= 0) return null;
+        return lowerKey(e);
+    }
+
+    @Override
+    public Long floor(Long e) {
+        if (isEmpty() || compareKeys(e, minKey) < 0) return null;
+        return floorKey(e);
+    }
+
+    @Override
+    public Long ceiling(Long e) {
+        if (isEmpty() || compareKeys(e, maxKey) > 0) return null;
+        return ceilingKey(e);
+    }
+
+    @Override
+    public Long higher(Long e) {
+        if (isEmpty() || compareKeys(e, maxKey) >= 0) return null;
+        return higherKey(e);
+    }
+
+    @Override
+    public Long pollFirst() {
+        if (isEmpty()) return null;
+        final long retVal = minKey;
+        erase(retVal);
+        return retVal;
+    }
+
+    @Override
+    public Long pollLast() {
+        if (isEmpty()) return null;
+        final long retVal = maxKey;
+        erase(retVal);
+        return retVal;
+    }
+
+    /**
+     * Performs the given action for each key in ascending order without boxing.
+     */
+    public void forEachLong(LongConsumer action) {
+        for (KeyCursor cursor = new KeyCursor(this, false); cursor.advance(); )
+            action.accept(cursor.key);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Long> action) {
+        if (action instanceof LongConsumer)
+            forEachLong((LongConsumer) action);
+        else
+            forEachLong(action::accept);
+    }
+
+    /**
+     * Performs the given action for each key in parallel, see {@link #spliterator()}.
+     * The action must be safe to call from several threads, keys are passed in no particular order.
+     */
+    public void parallelForEach(LongConsumer action) {
+        Objects.requireNonNull(action);
+        parallelLongStream().forEach(action);
+    }
+
+    /**
+     * Spliterator which splits along top level clusters, so every part covers a disjoint range of high bits.
+     * The set must not be modified while it is traversed.
+     */
+    @Override
+    public Spliterator.OfLong spliterator() {
+        return new KeySpliterator();
+    }
+
+    /**
+     * @return sequential stream of keys in ascending order without boxing,
+     * boxed {@link #stream()} runs over the same spliterator
+     */
+    public LongStream longStream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    /**
+     * @return parallel stream of keys without boxing
+     */
+    public LongStream parallelLongStream() {
+        return StreamSupport.longStream(spliterator(), true);
+    }
+
+    /**
+     * @return cursor over keys in ascending order, see {@link LongCursor}
+     */
+    public LongCursor cursor(){
+        return new KeyCursor(this, false);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new KeyIterator(true, MIN_POSSIBLE_KEY, maxPossibleKey(), false);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return new KeyIterator(true, maxPossibleKey(), MIN_POSSIBLE_KEY, true);
+    }
+
+    @Override
+    public NavigableSet<Long> descendingSet() {
+        return new SubSet(MIN_POSSIBLE_KEY, maxPossibleKey(), minOrderKey(), maxOrderKey(), false, true);
+    }
+
+    @Override
+    public NavigableSet<Long> subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        checkBounds(fromElement, toElement);
+        return subRange(fromElement, fromInclusive, toElement, toInclusive, false);
+    }
+
+    @Override
+    public NavigableSet<Long> headSet(Long toElement, boolean inclusive) {
+        return subRange(minOrderKey(), true, toElement, inclusive, false);
+    }
+
+    @Override
+    public NavigableSet<Long> tailSet(Long fromElement, boolean inclusive) {
+        return subRange(fromElement, inclusive, maxOrderKey(), true, false);
+    }
+
+    @Override
+    public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Long> headSet(Long toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Long> tailSet(Long fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code from} is greater than {@code to}, as {@link NavigableSet#subSet} requires
+     */
+    private void checkBounds(long from, long to){
+        if (compareKeys(from, to) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+    }
+
+    /**
+     * @return smallest argument in the order of {@link #compareKeys}, bound of views unbounded from below
+     */
+    private long minOrderKey(){
+        return k == 64? 0 : Long.MIN_VALUE;
+    }
+
+    /**
+     * @return largest argument in the order of {@link #compareKeys}, bound of views unbounded from above
+     */
+    private long maxOrderKey(){
+        return k == 64? -1L : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return view of keys between given bounds (in the order of {@link #compareKeys}), clipped to the universe
+     */
+    private SubSet subRange(long from, boolean fromInclusive, long to, boolean toInclusive, boolean descending){
+        boolean empty = false;
+        if (!fromInclusive) {
+            if (from == maxOrderKey()) empty = true;
+            else ++from;
+        }
+        if (!toInclusive) {
+            if (to == minOrderKey()) empty = true;
+            else --to;
+        }
+        final long lo = compareKeys(from, MIN_POSSIBLE_KEY) < 0? MIN_POSSIBLE_KEY : from;
+        final long hi = compareKeys(to, maxPossibleKey()) > 0? maxPossibleKey() : to;
+        return new SubSet(lo, hi, from, to, empty || compareKeys(lo, hi) > 0, descending);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Walk over keys of (sub)tree {@code node} which remembers its position inside current cluster
+     * and consults summary only when the cluster is exhausted, so every key costs amortized O(1)
+     * instead of a successor descent from the root. Cursors of clusters and summary are allocated
+     * once and reused for every cluster of their level.
+     */
+    static final class KeyCursor implements LongCursor {
+        private static final int BEFORE_FIRST = 0;
+        private static final int IN_CLUSTERS = 1;
+        private static final int BEFORE_LAST = 2;
+        private static final int DONE = 3;
+
+        private final boolean descending;
+        private vebTreeSet node;
+        private int state;
+        long key;
+        /**
+         * leaf summary: clusters not visited yet
+         */
+        private long summaryWord;
+        private KeyCursor summaryCursor = null;
+        private boolean inCluster;
+        private int hi;
+        /**
+         * leaf cluster: keys not visited yet
+         */
+        private long word;
+        private KeyCursor clusterCursor = null;
+
+        KeyCursor(vebTreeSet node, boolean descending) {
+            this.descending = descending;
+            reset(node);
+        }
+
+        void reset(vebTreeSet node){
+            this.node = node;
+            state = BEFORE_FIRST;
+            inCluster = false;
+        }
+
+        @Override
+        public void reset() {
+            reset(node);
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        /**
+         * @return whether {@code a} goes before {@code b} in the walk order
+         */
+        boolean before(long a, long b){
+            return descending? less(b, a) : less(a, b);
+        }
+
+        private long first(){
+            return descending? node.maxKey : node.minKey;
+        }
+
+        private long last(){
+            return descending? node.minKey : node.maxKey;
+        }
+
+        /**
+         * @return bits of a word from {@code bit} (inclusive) in the walk order
+         */
+        private long wordFrom(int bit){
+            return descending? -1L >>> (63 - bit) : -1L << bit;
+        }
+
+        @Override
+        public boolean advance() {
+            switch (state) {
+                case BEFORE_FIRST:
+                    if (node.size == 0) {
+                        state = DONE;
+                        return false;
+                    }
+                    key = first();
+                    if (node.size == 1) {
+                        state = DONE;
+                    } else if (node.size == 2) {
+                        state = BEFORE_LAST;
+                    } else {
+                        state = IN_CLUSTERS;
+                        startSummary();
+                    }
+                    return true;
+                case IN_CLUSTERS:
+                    if (clusterAdvance() || nextCluster() && clusterAdvance())
+                        return true;
+                    key = last();
+                    state = DONE;
+                    return true;
+                case BEFORE_LAST:
+                    key = last();
+                    state = DONE;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Positions cursor so that {@link #advance()} moves to the first key not before {@code from}.
+         */
+        void seek(long from){
+            if (node.size == 0 || before(last(), from)) {
+                state = DONE;
+                return;
+            }
+            if (!before(first(), from)) {
+                state = BEFORE_FIRST;
+                return;
+            }
+            if (node.size <= 2) {
+                state = BEFORE_LAST;
+                return;
+            }
+            state = IN_CLUSTERS;
+            inCluster = false;
+            final int fromHi = node.highBits(from);
+            final long fromLow = node.lowBits(from);
+            startSummary();
+            if (node.leafSummary())
+                summaryWord &= wordFrom(fromHi);
+            else
+                summaryCursor.seek(Integer.toUnsignedLong(fromHi));
+            if (nextCluster() && hi == fromHi) {
+                if (node.leafClusters())
+                    word &= wordFrom((int) fromLow);
+                else
+                    clusterCursor.seek(fromLow);
+            }
+        }
+
+        private void startSummary(){
+            if (node.leafSummary())
+                summaryWord = node.summaryBits;
+            else if (summaryCursor == null)
+                summaryCursor = new KeyCursor(node.summary, descending);
+            else
+                summaryCursor.reset(node.summary);
+        }
+
+        private boolean nextCluster(){
+            final long next;
+            if (node.leafSummary()) {
+                if (summaryWord == 0) return false;
+                next = descending? wordMax(summaryWord) : wordMin(summaryWord);
+                summaryWord &= ~(1L << next);
+            } else {
+                if (!summaryCursor.advance()) return false;
+                next = summaryCursor.key;
+            }
+            hi = (int) next;
+            final int slot = node.findSlot(hi);
+            if (node.leafClusters())
+                word = node.leaves[slot];
+            else if (clusterCursor == null)
+                clusterCursor = new KeyCursor(node.clusters[slot], descending);
+            else
+                clusterCursor.reset(node.clusters[slot]);
+            inCluster = true;
+            return true;
+        }
+
+        private boolean clusterAdvance(){
+            if (!inCluster) return false;
+            final long low;
+            if (node.leafClusters()) {
+                if (word == 0) return false;
+                low = descending? wordMax(word) : wordMin(word);
+                word &= ~(1L << low);
+            } else {
+                if (!clusterCursor.advance()) return false;
+                low = clusterCursor.key;
+            }
+            key = node.combineLowHigh(low, hi);
+            return true;
+        }
+    }
+
+    /**
+     * Walks keys from {@code from} towards {@code bound} (both inclusive) with {@link KeyCursor}.
+     */
+    private final class KeyIterator implements PrimitiveIterator.OfLong {
+        private final KeyCursor cursor;
+        private final long bound;
+        private boolean hasNext;
+        private boolean canRemove = false;
+        private long prev;
+
+        KeyIterator(boolean nonEmpty, long from, long bound, boolean descending) {
+            this.bound = bound;
+            this.cursor = new KeyCursor(vebTreeSet.this, descending);
+            cursor.seek(from);
+            hasNext = nonEmpty && step();
+        }
+
+        private boolean step(){
+            return cursor.advance() && !cursor.before(bound, cursor.key);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext) throw new NoSuchElementException();
+            prev = cursor.key;
+            canRemove = true;
+            hasNext = step();
+            return prev;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            erase(prev);
+            canRemove = false;
+            if (hasNext) {
+                // erase may reshape clusters under the cursor, so find pending key again
+                final long next = cursor.key;
+                cursor.reset();
+                cursor.seek(next);
+                cursor.advance();
+            }
+        }
+    }
+
+    /**
+     * Splits along clusters of the top level: every half covers a disjoint range of high bits found through
+     * summary, {@link #minKey} goes with the first one and {@link #maxKey} with the last one, since they are kept
+     * outside of clusters. Keys of a cluster are walked with {@link KeyCursor}, so it does not descend from the root
+     * for every key. Not fail-fast: the set must not be modified during traversal.
+     */
+    private final class KeySpliterator implements Spliterator.OfLong {
+        private boolean withMin;
+        private boolean withMax;
+        /**
+         * next cluster to visit and the last cluster of this part, both are summary keys;
+         * clusters are exhausted when {@code nextHi > lastHi}
+         */
+        private long nextHi;
+        private long lastHi;
+        private boolean inCluster = false;
+        private int hi;
+        /**
+         * leaf cluster: keys not visited yet
+         */
+        private long word;
+        private KeyCursor clusterCursor = null;
+        private long estimate;
+        private boolean exact;
+
+        KeySpliterator() {
+            withMin = size > 0;
+            withMax = size > 1;
+            if (size > 2) {
+                nextHi = Integer.toUnsignedLong(summaryMin());
+                lastHi = Integer.toUnsignedLong(summaryMax());
+            } else {
+                nextHi = 1;
+                lastHi = 0;
+            }
+            estimate = size;
+            exact = true;
+        }
+
+        private KeySpliterator(KeySpliterator prefix, long lastHi, long estimate) {
+            this.withMin = prefix.withMin;
+            this.withMax = false;
+            this.nextHi = prefix.nextHi;
+            this.lastHi = lastHi;
+            this.inCluster = prefix.inCluster;
+            this.hi = prefix.hi;
+            this.word = prefix.word;
+            this.clusterCursor = prefix.clusterCursor;
+            this.estimate = estimate;
+            this.exact = false;
+        }
+
+        private boolean nextCluster(){
+            if (nextHi > lastHi) return false;
+            hi = (int) nextHi;
+            nextHi = nextHi == lastHi? lastHi + 1 : summaryNext(hi);
+            final int slot = findSlot(hi);
+            if (leafClusters())
+                word = leaves[slot];
+            else if (clusterCursor == null)
+                clusterCursor = new KeyCursor(clusters[slot], false);
+            else
+                clusterCursor.reset(clusters[slot]);
+            inCluster = true;
+            return true;
+        }
+
+        private boolean clusterAdvance(LongConsumer action){
+            if (!inCluster) return false;
+            final long low;
+            if (leafClusters()) {
+                if (word == 0) return false;
+                low = wordMin(word);
+                word &= word - 1;
+            } else {
+                if (!clusterCursor.advance()) return false;
+                low = clusterCursor.key;
+            }
+            action.accept(combineLowHigh(low, hi));
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            Objects.requireNonNull(action);
+            if (withMin) {
+                withMin = false;
+                action.accept(minKey);
+            } else if (!clusterAdvance(action) && !(nextCluster() && clusterAdvance(action))) {
+                inCluster = false;
+                if (!withMax) return false;
+                withMax = false;
+                action.accept(maxKey);
+            }
+            if (estimate > 0) --estimate;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            Objects.requireNonNull(action);
+            if (withMin) {
+                withMin = false;
+                action.accept(minKey);
+            }
+            do {
+                if (!inCluster) continue;
+                if (leafClusters()) {
+                    for (long w = word; w != 0; w &= w - 1)
+                        action.accept(combineLowHigh(wordMin(w), hi));
+                    word = 0;
+                } else {
+                    while (clusterCursor.advance())
+                        action.accept(combineLowHigh(clusterCursor.key, hi));
+                }
+            } while (nextCluster());
+            inCluster = false;
+            if (withMax) {
+                withMax = false;
+                action.accept(maxKey);
+            }
+            estimate = 0;
+        }
+
+        /**
+         * @return prefix holding the pending part of the current cluster and clusters up to the middle
+         * of remaining high bits range, null if less than two untouched clusters remain
+         */
+        @Override
+        public Spliterator.OfLong trySplit() {
+            if (nextHi >= lastHi) return null;
+            final long mid = nextHi + (lastHi - nextHi) / 2;
+            // mid < lastHi, so both parts get at least one cluster
+            final long suffixFirst = summaryNext((int) mid);
+            final long prefixLast = summaryPrev((int) suffixFirst);
+            final long half = estimate >>> 1;
+            final KeySpliterator prefix = new KeySpliterator(this, prefixLast, half);
+            withMin = false;
+            inCluster = false;
+            clusterCursor = null;
+            nextHi = suffixFirst;
+            estimate -= half;
+            exact = false;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | (exact? SIZED : 0);
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return comparator();
+        }
+    }
+
+    /**
+     * View of keys in [lo; hi] (both inclusive) backed by this set. lo and hi are the requested bounds
+     * [boundLo; boundHi] clipped to the universe. Bounds of nested views must lie within the requested bounds
+     * of this view, otherwise {@link IllegalArgumentException} is thrown as {@link NavigableSet#subSet} requires.
+     */
+    private final class SubSet extends AbstractSet<Long> implements NavigableSet<Long> {
+        private final long lo;
+        private final long hi;
+        private final long boundLo;
+        private final long boundHi;
+        private final boolean empty;
+        private final boolean descending;
+
+        SubSet(long lo, long hi, long boundLo, long boundHi, boolean empty, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.boundLo = boundLo;
+            this.boundHi = boundHi;
+            this.empty = empty;
+            this.descending = descending;
+        }
+
+        private boolean inRange(long key){
+            return !empty && compareKeys(lo, key) <= 0 && compareKeys(key, hi) <= 0;
+        }
+
+        private Long inRangeOrNull(Long key){
+            return key != null && inRange(key)? key : null;
+        }
+
+        private Long lowest(){
+            return empty? null : inRangeOrNull(vebTreeSet.this.ceiling(lo));
+        }
+
+        private Long highest(){
+            return empty? null : inRangeOrNull(vebTreeSet.this.floor(hi));
+        }
+
+        private Long lowerInRange(long key){
+            if (compareKeys(key, hi) > 0) return highest();
+            return inRangeOrNull(vebTreeSet.this.lower(key));
+        }
+
+        private Long higherInRange(long key){
+            if (compareKeys(key, lo) < 0) return lowest();
+            return inRangeOrNull(vebTreeSet.this.higher(key));
+        }
+
+        private Long floorInRange(long key){
+            if (compareKeys(key, hi) > 0) return highest();
+            return inRangeOrNull(vebTreeSet.this.floor(key));
+        }
+
+        private Long ceilingInRange(long key){
+            if (compareKeys(key, lo) < 0) return lowest();
+            return inRangeOrNull(vebTreeSet.this.ceiling(key));
+        }
+
+        private KeyIterator keyIterator(boolean reversed){
+            return new KeyIterator(!empty, reversed? hi : lo, reversed? lo : hi, reversed);
+        }
+
+        private SubSet restrict(long from, boolean fromInclusive, long to, boolean toInclusive, boolean newDescending){
+            final SubSet range = subRange(from, fromInclusive, to, toInclusive, newDescending);
+            if (compareKeys(range.boundLo, boundLo) < 0 || compareKeys(range.boundHi, boundHi) > 0)
+                throw new IllegalArgumentException("key out of range");
+            return new SubSet(range.lo, range.hi, range.boundLo, range.boundHi, empty || range.empty, newDescending);
+        }
+
+        @Override
+        public int size() {
+            return empty? 0 : count(lo, hi);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Long && inRange((Long) o) && vebTreeSet.this.contains((long) (Long) o);
+        }
+
+        @Override
+        public boolean add(Long aLong) {
+            if (!inRange(aLong))
+                throw new IllegalArgumentException("Key " + aLong + " out of range");
+            return vebTreeSet.this.add(aLong.longValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof Long && inRange((Long) o) && vebTreeSet.this.remove(((Long) o).longValue());
+        }
+
+        @Override
+        public void clear() {
+            if (!empty)
+                eraseRange(lo, hi);
+        }
+
+        @Override
+        public PrimitiveIterator.OfLong iterator() {
+            return keyIterator(descending);
+        }
+
+        @Override
+        public PrimitiveIterator.OfLong descendingIterator() {
+            return keyIterator(!descending);
+        }
+
+        @Override
+        public NavigableSet<Long> descendingSet() {
+            return new SubSet(lo, hi, boundLo, boundHi, empty, !descending);
+        }
+
+        @Override
+        public Comparator<? super Long> comparator() {
+            final Comparator<? super Long> order = vebTreeSet.this.comparator();
+            if (!descending) return order;
+            return order == null? Collections.reverseOrder() : Collections.reverseOrder(order);
+        }
+
+        @Override
+        public Long first() {
+            final Long retVal = descending? highest() : lowest();
+            if (retVal == null) throw new NoSuchElementException();
+            return retVal;
+        }
+
+        @Override
+        public Long last() {
+            final Long retVal = descending? lowest() : highest();
+            if (retVal == null) throw new NoSuchElementException();
+            return retVal;
+        }
+
+        @Override
+        public Long lower(Long e) {
+            return descending? higherInRange(e) : lowerInRange(e);
+        }
+
+        @Override
+        public Long floor(Long e) {
+            return descending? ceilingInRange(e) : floorInRange(e);
+        }
+
+        @Override
+        public Long ceiling(Long e) {
+            return descending? floorInRange(e) : ceilingInRange(e);
+        }
+
+        @Override
+        public Long higher(Long e) {
+            return descending? lowerInRange(e) : higherInRange(e);
+        }
+
+        @Override
+        public Long pollFirst() {
+            final Long retVal = descending? highest() : lowest();
+            if (retVal != null) erase(retVal);
+            return retVal;
+        }
+
+        @Override
+        public Long pollLast() {
+            final Long retVal = descending? lowest() : highest();
+            if (retVal != null) erase(retVal);
+            return retVal;
+        }
+
+        @Override
+        public NavigableSet<Long> subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+            if (descending) {
+                checkBounds(toElement, fromElement);
+                return restrict(toElement, toInclusive, fromElement, fromInclusive, true);
+            }
+            checkBounds(fromElement, toElement);
+            return restrict(fromElement, fromInclusive, toElement, toInclusive, false);
+        }
+
+        @Override
+        public NavigableSet<Long> headSet(Long toElement, boolean inclusive) {
+            if (descending)
+                return restrict(toElement, inclusive, boundHi, true, true);
+            return restrict(boundLo, true, toElement, inclusive, false);
+        }
+
+        @Override
+        public NavigableSet<Long> tailSet(Long fromElement, boolean inclusive) {
+            if (descending)
+                return restrict(boundLo, true, fromElement, inclusive, true);
+            return restrict(fromElement, inclusive, boundHi, true, false);
+        }
+
+        @Override
+        public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<Long> headSet(Long toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<Long> tailSet(Long fromElement) {
+            return tailSet(fromElement, true);
         }
-        return true;
     }
 }
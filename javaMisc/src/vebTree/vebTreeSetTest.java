@@ -2,7 +2,18 @@ package vebTree;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,4 +88,613 @@ class vebTreeSetTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void primitiveApiTest() {
+        TreeSet<Long> ts = new TreeSet<>();
+        vebTreeSet vbt = new vebTreeSet();
+        Random r = new Random(777);
+        for (int i = 0; i < 5000; ++i) {
+            long t = r.nextInt(1 << 20);
+            assertEquals(ts.add(t), vbt.add(t));
+        }
+        for (int i = 0; i < 5000; ++i) {
+            long t = r.nextInt(1 << 20);
+            assertEquals(ts.contains(t), vbt.contains(t));
+            if (i % 3 == 0)
+                assertEquals(ts.remove(t), vbt.remove(t));
+        }
+        assertFalse(vbt.contains(-1L));
+        assertFalse(vbt.contains(vebTreeSet.MAX_POSSIBLE_KEY + 1));
+        assertFalse(vbt.remove(-1L));
+
+        List<Long> viaIterator = new ArrayList<>();
+        PrimitiveIterator.OfLong it = vbt.iterator();
+        while (it.hasNext())
+            viaIterator.add(it.nextLong());
+        List<Long> viaForEach = new ArrayList<>();
+        vbt.forEachLong(t -> viaForEach.add(t));
+        List<Long> viaBoxedForEach = new ArrayList<>();
+        vbt.forEach(t -> viaBoxedForEach.add(t));
+        assertEquals(new ArrayList<>(ts), viaIterator);
+        assertEquals(new ArrayList<>(ts), viaForEach);
+        assertEquals(new ArrayList<>(ts), viaBoxedForEach);
+    }
+
+    @Test
+    void navigableTest() {
+        TreeSet<Long> ts = new TreeSet<>();
+        vebTreeSet vbt = new vebTreeSet();
+        Random r = new Random(777);
+        for (int i = 0; i < 3000; ++i) {
+            long t = r.nextInt(1 << 18);
+            ts.add(t);
+            vbt.add(t);
+        }
+        assertEquals(ts.first(), vbt.first());
+        assertEquals(ts.last(), vbt.last());
+        for (int i = 0; i < 3000; ++i) {
+            long t = r.nextInt(1 << 18) - 10;
+            assertEquals(ts.lower(t), vbt.lower(t));
+            assertEquals(ts.floor(t), vbt.floor(t));
+            assertEquals(ts.ceiling(t), vbt.ceiling(t));
+            assertEquals(ts.higher(t), vbt.higher(t));
+        }
+        assertArrayEquals(ts.descendingSet().toArray(), vbt.descendingSet().toArray());
+        List<Long> desc = new ArrayList<>();
+        vbt.descendingIterator().forEachRemaining((Consumer<Long>) desc::add);
+        assertEquals(new ArrayList<>(ts.descendingSet()), desc);
+
+        for (int i = 0; i < 200; ++i) {
+            long from = r.nextInt(1 << 18);
+            long to = from + r.nextInt(1 << 16);
+            boolean fi = r.nextBoolean();
+            boolean ti = r.nextBoolean();
+            NavigableSet<Long> expected = ts.subSet(from, fi, to, ti);
+            NavigableSet<Long> actual = vbt.subSet(from, fi, to, ti);
+            assertEquals(expected.size(), actual.size());
+            assertArrayEquals(expected.toArray(), actual.toArray());
+            assertArrayEquals(expected.descendingSet().toArray(), actual.descendingSet().toArray());
+            assertEquals(expected.isEmpty(), actual.isEmpty());
+            if (!expected.isEmpty()) {
+                assertEquals(expected.first(), actual.first());
+                assertEquals(expected.last(), actual.last());
+                assertEquals(expected.descendingSet().first(), actual.descendingSet().first());
+            }
+            long probe = from - 5 + r.nextInt((int) (to - from) + 10);
+            assertEquals(expected.floor(probe), actual.floor(probe));
+            assertEquals(expected.higher(probe), actual.higher(probe));
+            assertEquals(expected.descendingSet().floor(probe), actual.descendingSet().floor(probe));
+            assertEquals(expected.descendingSet().higher(probe), actual.descendingSet().higher(probe));
+            assertArrayEquals(ts.headSet(to, ti).toArray(), vbt.headSet(to, ti).toArray());
+            assertArrayEquals(ts.tailSet(from, fi).toArray(), vbt.tailSet(from, fi).toArray());
+            if (to - from >= 2) {
+                long inner = from + 1 + r.nextInt((int) (to - from - 1));
+                assertArrayEquals(expected.descendingSet().headSet(inner, true).toArray(),
+                        actual.descendingSet().headSet(inner, true).toArray());
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(5L, true, 3L, true));
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(5L, 3L));
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(0L, 100L).subSet(50L, 40L));
+        assertThrows(IllegalArgumentException.class, () -> vbt.descendingSet().subSet(3L, true, 5L, true));
+        assertEquals(ts.descendingSet().subSet(5L, true, 3L, true).size(),
+                vbt.descendingSet().subSet(5L, true, 3L, true).size());
+        assertTrue(vbt.subSet(5L, false, 5L, false).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(10L, 20L).subSet(0L, 30L));
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(10L, true, 20L, false).subSet(10L, true, 20L, true));
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(10L, 20L).headSet(21L));
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(10L, false, 20L, true).tailSet(10L, true));
+        assertThrows(IllegalArgumentException.class, () -> vbt.subSet(10L, true, 20L, false).descendingSet().headSet(5L));
+        assertThrows(IllegalArgumentException.class, () -> vbt.headSet(20L, false).tailSet(15L, true).subSet(16L, 20L).add(3L));
+        assertEquals(ts.subSet(10L, 20L).headSet(20L), vbt.subSet(10L, 20L).headSet(20L));
+        assertEquals(ts.subSet(10L, false, 20L, true).tailSet(10L, false),
+                vbt.subSet(10L, false, 20L, true).tailSet(10L, false));
+        assertEquals(ts.subSet(10L, true, 20L, false).descendingSet().headSet(10L),
+                vbt.subSet(10L, true, 20L, false).descendingSet().headSet(10L));
+        assertEquals(ts.headSet(-5L, true), vbt.headSet(-5L, true));
+        assertEquals(ts.tailSet(0L).subSet(1L, 1L << 40), vbt.tailSet(0L).subSet(1L, 1L << 40));
+
+        while (!ts.isEmpty()) {
+            assertEquals(ts.pollFirst(), vbt.pollFirst());
+            assertEquals(ts.pollLast(), vbt.pollLast());
+            assertEquals(ts.size(), vbt.size());
+        }
+        assertNull(vbt.pollFirst());
+        assertThrows(NoSuchElementException.class, vbt::first);
+    }
+
+    @Test
+    void smallUniverseTest() {
+        Random r = new Random(777);
+        for (int k = 1; k <= 20; ++k) {
+            TreeSet<Long> ts = new TreeSet<>();
+            vebTreeSet vbt = new vebTreeSet(k);
+            for (int i = 0; i < 4000; ++i) {
+                long t = r.nextInt(1 << k);
+                if (r.nextInt(3) == 0)
+                    assertEquals(ts.remove(t), vbt.remove(t));
+                else
+                    assertEquals(ts.add(t), vbt.add(t));
+                assertEquals(ts.size(), vbt.size());
+                long probe = r.nextInt(1 << k);
+                assertEquals(ts.contains(probe), vbt.contains(probe));
+                assertEquals(ts.higher(probe), vbt.higher(probe));
+                assertEquals(ts.lower(probe), vbt.lower(probe));
+            }
+            assertArrayEquals(ts.toArray(), vbt.toArray());
+        }
+    }
+
+    @Test
+    void sparsePolicyTest() {
+        Random r = new Random(777);
+        for (int k = 1; k <= 24; k += 3) {
+            TreeSet<Long> ts = new TreeSet<>();
+            vebTreeSet vbt = new vebTreeSet(k, true);
+            for (int i = 0; i < 6000; ++i) {
+                long t = r.nextInt(1 << k);
+                if (r.nextInt(3) == 0)
+                    assertEquals(ts.remove(t), vbt.remove(t));
+                else
+                    assertEquals(ts.add(t), vbt.add(t));
+                long probe = r.nextInt(1 << k);
+                assertEquals(ts.contains(probe), vbt.contains(probe));
+                assertEquals(ts.higher(probe), vbt.higher(probe));
+                assertEquals(ts.lower(probe), vbt.lower(probe));
+            }
+            assertArrayEquals(ts.toArray(), vbt.toArray());
+        }
+
+        Set<Long> ts = new TreeSet<>();
+        Set<Long> vbt = new vebTreeSet(vebTreeSet.ClusterPolicy.SPARSE);
+        for (int i = 0; i < 20000; ++i) {
+            long t = r.nextLong() & vebTreeSet.MAX_POSSIBLE_KEY;
+            assertEquals(ts.add(t), vbt.add(t));
+        }
+        assertArrayEquals(ts.toArray(), vbt.toArray());
+        for (Long t : new ArrayList<>(ts)) {
+            assertTrue(vbt.remove(t));
+        }
+        assertTrue(vbt.isEmpty());
+    }
+
+    @Test
+    void universeBitsTest() {
+        assertThrows(IllegalArgumentException.class, () -> vebTreeSet.withUniverseBits(0));
+        assertThrows(IllegalArgumentException.class, () -> vebTreeSet.withUniverseBits(65));
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 5, 16, 20, 33, 40, 61, 63, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                vebTreeSet vbt = vebTreeSet.withUniverseBits(bits, policy);
+                TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                final long mask = vbt.maxPossibleKey();
+                assertEquals(bits, vbt.universeBits());
+                for (long t : new long[]{0, mask, mask - 1, 1}) {
+                    assertEquals(ts.add(t), vbt.add(t));
+                }
+                if (bits < 64)
+                    assertThrows(UnsupportedOperationException.class, () -> vbt.add(mask + 1));
+                for (int i = 0; i < 3000; ++i) {
+                    long t = r.nextLong() & mask;
+                    if (r.nextInt(4) == 0)
+                        assertEquals(ts.remove(t), vbt.remove(t));
+                    else
+                        assertEquals(ts.add(t), vbt.add(t));
+                }
+                assertEquals(ts.size(), vbt.size());
+                assertArrayEquals(ts.toArray(), vbt.toArray());
+                assertArrayEquals(ts.descendingSet().toArray(), vbt.descendingSet().toArray());
+                for (int i = 0; i < 1000; ++i) {
+                    long t = (r.nextInt(8) == 0? mask - r.nextInt(3) : r.nextLong()) & mask;
+                    assertEquals(ts.contains(t), vbt.contains(t));
+                    assertEquals(ts.lower(t), vbt.lower(t));
+                    assertEquals(ts.floor(t), vbt.floor(t));
+                    assertEquals(ts.ceiling(t), vbt.ceiling(t));
+                    assertEquals(ts.higher(t), vbt.higher(t));
+                }
+                long from = r.nextLong() & mask;
+                long to = r.nextLong() & mask;
+                if (Long.compareUnsigned(from, to) > 0) {
+                    long t = from;
+                    from = to;
+                    to = t;
+                }
+                assertArrayEquals(ts.subSet(from, false, to, true).toArray(), vbt.subSet(from, false, to, true).toArray());
+                assertArrayEquals(ts.tailSet(mask, false).toArray(), vbt.tailSet(mask, false).toArray());
+                assertArrayEquals(ts.headSet(0L, false).toArray(), vbt.headSet(0L, false).toArray());
+                assertArrayEquals(ts.headSet(mask, true).toArray(), vbt.headSet(mask, true).toArray());
+                for (Long t : new ArrayList<>(ts)) {
+                    assertTrue(vbt.remove(t));
+                }
+                assertTrue(vbt.isEmpty());
+                assertFalse(vbt.contains(mask));
+            }
+        }
+    }
+
+    @Test
+    void largeUniverseDefaultPolicyTest() {
+        vebTreeSet vbt = vebTreeSet.withUniverseBits(60);
+        for (long t : new long[]{1, 1L << 40, (1L << 60) - 1})
+            assertTrue(vbt.add(t));
+        assertArrayEquals(new Long[]{1L, 1L << 40, (1L << 60) - 1}, vbt.toArray());
+        // eagerly allocated dense directories of 2^24 or 2^28 slots would not fit in a test heap a hundred times
+        List<vebTreeSet> sets = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            vebTreeSet s = vebTreeSet.withUniverseBits(i % 2 == 0? 48 : 56);
+            for (long t : new long[]{i, 1L << 30, 1L << 45})
+                s.add(t);
+            sets.add(s);
+        }
+        for (int i = 0; i < sets.size(); ++i)
+            assertEquals(1L << 30, sets.get(i).nextKey(i));
+    }
+
+    @Test
+    void cursorTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 6, 13, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                vebTreeSet vbt = vebTreeSet.withUniverseBits(bits, policy);
+                TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                final long mask = vbt.maxPossibleKey();
+                for (int i = 0; i < 5000; ++i) {
+                    long t = (r.nextBoolean()? r.nextInt(1 << 10) : r.nextLong()) & mask;
+                    assertEquals(ts.add(t), vbt.add(t));
+                }
+                LongCursor cursor = vbt.cursor();
+                for (int pass = 0; pass < 2; ++pass) {
+                    for (long t : ts) {
+                        assertTrue(cursor.advance());
+                        assertEquals(t, cursor.key());
+                    }
+                    assertFalse(cursor.advance());
+                    assertFalse(cursor.advance());
+                    cursor.reset();
+                }
+
+                int i = 0;
+                for (PrimitiveIterator.OfLong it = vbt.iterator(); it.hasNext(); ++i) {
+                    long t = it.nextLong();
+                    if (i % 3 == 0) {
+                        it.remove();
+                        ts.remove(t);
+                    }
+                }
+                assertArrayEquals(ts.toArray(), vbt.toArray());
+                i = 0;
+                for (Iterator<Long> it = vbt.descendingIterator(); it.hasNext(); ++i) {
+                    long t = it.next();
+                    if (i % 2 == 0) {
+                        it.remove();
+                        ts.remove(t);
+                    }
+                }
+                assertArrayEquals(ts.descendingSet().toArray(), vbt.descendingSet().toArray());
+            }
+        }
+        assertFalse(new vebTreeSet().cursor().advance());
+    }
+
+    @Test
+    void fromSortedTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 6, 13, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                final long mask = bits == 64? -1L : (1L << bits) - 1L;
+                for (int i = 0; i < 4000; ++i)
+                    ts.add((r.nextBoolean()? r.nextInt(1 << 10) : r.nextLong()) & mask);
+                long[] keys = new long[ts.size() + 2];
+                int n = 1;
+                for (long t : ts) {
+                    keys[n++] = t;
+                    if (n == 5)
+                        keys[n++] = t;
+                }
+                vebTreeSet vbt = vebTreeSet.fromSorted(keys, 1, n, bits, policy);
+                assertEquals(ts.size(), vbt.size());
+                assertArrayEquals(ts.toArray(), vbt.toArray());
+                assertArrayEquals(ts.descendingSet().toArray(), vbt.descendingSet().toArray());
+                for (int i = 0; i < 1000; ++i) {
+                    long t = r.nextLong() & mask;
+                    assertEquals(ts.contains(t), vbt.contains(t));
+                    assertEquals(ts.higher(t), vbt.higher(t));
+                    assertEquals(ts.lower(t), vbt.lower(t));
+                    if (i % 2 == 0)
+                        assertEquals(ts.add(t), vbt.add(t));
+                    else {
+                        t = keys[1 + r.nextInt(n - 1)];
+                        assertEquals(ts.remove(t), vbt.remove(t));
+                    }
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> vebTreeSet.fromSorted(new long[]{1, 3, 2}, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> vebTreeSet.fromSorted(new long[]{1, 1L << 32}, 0, 2));
+        assertTrue(vebTreeSet.fromSorted(new long[0], 0, 0).isEmpty());
+    }
+
+    @Test
+    void sortedAddAllTest() {
+        Random r = new Random(777);
+        for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+            TreeSet<Long> ts = new TreeSet<>();
+            vebTreeSet vbt = new vebTreeSet(policy);
+            for (int round = 0; round < 6; ++round) {
+                TreeSet<Long> chunk = new TreeSet<>();
+                for (int i = 0; i < 1000 << round; ++i)
+                    chunk.add((long) r.nextInt(1 << (10 + 2 * round)));
+                assertEquals(ts.addAll(chunk), vbt.addAll(chunk));
+                assertEquals(ts.addAll(chunk), vbt.addAll(round % 2 == 0? chunk : vebTreeSet.fromSorted(
+                        chunk.stream().mapToLong(Long::longValue).toArray(), 0, chunk.size())));
+                assertEquals(ts.size(), vbt.size());
+                assertArrayEquals(ts.toArray(), vbt.toArray());
+            }
+            assertFalse(vbt.addAll(vbt));
+            TreeSet<Long> outOfUniverse = new TreeSet<>(Arrays.asList(1L, -1L));
+            assertThrows(UnsupportedOperationException.class, () -> new vebTreeSet(policy).addAll(outOfUniverse));
+        }
+    }
+
+    private static void splitFully(Spliterator.OfLong s, List<Spliterator.OfLong> parts) {
+        Spliterator.OfLong prefix = s.trySplit();
+        if (prefix == null) {
+            parts.add(s);
+        } else {
+            splitFully(prefix, parts);
+            splitFully(s, parts);
+        }
+    }
+
+    @Test
+    void spliteratorTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 6, 13, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                vebTreeSet vbt = vebTreeSet.withUniverseBits(bits, policy);
+                TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                final long mask = vbt.maxPossibleKey();
+                final long universe = mask == -1? Long.MAX_VALUE : mask + 1;
+                for (int n : new int[]{0, 1, 2, 3, 5000}) {
+                    while (ts.size() < Math.min(n, universe)) {
+                        long t = (r.nextBoolean()? r.nextInt(1 << 10) : r.nextLong()) & mask;
+                        assertEquals(ts.add(t), vbt.add(t));
+                    }
+                    Spliterator.OfLong whole = vbt.spliterator();
+                    assertEquals(ts.size(), whole.getExactSizeIfKnown());
+                    assertEquals(vbt.comparator(), whole.getComparator());
+                    assertTrue(whole.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT));
+
+                    List<Spliterator.OfLong> parts = new ArrayList<>();
+                    splitFully(vbt.spliterator(), parts);
+                    List<Long> keys = new ArrayList<>();
+                    for (int i = 0; i < parts.size(); ++i) {
+                        Spliterator.OfLong part = parts.get(i);
+                        if (i % 2 == 0) {
+                            while (part.tryAdvance((long t) -> keys.add(t))) { }
+                        } else {
+                            part.forEachRemaining((long t) -> keys.add(t));
+                        }
+                        assertFalse(part.tryAdvance((long t) -> fail()));
+                    }
+                    assertEquals(new ArrayList<>(ts), keys);
+                    if (ts.size() > 1000)
+                        assertTrue(parts.size() > 1);
+
+                    assertEquals(new ArrayList<>(ts), vbt.longStream().boxed().collect(Collectors.toList()));
+                    assertEquals(new ArrayList<>(ts), vbt.stream().collect(Collectors.toList()));
+                    assertEquals(new ArrayList<>(ts), vbt.parallelLongStream().boxed().collect(Collectors.toList()));
+                    assertEquals(ts.size(), vbt.parallelStream().count());
+                    final AtomicLong sum = new AtomicLong();
+                    final AtomicLong count = new AtomicLong();
+                    vbt.parallelForEach(t -> {
+                        sum.addAndGet(t);
+                        count.incrementAndGet();
+                    });
+                    assertEquals(ts.stream().mapToLong(Long::longValue).sum(), sum.get());
+                    assertEquals(ts.size(), count.get());
+                }
+
+                // split after partial traversal keeps the pending part of current cluster in the prefix
+                Spliterator.OfLong s = vbt.spliterator();
+                List<Long> keys = new ArrayList<>();
+                for (int i = 0; i < 100 && s.tryAdvance((long t) -> keys.add(t)); ++i) { }
+                Spliterator.OfLong prefix = s.trySplit();
+                if (prefix != null)
+                    prefix.forEachRemaining((long t) -> keys.add(t));
+                s.forEachRemaining((long t) -> keys.add(t));
+                assertEquals(new ArrayList<>(ts), keys);
+            }
+        }
+    }
+
+    private static vebTreeSet randomSet(Random r, int bits, vebTreeSet.ClusterPolicy policy, TreeSet<Long> ts) {
+        vebTreeSet vbt = vebTreeSet.withUniverseBits(bits, policy);
+        final long mask = vbt.maxPossibleKey();
+        final int n = r.nextInt(4) == 0? r.nextInt(4) : r.nextInt(3000);
+        final long base = r.nextLong();
+        for (int i = 0; i < n; ++i) {
+            long t = (r.nextBoolean()? base + r.nextInt(1 << 12) : r.nextLong()) & mask;
+            assertEquals(ts.add(t), vbt.add(t));
+        }
+        return vbt;
+    }
+
+    private static void checkSame(Random r, TreeSet<Long> ts, vebTreeSet vbt) {
+        assertEquals(ts.size(), vbt.size());
+        assertArrayEquals(ts.toArray(), vbt.toArray());
+        for (int i = 0; i < 50; ++i) {
+            long t = r.nextLong() & vbt.maxPossibleKey();
+            assertEquals(ts.higher(t), vbt.higher(t));
+            assertEquals(ts.lower(t), vbt.lower(t));
+            if (!ts.isEmpty() && i % 2 == 0) {
+                Long key = ts.ceiling(t);
+                if (key != null)
+                    assertEquals(ts.remove(key), vbt.remove(key));
+            } else {
+                assertEquals(ts.add(t), vbt.add(t));
+            }
+        }
+        assertArrayEquals(ts.toArray(), vbt.toArray());
+    }
+
+    @Test
+    void setAlgebraTest() {
+        Random r = new Random(777);
+        vebTreeSet.ClusterPolicy[] policies = vebTreeSet.ClusterPolicy.values();
+        for (int bits : new int[]{1, 6, 13, 32, 64}) {
+            for (int round = 0; round < 40; ++round) {
+                TreeSet<Long> ta = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                TreeSet<Long> tb = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                vebTreeSet a = randomSet(r, bits, policies[r.nextInt(2)], ta);
+                vebTreeSet b = randomSet(r, bits, policies[r.nextInt(2)], tb);
+                if (round % 4 == 0) {
+                    // share most of the keys, so that clusters are combined on every level
+                    for (Long t : ta) {
+                        if (r.nextInt(4) != 0)
+                            assertEquals(tb.add(t), b.add(t));
+                    }
+                }
+
+                TreeSet<Long> union = new TreeSet<>(ta);
+                union.addAll(tb);
+                TreeSet<Long> intersection = new TreeSet<>(ta);
+                intersection.retainAll(tb);
+                TreeSet<Long> difference = new TreeSet<>(ta);
+                difference.removeAll(tb);
+
+                assertEquals(!intersection.isEmpty(), a.intersects(b));
+                assertEquals(!intersection.isEmpty(), b.intersects(a));
+                assertArrayEquals(union.toArray(), vebTreeSet.union(a, b).toArray());
+                assertArrayEquals(intersection.toArray(), vebTreeSet.intersect(a, b).toArray());
+                assertArrayEquals(difference.toArray(), vebTreeSet.andNot(a, b).toArray());
+                assertArrayEquals(ta.toArray(), a.toArray());
+                assertArrayEquals(tb.toArray(), b.toArray());
+
+                vebTreeSet copy = vebTreeSet.union(a, vebTreeSet.withUniverseBits(bits));
+                assertEquals(union.size() != ta.size(), copy.union(b));
+                checkSame(r, new TreeSet<>(union), copy);
+                copy = vebTreeSet.union(a, vebTreeSet.withUniverseBits(bits));
+                assertEquals(intersection.size() != ta.size(), copy.intersect(b));
+                checkSame(r, new TreeSet<>(intersection), copy);
+                copy = vebTreeSet.union(a, vebTreeSet.withUniverseBits(bits));
+                assertEquals(difference.size() != ta.size(), copy.andNot(b));
+                checkSame(r, new TreeSet<>(difference), copy);
+                assertArrayEquals(tb.toArray(), b.toArray());
+
+                assertEquals(union.size() != ta.size(), a.addAll(b));
+                assertArrayEquals(union.toArray(), a.toArray());
+                assertEquals(union.size() != tb.size(), a.retainAll(b));
+                assertArrayEquals(tb.toArray(), a.toArray());
+                assertEquals(!tb.isEmpty(), a.removeAll(b));
+                assertTrue(a.isEmpty());
+            }
+        }
+        vebTreeSet a = vebTreeSet.fromSorted(new long[]{1, 2, 3, 100}, 0, 4);
+        assertFalse(a.union(a));
+        assertFalse(a.intersect(a));
+        assertTrue(a.intersects(a));
+        assertTrue(a.andNot(a));
+        assertTrue(a.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> a.union(vebTreeSet.withUniverseBits(16)));
+    }
+
+    @Test
+    void rangeTest() {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 6, 13, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                for (int round = 0; round < 30; ++round) {
+                    TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                    vebTreeSet vbt = randomSet(r, bits, policy, ts);
+                    final long mask = vbt.maxPossibleKey();
+                    for (int i = 0; i < 20 && !ts.isEmpty(); ++i) {
+                        Long near = ts.ceiling(r.nextLong() & mask);
+                        long lo = r.nextBoolean() || near == null? r.nextLong() & mask : near;
+                        long hi = r.nextInt(3) == 0? lo + r.nextInt(1 << 14) & mask : r.nextLong() & mask;
+                        if (vebTreeSet.UNSIGNED_ORDER.compare(lo, hi) > 0) {
+                            long t = lo;
+                            lo = hi;
+                            hi = t;
+                        }
+                        NavigableSet<Long> expected = ts.subSet(lo, true, hi, true);
+                        assertEquals(expected.size(), vbt.countInRange(lo, hi));
+                        assertEquals(expected.size(), vbt.subSet(lo, true, hi, true).size());
+                        List<Long> keys = new ArrayList<>();
+                        vbt.forEachInRange(lo, hi, keys::add);
+                        assertEquals(new ArrayList<>(expected), keys);
+                        if (i % 4 == 3) {
+                            final int n = expected.size();
+                            assertEquals(n, vbt.removeRange(lo, hi));
+                            assertEquals(0, vbt.countInRange(lo, hi));
+                            expected.clear();
+                            checkSame(r, ts, vbt);
+                        }
+                    }
+                    if (!ts.isEmpty()) {
+                        final long first = ts.first();
+                        vbt.subSet(first, true, ts.last(), false).clear();
+                        ts.subSet(first, true, ts.last(), false).clear();
+                        checkSame(r, ts, vbt);
+                    }
+                }
+            }
+        }
+        vebTreeSet vbt = vebTreeSet.fromSorted(new long[]{0, 5, 10, 100, 1000}, 0, 5);
+        assertEquals(0, vbt.countInRange(10, 5));
+        assertEquals(3, vbt.countInRange(-100, 10));
+        assertEquals(2, vbt.countInRange(100, Long.MAX_VALUE));
+        assertEquals(0, vbt.removeRange(1L << 33, 1L << 34));
+        assertEquals(5, vbt.removeRange(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertTrue(vbt.isEmpty());
+    }
+
+    @Test
+    void serializationTest() throws IOException {
+        Random r = new Random(777);
+        for (int bits : new int[]{1, 6, 13, 32, 64}) {
+            for (vebTreeSet.ClusterPolicy policy : vebTreeSet.ClusterPolicy.values()) {
+                TreeSet<Long> ts = new TreeSet<>(vebTreeSet.UNSIGNED_ORDER);
+                vebTreeSet vbt = randomSet(r, bits, policy, ts);
+                vebTreeSet dense = vebTreeSet.withUniverseBits(bits, policy);
+                for (long t = 0; t < 100000 && t <= vbt.maxPossibleKey() && t >= 0; t += 1 + t % 3)
+                    dense.add(t);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                WritableByteChannel out = Channels.newChannel(bytes);
+                vbt.writeTo(out);
+                dense.writeTo(out);
+                new vebTreeSet().writeTo(out);
+                bytes.write(42);
+                if (bits == 64)
+                    assertTrue(bytes.size() < dense.size() / 4 + 8 * vbt.size() + 100);
+
+                ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+                vebTreeSet restored = vebTreeSet.readFrom(in);
+                assertEquals(bits, restored.universeBits());
+                checkSame(r, ts, restored);
+                assertArrayEquals(dense.toArray(), vebTreeSet.readFrom(in).toArray());
+                assertTrue(vebTreeSet.readFrom(in).isEmpty());
+                assertEquals(42, Channels.newInputStream(in).read());
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        vebTreeSet.fromSorted(new long[]{1, 2, 3, 100, 1000}, 0, 5).writeTo(Channels.newChannel(bytes));
+        byte[] data = bytes.toByteArray();
+        assertThrows(EOFException.class, () -> vebTreeSet.readFrom(Channels.newChannel(
+                new ByteArrayInputStream(Arrays.copyOf(data, data.length - 2)))));
+        byte[] hugeSize = data.clone();
+        Arrays.fill(hugeSize, 12, 16, (byte) 0x7F);
+        assertThrows(EOFException.class, () -> vebTreeSet.readFrom(Channels.newChannel(
+                new ByteArrayInputStream(hugeSize))));
+        data[4] = 0;
+        assertThrows(StreamCorruptedException.class, () -> vebTreeSet.readFrom(Channels.newChannel(
+                new ByteArrayInputStream(data))));
+        ByteArrayOutputStream mapBytes = new ByteArrayOutputStream();
+        new vebTreeMap<Long>().writeTo(Channels.newChannel(mapBytes), ValueCodec.LONG);
+        assertThrows(StreamCorruptedException.class, () -> vebTreeSet.readFrom(Channels.newChannel(
+                new ByteArrayInputStream(mapBytes.toByteArray()))));
+    }
+}